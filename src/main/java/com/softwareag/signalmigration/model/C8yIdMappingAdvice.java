@@ -0,0 +1,13 @@
+package com.softwareag.signalmigration.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class C8yIdMappingAdvice {
+	private String sourceId;
+	private String targetId;
+}
@@ -0,0 +1,85 @@
+package com.softwareag.signalmigration.model;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.cumulocity.model.operation.OperationStatus;
+
+import lombok.Data;
+
+/**
+ * Progress of a distributed job over all its partitions and the instances running them
+ */
+@Data
+public class ClusterProgress {
+
+	private String jobId;
+	
+	private OperationStatus status;
+	
+	private int numPartitions;
+	private int numPartitionsDone;
+	private int numPartitionsFailed;
+	
+	/**
+	 * instance -> number of partitions it holds
+	 */
+	private Map<String, Integer> partitionsPerInstance = new TreeMap<>();
+	
+	/**
+	 * -1 while any partition is still discovering its devices
+	 */
+	private int numTotalDevices = 0;
+	private int numCompletedDevices = 0;
+	private int numFailedDevices = 0;
+	private long numMigratedSignals = 0;
+	private long numSignalErrors = 0;
+	private long numDuplicatesSkipped = 0;
+	
+	private List<PartitionProgress> partitions = new ArrayList<>();
+	
+	@Data
+	public static class PartitionProgress {
+		private int partition;
+		private String partitionJobId;
+		private String owner;
+		private OperationStatus status;
+		private int numTotalDevices;
+		private int numCompletedDevices;
+		private int numFailedDevices;
+	}
+	
+	public void add(PartitionLease lease, MigrationJob partitionJob) {
+		numPartitions++;
+		if (lease.isDone()) {
+			numPartitionsDone++;
+		}
+		if (lease.isFailed()) {
+			numPartitionsFailed++;
+		}
+		if (lease.getOwner() != null) {
+			partitionsPerInstance.merge(lease.getOwner(), 1, Integer::sum);
+		}
+		
+		if (numTotalDevices >= 0) {
+			numTotalDevices = partitionJob.getNumTotalDevices() < 0 ? -1 : numTotalDevices + partitionJob.getNumTotalDevices();
+		}
+		numCompletedDevices += partitionJob.getNumCompletedDevices();
+		numFailedDevices += partitionJob.getNumFailedDevices();
+		numMigratedSignals += partitionJob.getNumMigratedSignals();
+		numSignalErrors += partitionJob.getNumSignalErrors();
+		numDuplicatesSkipped += partitionJob.getNumDuplicatesSkipped();
+		
+		PartitionProgress partitionProgress = new PartitionProgress();
+		partitionProgress.setPartition(lease.getPartition());
+		partitionProgress.setPartitionJobId(lease.getPartitionJobId());
+		partitionProgress.setOwner(lease.getOwner());
+		partitionProgress.setStatus(partitionJob.getStatus());
+		partitionProgress.setNumTotalDevices(partitionJob.getNumTotalDevices());
+		partitionProgress.setNumCompletedDevices(partitionJob.getNumCompletedDevices());
+		partitionProgress.setNumFailedDevices(partitionJob.getNumFailedDevices());
+		partitions.add(partitionProgress);
+	}
+}
@@ -0,0 +1,18 @@
+package com.softwareag.signalmigration.model;
+
+/**
+ * How signals that are already in the target are found (and skipped)
+ */
+public enum DedupMode {
+	/**
+	 * the fingerprints of all target signals of the device and range are read into memory before the first
+	 * source signal is read
+	 */
+	HASH_SET,
+	/**
+	 * source and target are read together, oldest first, and only the fingerprints of the target signals with
+	 * the time of the current source signal are kept in memory; writes start with the first source page.
+	 * Measurements and events only, alarms are always deduplicated with HASH_SET
+	 */
+	MERGE_JOIN
+}
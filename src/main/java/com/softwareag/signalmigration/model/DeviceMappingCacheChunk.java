@@ -0,0 +1,22 @@
+package com.softwareag.signalmigration.model;
+
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * A chunk of device mapping cache entries, stored as one event (see DeviceMappingCache)
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class DeviceMappingCacheChunk {
+
+	private String sourcePlatformHost;
+
+	private String targetPlatformHost;
+
+	private List<DeviceMappingCacheEntry> entries;
+}
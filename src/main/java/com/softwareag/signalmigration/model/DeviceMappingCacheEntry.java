@@ -0,0 +1,48 @@
+package com.softwareag.signalmigration.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Cached target device of a source device, between one source and one target platform (see DeviceMappingCache)
+ */
+@Builder
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class DeviceMappingCacheEntry {
+
+	private String sourceDeviceId;
+
+	/**
+	 * null: no target device was found (negative entry)
+	 */
+	private String targetDeviceId;
+
+	/**
+	 * type of the external id that matched
+	 */
+	private String externalIdType;
+
+	/**
+	 * the source external id that matched, and the target external id it was looked up as (the same, or
+	 * as advised by the job's external id mapping advice); null in negative entries and older entries
+	 */
+	private String sourceExternalId;
+
+	private String targetExternalId;
+
+	/**
+	 * when the mapping was looked up, epoch millis; of two entries of a device the later one counts
+	 */
+	private long time;
+
+	@JsonIgnore
+	public boolean isUnmapped() {
+		return targetDeviceId == null;
+	}
+}
@@ -0,0 +1,21 @@
+package com.softwareag.signalmigration.model;
+
+/**
+ * How the target device of a source device is found; devices in MigrationJobConfig.c8yIdMappingAdvice 
+ * are mapped by it in every mode
+ */
+public enum DeviceMappingMode {
+	/**
+	 * by external id (and MigrationJobConfig.externalIdMappingAdvice), identity lookups per device
+	 */
+	EXTERNAL_ID,
+	/**
+	 * by the value of a fragment path (e.g. c8y_Hardware.serialNumber or name) of the source and target 
+	 * devices: the target inventory is read once and joined with the source devices in memory
+	 */
+	FRAGMENT,
+	/**
+	 * only by MigrationJobConfig.c8yIdMappingAdvice, devices not in it are not migrated
+	 */
+	C8Y_ID
+}
@@ -0,0 +1,23 @@
+package com.softwareag.signalmigration.model;
+
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * A chunk of device reports of a job, stored as one event (see DeviceReportStore)
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class DeviceReportChunk {
+	
+	/**
+	 * 0, 1, ... in the order the chunks were written; a later report of a device replaces an earlier one
+	 */
+	private int seq;
+	
+	private List<DeviceSignalMigrationReport> reports;
+}
@@ -0,0 +1,16 @@
+package com.softwareag.signalmigration.model;
+
+/**
+ * Order in which the devices of a job are handed to the workers
+ */
+public enum DeviceSchedulingMode {
+	/**
+	 * as returned by the source devices query
+	 */
+	INVENTORY_ORDER,
+	/**
+	 * descending by signal count (longest-processing-time-first), based on a count pre-scan 
+	 * of all source devices; the counts are kept in the job for resumes and retries
+	 */
+	LARGEST_FIRST
+}
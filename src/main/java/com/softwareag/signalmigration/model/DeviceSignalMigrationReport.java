@@ -1,5 +1,7 @@
 package com.softwareag.signalmigration.model;
 
+import java.util.List;
+
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
@@ -10,12 +12,108 @@ import lombok.NoArgsConstructor;
 @AllArgsConstructor
 @NoArgsConstructor
 public class DeviceSignalMigrationReport {
-//	private SignalType signalType;
-	private String sourceDeviceId; 
+	/**
+	 * not set for the device report of a job with several signal types, see signalTypeReports
+	 */
+	private SignalType signalType;
+	private String sourceDeviceId;
 	private String targetDeviceId;
 	public int migrated;
 	public int errors;
 	public int duplicatesSkipped;
 	private String error;
 	private long durationSec;
+
+	/**
+	 * range covered by the report, format: "2021-07-04T05:03:23.157Z"
+	 */
+	private String dateFrom;
+	private String dateTo;
+
+	/**
+	 * set when the range was resumed from a cursor of an earlier run; the counters cover resumedFrom..dateTo only
+	 */
+	private String resumedFrom;
+
+	/**
+	 * when the device range was split into sub-windows (see WindowSplitMode), one report per sub-window;
+	 * the counters of this report are the sums of the sub-window counters
+	 */
+	private List<DeviceSignalMigrationReport> windowReports;
+
+	/**
+	 * when the job migrates several signal types, one report per signal type;
+	 * the counters of this report are the sums of the signal type counters
+	 */
+	private List<DeviceSignalMigrationReport> signalTypeReports;
+
+	/**
+	 * Combine the reports of the sub-windows of a device into one device report
+	 *
+	 * @param windowReports
+	 * @param durationSec elapsed time from the start of the first sub-window to the end of the last one
+	 * @return
+	 */
+	public static DeviceSignalMigrationReport combine(String sourceDeviceId, String targetDeviceId,
+			List<DeviceSignalMigrationReport> windowReports, long durationSec) {
+		DeviceSignalMigrationReport combined = DeviceSignalMigrationReport.builder()
+				.signalType(windowReports.get(0).getSignalType())
+				.sourceDeviceId(sourceDeviceId)
+				.targetDeviceId(targetDeviceId)
+				.durationSec(durationSec)
+				.windowReports(windowReports)
+				.build();
+
+		for (DeviceSignalMigrationReport windowReport : windowReports) {
+			combined.add(windowReport, String.format("window %s..%s: ", windowReport.getDateFrom(), windowReport.getDateTo()));
+		}
+		return combined;
+	}
+
+	/**
+	 * Combine the reports of the signal types of a device into one device report
+	 *
+	 * @param signalTypeReports
+	 * @param durationSec elapsed time from the start of the first signal type to the end of the last one
+	 * @return
+	 */
+	public static DeviceSignalMigrationReport combineSignalTypes(String sourceDeviceId, String targetDeviceId,
+			List<DeviceSignalMigrationReport> signalTypeReports, long durationSec) {
+		DeviceSignalMigrationReport combined = DeviceSignalMigrationReport.builder()
+				.sourceDeviceId(sourceDeviceId)
+				.targetDeviceId(targetDeviceId)
+				.durationSec(durationSec)
+				.signalTypeReports(signalTypeReports)
+				.build();
+
+		for (DeviceSignalMigrationReport signalTypeReport : signalTypeReports) {
+			combined.add(signalTypeReport, signalTypeReport.getSignalType() + ": ");
+		}
+		return combined;
+	}
+
+	/**
+	 * Include the counters of an earlier part of the same range (e.g. a task that paused and continued later), 
+	 * so that this report covers the earlier part's range too
+	 */
+	public DeviceSignalMigrationReport addEarlierPart(DeviceSignalMigrationReport earlierPart) {
+		migrated += earlierPart.migrated;
+		errors += earlierPart.errors;
+		duplicatesSkipped += earlierPart.duplicatesSkipped;
+		durationSec += earlierPart.getDurationSec();
+		resumedFrom = earlierPart.getResumedFrom();
+		return this;
+	}
+
+	/**
+	 * add the counters of a part report, and its error (with errorPrefix) if this report has none yet
+	 */
+	private void add(DeviceSignalMigrationReport partReport, String errorPrefix) {
+		migrated += partReport.migrated;
+		errors += partReport.errors;
+		duplicatesSkipped += partReport.duplicatesSkipped;
+		if (partReport.getError() != null && error == null) {
+			error = errorPrefix + partReport.getError();
+		}
+	}
 }
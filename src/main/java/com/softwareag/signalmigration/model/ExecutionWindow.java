@@ -0,0 +1,69 @@
+package com.softwareag.signalmigration.model;
+
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+
+import org.springframework.scheduling.support.CronExpression;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * A recurring interval in which a job may run, e.g. every night from 22:00 for 8 hours:
+ * { "cron": "0 0 22 * * *", "durationMinutes": 480, "timeZone": "Europe/Berlin" }
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ExecutionWindow {
+
+	/**
+	 * start times of the window, Spring cron format (second minute hour day-of-month month day-of-week)
+	 */
+	private String cron;
+
+	private int durationMinutes;
+
+	/**
+	 * time zone of the cron expression. Not set = UTC
+	 */
+	private String timeZone;
+
+	/**
+	 * throughput profile: settings that replace the job's settings while the window is open, may be null
+	 */
+	private MigrationJobSettings settings;
+
+	/**
+	 * @throws IllegalArgumentException if the cron expression, time zone or settings are invalid
+	 */
+	public void validate() {
+		CronExpression.parse(cron);
+		getZone();
+		if (durationMinutes <= 0) {
+			throw new IllegalArgumentException("durationMinutes must be > 0");
+		}
+		if (settings != null) {
+			settings.validate();
+		}
+	}
+
+	/**
+	 * @return true if the window started less than durationMinutes before now
+	 */
+	@JsonIgnore
+	public boolean isOpen(ZonedDateTime now) {
+		ZonedDateTime zonedNow = now.withZoneSameInstant(getZone());
+		ZonedDateTime lastStart = CronExpression.parse(cron).next(zonedNow.minusMinutes(durationMinutes));
+		return lastStart != null && !lastStart.isAfter(zonedNow);
+	}
+
+	private ZoneId getZone() {
+		return timeZone != null ? ZoneId.of(timeZone) : ZoneId.of("UTC");
+	}
+}
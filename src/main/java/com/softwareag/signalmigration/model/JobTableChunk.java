@@ -0,0 +1,21 @@
+package com.softwareag.signalmigration.model;
+
+import java.util.Map;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * A chunk of entries of a per-job device table, stored as one event (see JobTableStore)
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class JobTableChunk {
+
+	/**
+	 * source device id -> value
+	 */
+	private Map<String, String> entries;
+}
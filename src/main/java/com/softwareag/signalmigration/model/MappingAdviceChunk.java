@@ -0,0 +1,23 @@
+package com.softwareag.signalmigration.model;
+
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * A chunk of the rows of an uploaded mapping advice file, stored as one event (see MappingAdviceStore)
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class MappingAdviceChunk {
+
+	/**
+	 * 0, 1, ... in the order of the file; of two rows with the same source external id the later one counts
+	 */
+	private int seq;
+
+	private List<ExternalIdMappingAdvice> rows;
+}
@@ -0,0 +1,40 @@
+package com.softwareag.signalmigration.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * An uploaded external id mapping advice file, a fragment of its managed object; the rows are stored
+ * in chunks (see MappingAdviceStore). Jobs refer to it by id (MigrationJobConfig.externalIdMappingAdviceId).
+ */
+@Builder(toBuilder = true)
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class MappingAdviceInfo {
+
+	/**
+	 * id of the managed object
+	 */
+	private String id;
+
+	private String name;
+
+	/**
+	 * csv or ndjson
+	 */
+	private String format;
+
+	private long numRows;
+
+	private int numChunks;
+
+	/**
+	 * false while the file is being stored, or if storing it failed
+	 */
+	private boolean complete;
+
+	private String error;
+}
@@ -0,0 +1,72 @@
+package com.softwareag.signalmigration.model;
+
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Expected cost and duration of a job, from a count pre-scan of all devices and a canary run of a sample of them
+ */
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class MigrationEstimate {
+
+	/**
+	 * the settings the estimate is based on, defaults filled in
+	 */
+	private MigrationJobSettings settings;
+
+	/**
+	 * devices migrated at the same time
+	 */
+	private int concurrency;
+
+	private int numDevices;
+
+	/**
+	 * devices whose count query failed, not included in the totals
+	 */
+	private int numUncountedDevices;
+
+	private List<String> sampleDeviceIds;
+
+	private long numSignals;
+
+	private long estimatedSourceRequests;
+
+	private long estimatedTargetRequests;
+
+	/**
+	 * size of the signals written to the target (JSON)
+	 */
+	private long estimatedBytes;
+
+	/**
+	 * heap used by the workers for pages and batches, with an empty target
+	 */
+	private long estimatedPeakMemoryBytes;
+
+	/**
+	 * additional heap for the dedup sets when the target already holds the signals, e.g. for a retry
+	 */
+	private long estimatedPeakDedupMemoryBytes;
+
+	private long estimatedDurationSec;
+
+	/**
+	 * what sets the duration: "concurrency", "largestDevice" or the name of a rate limit
+	 */
+	private String durationLimitedBy;
+
+	private List<SignalTypeEstimate> signalTypeEstimates;
+
+	/**
+	 * errors of the canary run, e.g. a source device that could not be read
+	 */
+	private List<String> sampleErrors;
+}
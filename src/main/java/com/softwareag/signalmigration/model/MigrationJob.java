@@ -1,12 +1,20 @@
 package com.softwareag.signalmigration.model;
 
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import com.cumulocity.model.authentication.CumulocityBasicCredentials;
 import com.cumulocity.model.operation.OperationStatus;
 import com.cumulocity.sdk.client.Platform;
 import com.cumulocity.sdk.client.PlatformImpl;
 import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.softwareag.signalmigration.util.AimdConcurrencyLimiter;
+import com.softwareag.signalmigration.util.DeviceIdMap;
+import com.softwareag.signalmigration.util.DeviceIdSet;
+import com.softwareag.signalmigration.util.JobRequestLimiter;
 
 import lombok.Data;
 import lombok.ToString;
@@ -14,12 +22,47 @@ import lombok.ToString;
 @Data
 public class MigrationJob {
 	
-	public static final int VERSION = 2;
+	public static final int VERSION = 3;
+	
+	/**
+	 * version 2 kept the device reports in the job fragment, they are moved to the report store on the first save
+	 */
+	public static final int MIN_SUPPORTED_VERSION = 2;
 
 	private MigrationJobConfig config;
 	
+	/**
+	 * -1 while the source devices are still being discovered
+	 */
 	private volatile int numTotalDevices = -1;
+	private volatile int numDiscoveredDevices = 0;
 	private volatile int numCompletedDevices = 0;
+	private volatile int numFailedDevices = 0;
+	
+	/**
+	 * devices of the last run without a target device, found by the mapping phase before any data is migrated; 
+	 * also counted in numFailedDevices
+	 */
+	private volatile int numUnmappedDevices = 0;
+	
+	/**
+	 * sums over all device reports, including reports of devices that were retried later
+	 */
+	private volatile long numMigratedSignals = 0;
+	private volatile long numSignalErrors = 0;
+	private volatile long numDuplicatesSkipped = 0;
+	
+	/**
+	 * pointer to the device reports: events of type DeviceReportStore.REPORT_EVENT_TYPE with the job as source,
+	 * numReportChunks of them
+	 */
+	private String reportEventType;
+	private volatile int numReportChunks = 0;
+	
+	/**
+	 * job level error, e.g. the source devices query failed
+	 */
+	private String error;
 	
 	@JsonIgnore
 	private Platform sourcePlatform;
@@ -27,12 +70,98 @@ public class MigrationJob {
 	@JsonIgnore
 	private Platform targetPlatform; 
 	
+	@JsonIgnore
+	@ToString.Exclude
+	private AimdConcurrencyLimiter sourceLimiter;
+	
+	@JsonIgnore
+	@ToString.Exclude
+	private AimdConcurrencyLimiter targetLimiter;
+	
+	/**
+	 * the job's rate limits in front of sourceLimiter / targetLimiter; all requests of the job go through these
+	 */
+	@JsonIgnore
+	@ToString.Exclude
+	private JobRequestLimiter sourceRequestLimiter;
+	
+	@JsonIgnore
+	@ToString.Exclude
+	private JobRequestLimiter targetRequestLimiter;
+	
+	/**
+	 * the partition job is run by another instance now (its lease was lost), this instance must no longer save it
+	 */
+	@JsonIgnore
+	@ToString.Exclude
+	private volatile boolean detached;
+	
+	/**
+	 * paused by request (see MigrationJobService.pauseJob): no new devices (or sub-windows) of the job are 
+	 * started, running ones stop at their next batch boundary
+	 */
+	private volatile boolean paused;
+	
+	/**
+	 * the job has execution windows, and none of them is open: paused like above
+	 */
+	@JsonIgnore
+	private volatile boolean outsideExecutionWindows;
+	
+	/**
+	 * the execution window whose settings apply now, null if none is open
+	 */
+	@JsonIgnore
+	@ToString.Exclude
+	private volatile ExecutionWindow openExecutionWindow;
+	
 	private String c8yId;
 	
 	private OperationStatus status = OperationStatus.PENDING;
 	
+	/**
+	 * reports not yet written to the report store
+	 */
+	@JsonIgnore
+	@ToString.Exclude
+	private ArrayList<DeviceSignalMigrationReport> unsavedReports = new ArrayList<>();
+	
+	/**
+	 * index of the (latest) device reports, the reports themselves are in the report store;
+	 * the counters above are kept in line with it, so lookups and status updates never scan reports
+	 */
+	@JsonIgnore
+	@ToString.Exclude
+	private DeviceIdSet processedDevices = new DeviceIdSet();
+	
+	@JsonIgnore
+	@ToString.Exclude
+	private DeviceIdSet failedDevices = new DeviceIdSet();
+	
+	/**
+	 * source device id -> number of signals in the job range, from the count pre-scan 
+	 * (DeviceSchedulingMode.LARGEST_FIRST); not saved with the job, it grows with the fleet: loaded from and
+	 * appended to JobTableStore.SIGNAL_COUNTS
+	 */
+	@JsonIgnore
+	@ToString.Exclude
+	private Map<String, Long> deviceSignalCounts = new HashMap<>();
+	
+	/**
+	 * signalCursorKey(...) -> cursor (time of the last signal written), for device ranges that were
+	 * started but not completed without errors; resumed and retried jobs continue from there
+	 */
 	@ToString.Exclude
-	private ArrayList<DeviceSignalMigrationReport> deviceReports = new ArrayList<>();
+	private Map<String, String> signalCursors = new HashMap<>();
+	
+	/**
+	 * source device id -> target device id, from the mapping phase; resumed and retried jobs look up only 
+	 * the devices missing here. Not saved with the job, it grows with the fleet: loaded from and appended to
+	 * JobTableStore.TARGET_DEVICE_IDS
+	 */
+	@JsonIgnore
+	@ToString.Exclude
+	private DeviceIdMap targetDeviceIds = new DeviceIdMap();
 	
 	private int version = VERSION;
 	
@@ -45,37 +174,126 @@ public class MigrationJob {
 		
 	}
 	
+	/**
+	 * A new report of the job run; indexed and queued for the report store
+	 */
 	public synchronized void addDeviceReport(DeviceSignalMigrationReport report) {
-		deviceReports.add(report);
+		indexDeviceReport(report);
+		numMigratedSignals += report.getMigrated();
+		numSignalErrors += report.getErrors();
+		numDuplicatesSkipped += report.getDuplicatesSkipped();
+		unsavedReports.add(report);
+	}
+	
+	/**
+	 * Index a report read from the report store (or added by this run); a later report of a device replaces 
+	 * an earlier one
+	 */
+	public synchronized void indexDeviceReport(DeviceSignalMigrationReport report) {
+		String sourceDeviceId = report.getSourceDeviceId();
+		processedDevices.add(sourceDeviceId);
+		if (report.getError() != null || report.getErrors() > 0) {
+			failedDevices.add(sourceDeviceId);
+		} else {
+			failedDevices.remove(sourceDeviceId);
+		}
+		numCompletedDevices = processedDevices.size();
+		numFailedDevices = failedDevices.size();
+	}
+	
+	/**
+	 * @return the reports to write to the report store, removed from the job
+	 */
+	public synchronized List<DeviceSignalMigrationReport> takeUnsavedReports() {
+		ArrayList<DeviceSignalMigrationReport> reports = unsavedReports;
+		unsavedReports = new ArrayList<>();
+		return reports;
+	}
+	
+	/**
+	 * put back reports that could not be written, ahead of newer ones
+	 */
+	public synchronized void returnUnsavedReports(List<DeviceSignalMigrationReport> reports) {
+		unsavedReports.addAll(0, reports);
+	}
+	
+	/**
+	 * Version 2 jobs: the reports in the fragment are indexed and written to the report store on the next save
+	 */
+	@JsonProperty("deviceReports")
+	private synchronized void setLegacyDeviceReports(List<DeviceSignalMigrationReport> reports) {
+		for (DeviceSignalMigrationReport report : reports) {
+			indexDeviceReport(report);
+			unsavedReports.add(report);
+		}
 	}
 	
+	/**
+	 * Devices with errors are migrated again by the next run; their earlier reports stay in the report 
+	 * store and are replaced by the new ones
+	 * 
+	 * @return number of devices with errors
+	 */
 	public synchronized int removeReportsWithErrors() {
-		int size = deviceReports.size();
-		deviceReports.removeIf( rep -> {
-			return rep.getError() != null || rep.getErrors() > 0;
-		});
-		numCompletedDevices = deviceReports.size(); 
-		return size - deviceReports.size();
+		int removed = failedDevices.size();
+		processedDevices.removeAll(failedDevices);
+		failedDevices.clear();
+		numCompletedDevices = processedDevices.size();
+		numFailedDevices = 0;
+		return removed;
 	}
-
+	
+	public static String signalCursorKey(String sourceDeviceId, SignalType signalType, String windowFrom) {
+		return sourceDeviceId + "/" + signalType + "/" + windowFrom;
+	}
+	
+	public synchronized void setSignalCursor(String key, String cursor) {
+		signalCursors.put(key, cursor);
+	}
+	
+	public synchronized String getSignalCursor(String key) {
+		return signalCursors.get(key);
+	}
+	
+	public synchronized void removeSignalCursors(String sourceDeviceId) {
+		signalCursors.keySet().removeIf(key -> key.startsWith(sourceDeviceId + "/"));
+	}
+	
+	public synchronized String getTargetDeviceId(String sourceDeviceId) {
+		return targetDeviceIds.get(sourceDeviceId);
+	}
+	
+	@JsonIgnore
+	public synchronized int getNumTargetDeviceIds() {
+		return targetDeviceIds.size();
+	}
+	
+	public synchronized void putTargetDeviceIds(DeviceIdMap mappings) {
+		mappings.forEach(targetDeviceIds::put);
+	}
+	
 	public synchronized boolean isDeviceProcessed(String sourceDeviceId) {
-		return deviceReports.stream().anyMatch( r -> {
-			return r.getSourceDeviceId().equals(sourceDeviceId);
-		});
+		return processedDevices.contains(sourceDeviceId);
+	}
+	
+	/**
+	 * @return true if the job must not start or continue any work now
+	 */
+	@JsonIgnore
+	public boolean isPausedNow() {
+		return paused || outsideExecutionWindows;
 	}
 	
 	public synchronized void updateStatus() {
 		if (status.equals(OperationStatus.EXECUTING)) {
-			// initialized 
-			if (deviceReports.size() > numTotalDevices) {
+			if (numTotalDevices < 0) {
+				return; // still discovering source devices
+			}
+			if (numCompletedDevices > numTotalDevices) {
 				throw new IllegalStateException(); // sanity check
 			}
-			numCompletedDevices = deviceReports.size();  
-			if (deviceReports.size() == numTotalDevices) {
-				boolean hasErrors = deviceReports.stream().anyMatch(rep -> {
-					return rep.getError() != null || rep.getErrors() > 0;
-				});
-				if (hasErrors) {
+			if (numCompletedDevices == numTotalDevices) {
+				if (numFailedDevices > 0) {
 					status = OperationStatus.FAILED;
 				} else {
 					status = OperationStatus.SUCCESSFUL;
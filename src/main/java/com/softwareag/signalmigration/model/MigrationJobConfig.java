@@ -5,9 +5,11 @@ import com.cumulocity.sdk.client.QueryParam;
 import com.cumulocity.sdk.client.alarm.AlarmFilter;
 import com.cumulocity.sdk.client.event.EventFilter;
 
+import java.time.ZonedDateTime;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
+import java.util.LinkedHashSet;
 import java.util.List;
 
 import com.cumulocity.sdk.client.measurement.MeasurementFilter;
@@ -21,7 +23,7 @@ import lombok.Data;
 import lombok.NoArgsConstructor;
 import lombok.ToString;
 
-@Builder
+@Builder(toBuilder = true)
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -31,6 +33,12 @@ public class MigrationJobConfig {
 	
 	private SignalType signalType;
 	
+	/**
+	 * Optionally several signal types migrated in one job, e.g. [MEASUREMENT, EVENT, ALARM]; 
+	 * takes precedence over signalType 
+	 */
+	private List<SignalType> signalTypes;
+	
 	/**
 	 * <tenantId>/<username>:<password>
 	 */
@@ -68,6 +76,169 @@ public class MigrationJobConfig {
 	 */
 	@ToString.Exclude
 	protected ArrayList<ExternalIdMappingAdvice> externalIdMappingAdvice;
+
+	/**
+	 * Optionally, the id of an uploaded external id mapping advice file (POST /mappingadvice), for advice too large
+	 * to embed in the job; externalIdMappingAdvice takes precedence over it
+	 */
+	private String externalIdMappingAdviceId;
+
+	/**
+	 * How target devices are found. Not set = EXTERNAL_ID
+	 */
+	private DeviceMappingMode deviceMappingMode;
+
+	/**
+	 * DeviceMappingMode.FRAGMENT: path of the value that identifies a device, e.g. "c8y_Hardware.serialNumber" 
+	 * or "name", in the source devices and (unless targetMappingPath is set) in the target devices
+	 */
+	private String sourceMappingPath;
+
+	private String targetMappingPath;
+
+	/**
+	 * DeviceMappingMode.FRAGMENT: the target managed objects to read. Not set = the ones that have the
+	 * fragment of targetMappingPath (has(c8y_IsDevice) for name and type)
+	 */
+	private String targetDevicesQuery;
+
+	/**
+	 * Optionally, explicit source device id -> target device id; takes precedence over the deviceMappingMode
+	 */
+	@ToString.Exclude
+	private ArrayList<C8yIdMappingAdvice> c8yIdMappingAdvice;
+
+	/**
+	 * Optionally split each device's dateFrom..dateTo range into sub-windows that are migrated by
+	 * separate workers, so that a few very large devices do not keep a single thread busy for hours.
+	 * Not set = NONE
+	 */
+	private WindowSplitMode windowSplitMode;
+
+	/**
+	 * sub-window length for WindowSplitMode.FIXED_DURATION
+	 */
+	private Integer windowDurationHours;
+
+	/**
+	 * approx. max number of signals per sub-window for WindowSplitMode.SIGNAL_COUNT
+	 */
+	private Long signalsPerWindow;
+
+	/**
+	 * Order in which devices are started. Not set = INVENTORY_ORDER
+	 */
+	private DeviceSchedulingMode schedulingMode;
+
+	/**
+	 * Max. number of devices (or device sub-windows) of this job migrated at the same time.
+	 * Not set = MigrationJobService.maxParallelDeviceMigrationsPerJob
+	 */
+	private Integer maxParallelDeviceMigrations;
+
+	/**
+	 * Share of the workers relative to other running jobs (weighted round-robin). Not set = 1
+	 */
+	private Integer schedulingWeight;
+
+	/**
+	 * Rate limits of the job's requests to the source / target platform, and of the signals read from the source / 
+	 * written to the target, per second. Not set = MigrationJobService.default..., 0 = no limit
+	 */
+	private Integer sourceRequestsPerSecond;
+
+	private Integer sourceSignalsPerSecond;
+
+	private Integer targetRequestsPerSecond;
+
+	private Integer targetSignalsPerSecond;
+
+	/**
+	 * Max. measurements per bulk create request to the target. Not set = MeasurementMigrationService.DEFAULT_BATCH_SIZE
+	 */
+	private Integer measurementBatchSize;
+
+	/**
+	 * How signals already in the target are found. Not set = HASH_SET
+	 */
+	private DedupMode dedupMode;
+
+	/**
+	 * Intervals in which the job runs, e.g. at night only; outside all of them the job is paused. When windows 
+	 * overlap, the settings of the first open one apply. Not set = always
+	 */
+	private List<ExecutionWindow> executionWindows;
+
+	/**
+	 * Run the job on all instances of the microservice: the source devices are split into numPartitions
+	 * partitions, and each instance migrates the partitions it holds a lease on. Not set = false
+	 */
+	private Boolean distributed;
+
+	/**
+	 * Number of partitions of a distributed job. Not set = DistributedJobService.defaultNumPartitions
+	 */
+	private Integer numPartitions;
+
+	/**
+	 * Set on the partition jobs of a distributed job: the partition of the source devices migrated by the job
+	 */
+	private Integer partition;
+
+	/**
+	 * Set on the partition jobs of a distributed job
+	 */
+	private String parentJobId;
+
+	/**
+	 * @return the first execution window that is open now, or null if there is none (or the job has no windows)
+	 */
+	@JsonIgnore
+	public ExecutionWindow getOpenExecutionWindow(ZonedDateTime now) {
+		if (executionWindows == null) {
+			return null;
+		}
+		return executionWindows.stream().filter(window -> window.isOpen(now)).findFirst().orElse(null);
+	}
+
+	@JsonIgnore
+	public boolean hasExecutionWindows() {
+		return executionWindows != null && !executionWindows.isEmpty();
+	}
+
+	/**
+	 * @return true for a distributed job, false for its partition jobs and for jobs run by one instance
+	 */
+	@JsonIgnore
+	public boolean isDistributedParent() {
+		return Boolean.TRUE.equals(distributed) && partition == null;
+	}
+
+	/**
+	 * @return true if the device belongs to this job's partition, or if the job is not a partition job
+	 */
+	@JsonIgnore
+	public boolean isInPartition(String sourceDeviceId) {
+		if (partition == null) {
+			return true;
+		}
+		// String.hashCode is specified, every instance assigns a device to the same partition
+		return Math.floorMod(sourceDeviceId.hashCode(), numPartitions) == partition;
+	}
+
+	/**
+	 * @return signalTypes without duplicates, or signalType if signalTypes is not set
+	 */
+	@JsonIgnore
+	public List<SignalType> getSignalTypesToMigrate() {
+		if (signalTypes == null || signalTypes.isEmpty()) {
+			if (signalType == null) {
+				throw new IllegalArgumentException("signalType or signalTypes must be set");
+			}
+			return List.of(signalType);
+		}
+		return new ArrayList<>(new LinkedHashSet<>(signalTypes));
+	}
 	
 	@JsonIgnore
 	public Filter getSignalFilter() {
@@ -100,8 +271,8 @@ public class MigrationJobConfig {
 		//"2021-07-04T05:03:23.157Z" -> OK		
 
 		List<QueryParam> params = Arrays.asList(
-				CustomQueryParam.DATE_FROM.setValue(DateUtil.toISODateTimeString(dateFrom)).toQueryParam(),
-				CustomQueryParam.DATE_TO.setValue(DateUtil.toISODateTimeString(dateTo)).toQueryParam());
+				CustomQueryParam.DATE_FROM.toQueryParam(DateUtil.toISODateTimeString(dateFrom)),
+				CustomQueryParam.DATE_TO.toQueryParam(DateUtil.toISODateTimeString(dateTo)));
 		
 		return params;
 	}
@@ -0,0 +1,74 @@
+package com.softwareag.signalmigration.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * The settings of a job that may be changed while it runs, see MigrationJobConfig for their meaning.
+ * In a change request, fields that are not set stay unchanged.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class MigrationJobSettings {
+
+	private Integer maxParallelDeviceMigrations;
+
+	private Integer schedulingWeight;
+
+	private Integer sourceRequestsPerSecond;
+
+	private Integer sourceSignalsPerSecond;
+
+	private Integer targetRequestsPerSecond;
+
+	private Integer targetSignalsPerSecond;
+
+	private Integer measurementBatchSize;
+
+	public void validate() {
+		requireAtLeast(maxParallelDeviceMigrations, 0, "maxParallelDeviceMigrations");
+		requireAtLeast(schedulingWeight, 1, "schedulingWeight");
+		requireAtLeast(sourceRequestsPerSecond, 0, "sourceRequestsPerSecond");
+		requireAtLeast(sourceSignalsPerSecond, 0, "sourceSignalsPerSecond");
+		requireAtLeast(targetRequestsPerSecond, 0, "targetRequestsPerSecond");
+		requireAtLeast(targetSignalsPerSecond, 0, "targetSignalsPerSecond");
+		requireAtLeast(measurementBatchSize, 1, "measurementBatchSize");
+	}
+
+	/**
+	 * Copy the fields that are set to the config
+	 */
+	public void applyTo(MigrationJobConfig config) {
+		if (maxParallelDeviceMigrations != null) {
+			config.setMaxParallelDeviceMigrations(maxParallelDeviceMigrations);
+		}
+		if (schedulingWeight != null) {
+			config.setSchedulingWeight(schedulingWeight);
+		}
+		if (sourceRequestsPerSecond != null) {
+			config.setSourceRequestsPerSecond(sourceRequestsPerSecond);
+		}
+		if (sourceSignalsPerSecond != null) {
+			config.setSourceSignalsPerSecond(sourceSignalsPerSecond);
+		}
+		if (targetRequestsPerSecond != null) {
+			config.setTargetRequestsPerSecond(targetRequestsPerSecond);
+		}
+		if (targetSignalsPerSecond != null) {
+			config.setTargetSignalsPerSecond(targetSignalsPerSecond);
+		}
+		if (measurementBatchSize != null) {
+			config.setMeasurementBatchSize(measurementBatchSize);
+		}
+	}
+
+	private static void requireAtLeast(Integer value, int min, String name) {
+		if (value != null && value < min) {
+			throw new IllegalArgumentException(name + " must be >= " + min);
+		}
+	}
+}
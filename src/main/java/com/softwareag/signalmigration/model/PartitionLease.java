@@ -0,0 +1,52 @@
+package com.softwareag.signalmigration.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Lease on one partition of a distributed job, a fragment of the partition job's managed object. 
+ * Every write increments the version; an instance holds the lease as long as it renews it 
+ * (see PartitionLeaseCoordinator).
+ */
+@Builder(toBuilder = true)
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PartitionLease {
+
+	/**
+	 * id of the distributed job
+	 */
+	private String jobId;
+	
+	private int partition;
+	
+	/**
+	 * instance holding the lease, null if free
+	 */
+	private String owner;
+	
+	/**
+	 * as set by the owner, for information; expiry is judged by each instance on its own clock
+	 */
+	private long expiresAt;
+	
+	private long version;
+	
+	/**
+	 * the partition job has completed, the lease is not claimed again (unless the job is retried)
+	 */
+	private boolean done;
+	
+	private boolean failed;
+	
+	/**
+	 * id of the partition job (managed object holding the lease)
+	 */
+	@JsonIgnore
+	private String partitionJobId;
+}
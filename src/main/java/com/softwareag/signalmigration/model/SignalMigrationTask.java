@@ -0,0 +1,166 @@
+package com.softwareag.signalmigration.model;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.function.IntSupplier;
+
+import org.joda.time.DateTime;
+
+import com.cumulocity.sdk.client.Platform;
+import com.cumulocity.sdk.client.QueryParam;
+import com.softwareag.signalmigration.util.CustomQueryParam;
+import com.softwareag.signalmigration.util.DateUtil;
+import com.softwareag.signalmigration.util.NullSignalSink;
+import com.softwareag.signalmigration.util.RequestLimiter;
+
+import lombok.Builder;
+import lombok.Data;
+import lombok.ToString;
+
+/**
+ * A unit of work for a signal migration service: the signals of one type of one source device 
+ * within dateFrom..dateTo (the whole job range or a sub-window of it)
+ */
+@Data
+@Builder(toBuilder = true)
+public class SignalMigrationTask {
+
+	private String sourceDeviceId;
+	
+	private String targetDeviceId;
+	
+	private SignalType signalType;
+	
+	/**
+	 * format: "2021-07-04T05:03:23.157Z" 
+	 */
+	private String dateFrom;
+	
+	private String dateTo;
+	
+	/**
+	 * cursor of an earlier run of this task: all signals in dateFrom..resumeFrom have been written 
+	 * already, so signals are read (and dedup checked) from resumeFrom only. Not set = dateFrom
+	 */
+	private String resumeFrom;
+	
+	@ToString.Exclude
+	private Platform sourcePlatform;
+	
+	@ToString.Exclude
+	private Platform targetPlatform;
+	
+	/**
+	 * all requests to the source / target platform go through these, and all signals read / written are
+	 * accounted to them
+	 */
+	@ToString.Exclude
+	private RequestLimiter sourceLimiter;
+	
+	@ToString.Exclude
+	private RequestLimiter targetLimiter;
+	
+	/**
+	 * max. signals per bulk create request, read before every batch so that it may change while the task runs; 
+	 * may be null
+	 */
+	@ToString.Exclude
+	private IntSupplier batchSize;
+	
+	/**
+	 * may be null = DedupMode.HASH_SET
+	 */
+	private DedupMode dedupMode;
+	
+	/**
+	 * set for a dry run: the signals are written to this sink instead of the target, and the target is not read
+	 */
+	@ToString.Exclude
+	private NullSignalSink dryRunSink;
+	
+	@ToString.Exclude
+	private Consumer<DeviceSignalMigrationReport> reportHandler;
+	
+	/**
+	 * asked after every committed batch: true = the job is paused, stop and hand the rest of the range to the 
+	 * pauseHandler (see pauseAt); may be null
+	 */
+	@ToString.Exclude
+	private BooleanSupplier pauseRequested;
+	
+	/**
+	 * receives the rest of a paused task, to run it when the job continues
+	 */
+	@ToString.Exclude
+	private Consumer<SignalMigrationTask> pauseHandler;
+	
+	/**
+	 * receives the task's cursor after each committed batch, may be null
+	 */
+	@ToString.Exclude
+	private Consumer<String> cursorHandler;
+	
+	public List<QueryParam> getSignalQueryParams() {
+		// see MigrationJobConfig.getSignalQueryParams, API needs Z timezone 
+		return Arrays.asList(
+				CustomQueryParam.DATE_FROM.toQueryParam(DateUtil.toISODateTimeString(resumeFrom != null ? resumeFrom : dateFrom)),
+				CustomQueryParam.DATE_TO.toQueryParam(DateUtil.toISODateTimeString(dateTo)));
+	}
+	
+	/**
+	 * @return the current batch size, or defaultBatchSize if the task has none
+	 */
+	public int getBatchSize(int defaultBatchSize) {
+		return batchSize != null ? batchSize.getAsInt() : defaultBatchSize;
+	}
+	
+	/**
+	 * @return a report builder pre-filled with the task's signal type, device ids and range
+	 */
+	public DeviceSignalMigrationReport.DeviceSignalMigrationReportBuilder reportBuilder() {
+		return DeviceSignalMigrationReport.builder()
+				.signalType(signalType)
+				.sourceDeviceId(sourceDeviceId)
+				.targetDeviceId(targetDeviceId)
+				.dateFrom(dateFrom)
+				.dateTo(dateTo)
+				.resumedFrom(resumeFrom);
+	}
+	
+	/**
+	 * Record that every signal of the task older than signalTime has been written to the target. 
+	 * Signals must be migrated oldest first, and the cursor must not be committed after a failed batch.
+	 */
+	public void commitCursor(DateTime signalTime) {
+		if (cursorHandler != null) {
+			cursorHandler.accept(DateUtil.formatUTC.print(signalTime));
+		}
+	}
+	
+	public boolean isDryRun() {
+		return dryRunSink != null;
+	}
+	
+	public boolean isMergeJoinDedup() {
+		return dedupMode == DedupMode.MERGE_JOIN;
+	}
+	
+	public boolean isPauseRequested() {
+		return pauseRequested != null && pauseHandler != null && pauseRequested.getAsBoolean();
+	}
+	
+	/**
+	 * Stop the task after a committed batch: the rest of the range, from signalTime (the committed cursor), 
+	 * is handed to the pause handler as a new task. No report is sent for this task; the report of the 
+	 * rest includes the counters of progress.
+	 */
+	public void pauseAt(DateTime signalTime, DeviceSignalMigrationReport progress) {
+		Consumer<DeviceSignalMigrationReport> restReportHandler = reportHandler;
+		pauseHandler.accept(toBuilder()
+				.resumeFrom(DateUtil.formatUTC.print(signalTime))
+				.reportHandler(report -> restReportHandler.accept(report.addEarlierPart(progress)))
+				.build());
+	}
+}
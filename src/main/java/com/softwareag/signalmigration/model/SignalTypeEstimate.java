@@ -0,0 +1,50 @@
+package com.softwareag.signalmigration.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Measurements of the canary run for one signal type, and the totals extrapolated from them
+ */
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class SignalTypeEstimate {
+
+	private SignalType signalType;
+
+	/**
+	 * from the count pre-scan
+	 */
+	private long numSignals;
+
+	private long maxDeviceSignals;
+
+	/**
+	 * canary run: signals read from the source, and the requests, signals and bytes that would have been written
+	 */
+	private long sampleSignalsRead;
+	private long sampleSourceRequests;
+	private long sampleTargetRequests;
+	private long sampleSignalsWritten;
+	private long sampleBytes;
+	private long sampleWorkerMillis;
+	private long sampleSourceRequestMillis;
+
+	private long estimatedSourceRequests;
+	private long estimatedTargetRequests;
+	private long estimatedBytes;
+
+	/**
+	 * worker time summed over all devices, not wall-clock time
+	 */
+	private long estimatedWorkerSec;
+
+	/**
+	 * time one worker needs for the device with the most signals
+	 */
+	private long estimatedLargestDeviceSec;
+}
@@ -0,0 +1,20 @@
+package com.softwareag.signalmigration.model;
+
+/**
+ * How a device's dateFrom..dateTo range is split into sub-windows that are migrated 
+ * by separate workers
+ */
+public enum WindowSplitMode {
+	/**
+	 * the whole range is migrated by one worker
+	 */
+	NONE,
+	/**
+	 * sub-windows of MigrationJobConfig.windowDurationHours
+	 */
+	FIXED_DURATION,
+	/**
+	 * sub-windows holding approx. MigrationJobConfig.signalsPerWindow signals each (based on count queries)
+	 */
+	SIGNAL_COUNT
+}
@@ -0,0 +1,76 @@
+package com.softwareag.signalmigration.rest;
+
+import java.io.InputStream;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.softwareag.signalmigration.model.MappingAdviceInfo;
+import com.softwareag.signalmigration.service.MappingAdviceStore;
+
+import lombok.extern.slf4j.Slf4j;
+
+@Slf4j
+@RestController
+public class MappingAdviceRESTController {
+
+	@Autowired
+	private MappingAdviceStore mappingAdviceStore;
+
+	/**
+	 * Upload an external id mapping advice file; the request body is streamed into the store, jobs refer to
+	 * the returned id (externalIdMappingAdviceId)
+	 *
+	 * @param format csv or ndjson; not set = from the content type (text/csv or application/x-ndjson)
+	 */
+	@PostMapping(value = "/mappingadvice",
+			produces = MediaType.APPLICATION_JSON_VALUE)
+	public ResponseEntity<?> uploadMappingAdvice(InputStream body,
+			@RequestParam(name = "name", required = false) String name,
+			@RequestParam(name = "format", required = false) String format,
+			@RequestHeader(name = "Content-Type", required = false) String contentType) {
+		log.info("POST /mappingadvice");
+		try {
+			if (format == null) {
+				format = contentType != null && contentType.contains("csv") ? MappingAdviceStore.FORMAT_CSV : MappingAdviceStore.FORMAT_NDJSON;
+			}
+			MappingAdviceInfo info = mappingAdviceStore.upload(body, name, format);
+			return ResponseEntity
+					.status(info.isComplete() ? HttpStatus.CREATED : HttpStatus.BAD_REQUEST)
+					.body(info);
+		} catch (IllegalArgumentException e) {
+			return ResponseEntity
+					.status(HttpStatus.BAD_REQUEST)
+					.body(e.getMessage());
+		} catch (Exception e) {
+			return ResponseEntity
+					.status(HttpStatus.INTERNAL_SERVER_ERROR)
+					.body(e.getMessage());
+		}
+	}
+
+	@GetMapping(value = "/mappingadvice/{adviceId}",
+			produces = MediaType.APPLICATION_JSON_VALUE)
+	public ResponseEntity<?> getMappingAdvice(@PathVariable String adviceId) {
+		log.info("GET /mappingadvice/{}", adviceId);
+		try {
+			return ResponseEntity.ok(mappingAdviceStore.getInfo(adviceId));
+		} catch (IllegalArgumentException e) {
+			return ResponseEntity
+					.status(HttpStatus.NOT_FOUND)
+					.body(e.getMessage());
+		} catch (Exception e) {
+			return ResponseEntity
+					.status(HttpStatus.INTERNAL_SERVER_ERROR)
+					.body(e.getMessage());
+		}
+	}
+}
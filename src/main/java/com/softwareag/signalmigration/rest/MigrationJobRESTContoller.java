@@ -1,20 +1,37 @@
 package com.softwareag.signalmigration.rest;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import com.cumulocity.rest.representation.inventory.ManagedObjectRepresentation;
+import com.softwareag.signalmigration.model.ClusterProgress;
+import com.softwareag.signalmigration.model.MigrationEstimate;
 import com.softwareag.signalmigration.model.MigrationJob;
 import com.softwareag.signalmigration.model.MigrationJobConfig;
+import com.softwareag.signalmigration.model.MigrationJobSettings;
+import com.softwareag.signalmigration.service.DeviceReportStore;
+import com.softwareag.signalmigration.service.DistributedJobService;
+import com.softwareag.signalmigration.service.MigrationEstimateService;
 import com.softwareag.signalmigration.service.MigrationJobService;
+import com.softwareag.signalmigration.util.ManagedObjectUtil;
 
 import lombok.extern.slf4j.Slf4j;
 
@@ -25,6 +42,15 @@ public class MigrationJobRESTContoller {
 	@Autowired
 	private MigrationJobService migrationJobService;
 	
+	@Autowired
+	private DeviceReportStore deviceReportStore;
+	
+	@Autowired
+	private DistributedJobService distributedJobService;
+	
+	@Autowired
+	private MigrationEstimateService migrationEstimateService;
+	
 	@PostMapping(value = "/migrationjob", 
     		consumes = MediaType.APPLICATION_JSON_VALUE,
     		produces = MediaType.APPLICATION_JSON_VALUE)
@@ -47,6 +73,30 @@ public class MigrationJobRESTContoller {
     	}
     }
 	
+	/**
+	 * Dry run: estimates requests, bytes, memory and duration of the job from a count pre-scan and a canary run 
+	 * of a sample of devices; nothing is written to the target
+	 */
+	@PostMapping(value = "/migrationjob/estimate", 
+    		consumes = MediaType.APPLICATION_JSON_VALUE,
+    		produces = MediaType.APPLICATION_JSON_VALUE)
+	public ResponseEntity<?> estimateMigrationJob(@RequestBody MigrationJobConfig config,
+			@RequestParam(name = "sampleSize", required = false) Integer sampleSize) {
+    	log.info("POST /migrationjob/estimate");
+    	try{
+    		MigrationEstimate estimate = migrationEstimateService.estimate(config, sampleSize);
+    		
+    		return ResponseEntity
+    				.status(HttpStatus.OK)
+    				.body(estimate);
+    	}
+    	catch(Exception e) {
+    		return ResponseEntity
+    				.status(HttpStatus.INTERNAL_SERVER_ERROR)
+    				.body(e.getMessage());
+    	}
+    }
+	
 	@PostMapping(value = "/migrationjob/retry/{jobId}", 
     		produces = MediaType.APPLICATION_JSON_VALUE)
     @ResponseStatus(code = HttpStatus.CREATED)
@@ -68,5 +118,119 @@ public class MigrationJobRESTContoller {
     	}
     }
 	
+	/**
+	 * The device reports of the job, one json object per line (latest report of a device last), 
+	 * streamed from the report store
+	 */
+	@GetMapping(value = "/migrationjob/{jobId}/reports", 
+			produces = "application/x-ndjson")
+	public ResponseEntity<StreamingResponseBody> getDeviceReports(@PathVariable String jobId) {
+		log.info("GET /migrationjob/{}/reports", jobId);
+		StreamingResponseBody body = (OutputStream out) -> {
+			Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+			deviceReportStore.forEachReport(jobId, report -> {
+				try {
+					writer.write(ManagedObjectUtil.toJson(report));
+					writer.write('\n');
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			});
+			writer.flush();
+		};
+		return ResponseEntity.ok(body);
+	}
+	
+	/**
+	 * Progress of a distributed job over all its partitions, and the instances running them
+	 */
+	@GetMapping(value = "/migrationjob/{jobId}/cluster", 
+			produces = MediaType.APPLICATION_JSON_VALUE)
+	public ResponseEntity<?> getClusterProgress(@PathVariable String jobId) {
+		log.info("GET /migrationjob/{}/cluster", jobId);
+		try {
+			ClusterProgress progress = distributedJobService.getClusterProgress(jobId);
+			return ResponseEntity.ok(progress);
+		} catch (Exception e) {
+			return ResponseEntity
+					.status(HttpStatus.INTERNAL_SERVER_ERROR)
+					.body(e.getMessage());
+		}
+	}
+	
+	/**
+	 * Settings of a job running on this instance that may be changed while it runs
+	 */
+	@GetMapping(value = "/migrationjob/{jobId}/settings", 
+			produces = MediaType.APPLICATION_JSON_VALUE)
+	public ResponseEntity<?> getJobSettings(@PathVariable String jobId) {
+		log.info("GET /migrationjob/{}/settings", jobId);
+		try {
+			return ResponseEntity.ok(migrationJobService.getJobSettings(jobId));
+		} catch (IllegalArgumentException e) {
+			return ResponseEntity
+					.status(HttpStatus.NOT_FOUND)
+					.body(e.getMessage());
+		} catch (Exception e) {
+			return ResponseEntity
+					.status(HttpStatus.INTERNAL_SERVER_ERROR)
+					.body(e.getMessage());
+		}
+	}
+	
+	/**
+	 * Change settings of a job running on this instance, without restarting it; settings not in the body 
+	 * stay unchanged
+	 */
+	@PutMapping(value = "/migrationjob/{jobId}/settings", 
+			consumes = MediaType.APPLICATION_JSON_VALUE,
+			produces = MediaType.APPLICATION_JSON_VALUE)
+	public ResponseEntity<?> changeJobSettings(@PathVariable String jobId, @RequestBody MigrationJobSettings settings) {
+		log.info("PUT /migrationjob/{}/settings", jobId);
+		try {
+			return ResponseEntity.ok(migrationJobService.changeJobSettings(jobId, settings));
+		} catch (IllegalArgumentException e) {
+			return ResponseEntity
+					.status(HttpStatus.BAD_REQUEST)
+					.body(e.getMessage());
+		} catch (Exception e) {
+			return ResponseEntity
+					.status(HttpStatus.INTERNAL_SERVER_ERROR)
+					.body(e.getMessage());
+		}
+	}
+	
+	@PostMapping(value = "/migrationjob/{jobId}/pause")
+	public ResponseEntity<?> pauseJob(@PathVariable String jobId) {
+		log.info("POST /migrationjob/{}/pause", jobId);
+		try {
+			migrationJobService.pauseJob(jobId);
+			return ResponseEntity.ok(null);
+		} catch (IllegalArgumentException e) {
+			return ResponseEntity
+					.status(HttpStatus.NOT_FOUND)
+					.body(e.getMessage());
+		} catch (Exception e) {
+			return ResponseEntity
+					.status(HttpStatus.INTERNAL_SERVER_ERROR)
+					.body(e.getMessage());
+		}
+	}
 	
+	@PostMapping(value = "/migrationjob/{jobId}/resume")
+	public ResponseEntity<?> resumeJob(@PathVariable String jobId) {
+		log.info("POST /migrationjob/{}/resume", jobId);
+		try {
+			migrationJobService.resumeJob(jobId);
+			return ResponseEntity.ok(null);
+		} catch (IllegalArgumentException e) {
+			return ResponseEntity
+					.status(HttpStatus.NOT_FOUND)
+					.body(e.getMessage());
+		} catch (Exception e) {
+			return ResponseEntity
+					.status(HttpStatus.INTERNAL_SERVER_ERROR)
+					.body(e.getMessage());
+		}
+	}
 }
@@ -0,0 +1,114 @@
+package com.softwareag.signalmigration.service;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.softwareag.signalmigration.util.AimdConcurrencyLimiter;
+import com.softwareag.signalmigration.util.RequestLimiter.RequestClass;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Keeps one AimdConcurrencyLimiter per platform host and role (requests to the source / to the target),
+ * shared by all jobs using that platform, and exposes their limits as gauges.
+ */
+@Component
+@Slf4j
+public class AdaptiveConcurrencyService {
+
+	public static final String ROLE_SOURCE = "source";
+	public static final String ROLE_TARGET = "target";
+
+	@Value("${AdaptiveConcurrency.enabled:true}")
+	private boolean enabled;
+
+	@Value("${AdaptiveConcurrency.initialLimit:${MigrationJobService.numParallelDeviceMigrations:9}}")
+	private int initialLimit;
+
+	@Value("${AdaptiveConcurrency.minLimit:1}")
+	private int minLimit;
+
+	@Value("${AdaptiveConcurrency.maxLimit:32}")
+	private int maxLimit;
+
+	/**
+	 * factor applied to the limit on HTTP 429/503 or a latency spike
+	 */
+	@Value("${AdaptiveConcurrency.backoffRatio:0.5}")
+	private double backoffRatio;
+
+	/**
+	 * a request slower than this factor times the baseline latency counts as a latency spike
+	 */
+	@Value("${AdaptiveConcurrency.latencyToleranceFactor:3.0}")
+	private double latencyToleranceFactor;
+
+	@Autowired
+	private MeterRegistry registry;
+
+	private final ConcurrentHashMap<String, AimdConcurrencyLimiter> limiters = new ConcurrentHashMap<>();
+
+	private final List<Runnable> limitListeners = new CopyOnWriteArrayList<>();
+
+	/**
+	 * @param role ROLE_SOURCE or ROLE_TARGET
+	 * @param platformHost as in the job config
+	 */
+	public AimdConcurrencyLimiter getLimiter(String role, String platformHost) {
+		return limiters.computeIfAbsent(role + "|" + platformHost, key -> createLimiter(role, platformHost));
+	}
+
+	/**
+	 * @param listener called whenever the limit of any limiter changes
+	 */
+	public void addLimitListener(Runnable listener) {
+		limitListeners.add(listener);
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * @return upper bound of any limiter's limit, i.e. the number of workers adaptive concurrency can make use of
+	 */
+	public int getMaxLimit() {
+		return enabled ? maxLimit : 0;
+	}
+
+	private AimdConcurrencyLimiter createLimiter(String role, String platformHost) {
+		String name = "AdaptiveConcurrency " + role + " " + platformHost;
+		if (!enabled) {
+			return AimdConcurrencyLimiter.unlimited(name);
+		}
+		AimdConcurrencyLimiter limiter = new AimdConcurrencyLimiter(name, initialLimit, minLimit, maxLimit,
+				backoffRatio, latencyToleranceFactor, System::currentTimeMillis);
+		limiter.addLimitListener(() -> limitListeners.forEach(Runnable::run));
+
+		Gauge.builder("AdaptiveConcurrency.limit", limiter, AimdConcurrencyLimiter::getLimit)
+				.tag("role", role)
+				.tag("platform", String.valueOf(platformHost))
+				.register(registry);
+		Gauge.builder("AdaptiveConcurrency.inFlight", limiter, AimdConcurrencyLimiter::getInFlight)
+				.tag("role", role)
+				.tag("platform", String.valueOf(platformHost))
+				.register(registry);
+		for (RequestClass requestClass : RequestClass.values()) {
+			Gauge.builder("AdaptiveConcurrency.baselineLatencyMillis", limiter, l -> l.getBaselineLatencyMillis(requestClass))
+					.tag("role", role)
+					.tag("platform", String.valueOf(platformHost))
+					.tag("requestClass", requestClass.name())
+					.register(registry);
+		}
+
+		log.info("Created {}, initial limit {}", name, limiter.getLimit());
+		return limiter;
+	}
+}
@@ -16,10 +16,14 @@ import com.cumulocity.rest.representation.inventory.ManagedObjectRepresentation;
 import com.cumulocity.sdk.client.Platform;
 import com.cumulocity.sdk.client.QueryParam;
 import com.cumulocity.sdk.client.alarm.AlarmApi;
-import com.google.common.collect.HashMultiset;
-import com.google.common.collect.Multiset;
 import com.softwareag.signalmigration.model.DeviceSignalMigrationReport;
+import com.softwareag.signalmigration.model.SignalMigrationTask;
 import com.softwareag.signalmigration.util.AlarmUtil;
+import com.softwareag.signalmigration.util.HashSetDeduplicator;
+import com.softwareag.signalmigration.util.NullSignalSink;
+import com.softwareag.signalmigration.util.RequestLimiter;
+import com.softwareag.signalmigration.util.RequestLimiter.RequestClass;
+import com.softwareag.signalmigration.util.SignalDeduplicator;
 
 import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
@@ -31,6 +35,9 @@ public class AlarmMigrationService {
 	@Autowired
 	private MeterRegistry registry;
 
+	@Autowired
+	private TargetCountCheck targetCountCheck;
+
 
 	/**
 	 * Specifies the max value of the 'count' property for migrated alarms. If the source alarm has higher count, the 
@@ -54,18 +61,22 @@ public class AlarmMigrationService {
 		TODO see if we can manipulate the audit record via API and fix this
 		see https://cumulocity.com/api/core/10.18.0/#operation/postAuditRecordCollectionResource
 		
-	 * @param sourceDeviceId
-	 * @param targetDeviceId
-	 * @param signalQueryParams
-	 * @param sourceC8yPlatform
-	 * @param reportHandler
+	 * Note on sub-windows (WindowSplitMode): the CLEARED-first ordering below only holds within a window. 
+	 * A multi-count alarm replayed as ACTIVE in one window could be merged into an ACTIVE alarm of the 
+	 * same type created by a window that runs concurrently, so SignalWindowPlanner never splits alarms.
+	 * 
+	 * Alarms commit no cursor (see SignalMigrationTask.commitCursor): they are sorted by status, not by time, 
+	 * so a resumed alarm range starts again from its beginning and relies on dedup.
+	 * 
+	 * @param task source/target device, range (whole job range or a sub-window) and report handler
 	 */
-	public void migrateAlarms(String sourceDeviceId, 
-			String targetDeviceId,
-			List<QueryParam> signalQueryParams,
-			Platform sourceC8yPlatform,
-			Platform targetC8yPlatform,
-			Consumer<DeviceSignalMigrationReport> reportHandler) {
+	public void migrateAlarms(SignalMigrationTask task) {
+		String sourceDeviceId = task.getSourceDeviceId();
+		String targetDeviceId = task.getTargetDeviceId();
+		List<QueryParam> signalQueryParams = task.getSignalQueryParams();
+		Platform sourceC8yPlatform = task.getSourcePlatform();
+		Platform targetC8yPlatform = task.getTargetPlatform();
+		Consumer<DeviceSignalMigrationReport> reportHandler = task.getReportHandler();
 
 		log.info(String.format("Will now migrate device alarms, src device id: %s, targetDeviceId: %s", sourceDeviceId,
 				targetDeviceId));
@@ -88,21 +99,27 @@ public class AlarmMigrationService {
 		long startTime = System.currentTimeMillis();
 
 		try {			
-			DeviceSignalMigrationReport report = DeviceSignalMigrationReport.builder()
-			.sourceDeviceId(sourceDeviceId)
-			.targetDeviceId(targetDeviceId)
+			DeviceSignalMigrationReport report = task.reportBuilder()
 			.build();
 			
 					
 			//String tenant = subscriptions.getAll().iterator().next().getTenant();
 			
-			Iterable<AlarmRepresentation> trgtAlarmsIterable = AlarmUtil.getAlarms(targetDeviceId, signalQueryParams, targetC8yPlatform.getAlarmApi());
-			Multiset<Integer> uniqueHashesSet = createUniqueHashesSet(trgtAlarmsIterable);
+			Iterable<AlarmRepresentation> trgtAlarmsIterable = AlarmUtil.getAlarms(targetDeviceId, signalQueryParams, targetC8yPlatform.getAlarmApi(), task.getTargetLimiter());
+			// an empty target (or a dry run) is not read. Posting an alarm may increment the count of an existing one, 
+			// so equal alarm counts do not show a complete target, see TargetCountCheck.
+			// Alarms are sorted by status below, and a target alarm's time is that of its last occurrence, so 
+			// DedupMode.MERGE_JOIN does not apply
+			SignalDeduplicator<AlarmRepresentation> deduplicator = targetCountCheck.count(task).isTargetEmpty() ? SignalDeduplicator.none() 
+					: new HashSetDeduplicator<>(trgtAlarmsIterable, alarm -> {
+						AlarmUtil.trimTenantSpecificFields(alarm);
+						return AlarmUtil.generateUniqueHash(alarm);
+					});
 
 //			ArrayList<QueryParam> params = new ArrayList<QueryParam>(signalQueryParams);
 //			params.add(CustomQueryParam.SOURCE.setValue(sourceDeviceId).toQueryParam());
 //						
-			Iterable<AlarmRepresentation> sourceAlarmsIterable = AlarmUtil.getAlarms(sourceDeviceId, signalQueryParams, sourceC8yPlatform.getAlarmApi());
+			Iterable<AlarmRepresentation> sourceAlarmsIterable = AlarmUtil.getAlarms(sourceDeviceId, signalQueryParams, sourceC8yPlatform.getAlarmApi(), task.getSourceLimiter());
 									
 			ArrayList<AlarmRepresentation> srcAlarms = new ArrayList<>();
 			for (AlarmRepresentation alarmRepresentation : sourceAlarmsIterable) {
@@ -119,7 +136,7 @@ public class AlarmMigrationService {
 			
 			Iterator<AlarmRepresentation> alarmItor = srcAlarms.iterator();
 
-			doMigrateAlarms(alarmItor, sourceDeviceId, targetDeviceId, targetC8yPlatform, report, uniqueHashesSet);
+			doMigrateAlarms(alarmItor, sourceDeviceId, targetDeviceId, targetC8yPlatform, task.getTargetLimiter(), task.getDryRunSink(), report, deduplicator);
 			
 			log.info(String.format("SourceDeviceId %s, DONE migrating alarms, target device id %s, numMigrated %d, numErrors %d, numDuplicatesSkipped %d ",
 					sourceDeviceId, targetDeviceId, report.migrated, report.errors, report.duplicatesSkipped ));
@@ -130,7 +147,7 @@ public class AlarmMigrationService {
 		} catch (Exception e) {
 			log.error("Error migrating alarms for device, sourceDeviceId " + sourceDeviceId, e);
 			registry.counter("AlarmMigrationService.deviceErrors").increment();
-			reportHandler.accept(DeviceSignalMigrationReport.builder()
+			reportHandler.accept(task.reportBuilder()
 					.durationSec((System.currentTimeMillis() - startTime)/1000)
 					.error(e.getMessage()).build());
 		}
@@ -140,8 +157,8 @@ public class AlarmMigrationService {
 	private void doMigrateAlarms(Iterator<AlarmRepresentation> alarmItor, 
 		String sourceDeviceId,
 		String targetDeviceId, 
-		Platform targetC8yPlatform, DeviceSignalMigrationReport report, 
-		Multiset<Integer> uniqueHashesSet) {
+		Platform targetC8yPlatform, RequestLimiter targetLimiter, NullSignalSink dryRunSink, DeviceSignalMigrationReport report, 
+		SignalDeduplicator<AlarmRepresentation> deduplicator) {
 		
 		AlarmApi alarms = targetC8yPlatform.getAlarmApi();
 	
@@ -163,11 +180,7 @@ public class AlarmMigrationService {
 					srcAlarm.setCount(maxAlarmCountValue);
 				}
 				
-				int uniqueHash = AlarmUtil.generateUniqueHash(srcAlarm);
-				
-				if (uniqueHashesSet.contains(uniqueHash)) {
-					// use a counter: allows for the possibility of multiple identical signals on tenant A to be copied to tenant B
-					uniqueHashesSet.remove(uniqueHash); 
+				if (deduplicator.isDuplicate(srcAlarm)) {
 					report.duplicatesSkipped++;
 					registry.counter("AlarmMigrationService.duplicatesSkipped").increment();
 					continue;
@@ -183,7 +196,17 @@ public class AlarmMigrationService {
 //				}
 				copyAlarm.setAttrs(srcAlarm.getAttrs());
 				copyAlarm.setSeverity(srcAlarm.getSeverity());
-			
+				
+				if (dryRunSink != null) {
+					// count creates, plus a status update of a multi-count alarm that is not active
+					boolean statusUpdate = srcAlarm.getCount() > 1 && !srcAlarm.getStatus().equals(CumulocityAlarmStatuses.ACTIVE.name());
+					dryRunSink.write(List.of(copyAlarm), (int) Math.min(Integer.MAX_VALUE, srcAlarm.getCount() + (statusUpdate ? 1 : 0)));
+					report.migrated ++;
+					continue;
+				}
+				
+				// a multi-count alarm is written with count requests
+				targetLimiter.acquireSignals((int) Math.min(Integer.MAX_VALUE, srcAlarm.getCount()));
 				
 				if (srcAlarm.getCount() == 1) {
 					// it's a one-time alarm
@@ -191,28 +214,28 @@ public class AlarmMigrationService {
 					copyAlarm.setDateTime(srcAlarm.getDateTime());
 					copyAlarm.setStatus(srcAlarm.getStatus());
 
-					alarms.create(copyAlarm);
+					targetLimiter.run(RequestClass.WRITE, () -> alarms.create(copyAlarm));
 				} else {
 					// it's a multi-count alarm  
 			        // creating the first occurence
 					copyAlarm.setDateTime(srcAlarm.getFirstOccurrenceDateTime());
 					copyAlarm.setStatus(CumulocityAlarmStatuses.ACTIVE.toString()); // ACTIVE forces deduping (no new alarm when posting again, just increase count) 
 				
-					AlarmRepresentation created = alarms.create(copyAlarm);
+					AlarmRepresentation created = targetLimiter.call(RequestClass.WRITE, () -> alarms.create(copyAlarm));
 					
 			        // now increment count
 					copyAlarm.setDateTime(srcAlarm.getDateTime()); // create all copies with time same as last copy 
 					for (int i = 0; i < srcAlarm.getCount()-1; i++) {
 						// don't worry about creating the multi alarms at the exact times, 
                         // they're not tracked (even by audit)
-						alarms.create(copyAlarm);
+						targetLimiter.run(RequestClass.WRITE, () -> alarms.create(copyAlarm));
 					}
 				
 			        // finally, if not active, update status
 					if (!srcAlarm.getStatus().equals(CumulocityAlarmStatuses.ACTIVE.name())) {
 						copyAlarm.setStatus(srcAlarm.getStatus());
 						copyAlarm.setId(created.getId());
-						alarms.update(copyAlarm);
+						targetLimiter.run(RequestClass.WRITE, () -> alarms.update(copyAlarm));
 //						alarms.create(copyAlarm);
 					}
 				}
@@ -234,22 +257,6 @@ public class AlarmMigrationService {
 	}
 
 
-	private Multiset<Integer> createUniqueHashesSet(Iterable<AlarmRepresentation> trgtAlarms) {		
-		Multiset<Integer> uniqueHashesSet = HashMultiset.create();
-						
-		for (AlarmRepresentation alarmRep : trgtAlarms) {
-			
-			AlarmUtil.trimTenantSpecificFields(alarmRep);
-			int uniqueHash = AlarmUtil.generateUniqueHash(alarmRep);
-			
-			uniqueHashesSet.add(uniqueHash);
-										
-		}
-		
-		return uniqueHashesSet;
-	}
-
-
 	
 
 }
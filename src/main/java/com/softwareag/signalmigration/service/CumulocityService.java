@@ -15,6 +15,7 @@ import org.springframework.stereotype.Service;
 import com.cumulocity.microservice.subscription.model.MicroserviceSubscriptionAddedEvent;
 import com.cumulocity.microservice.subscription.service.MicroserviceSubscriptionsService;
 import com.cumulocity.model.idtype.GId;
+import com.cumulocity.rest.representation.event.EventRepresentation;
 import com.cumulocity.rest.representation.inventory.ManagedObjectRepresentation;
 import com.cumulocity.rest.representation.measurement.MeasurementRepresentation;
 import com.cumulocity.rest.representation.operation.OperationRepresentation;
@@ -27,7 +28,9 @@ import com.cumulocity.sdk.client.inventory.ManagedObjectCollection;
 import com.cumulocity.sdk.client.measurement.MeasurementFilter;
 import com.softwareag.signalmigration.util.CustomInventoryFilter;
 import com.softwareag.signalmigration.util.CustomQueryParam;
+import com.softwareag.signalmigration.util.RequestLimiter;
 
+import io.github.resilience4j.retry.Retry;
 import lombok.extern.slf4j.Slf4j;
 
 @Service
@@ -196,6 +199,29 @@ public class CumulocityService {
     }
 
 	
+	public EventRepresentation createEvent(EventRepresentation event) {
+		return service.callForTenant(tenant, () -> {
+			return this.platform.getEventApi().create(event);
+		});
+	}
+	
+	/**
+	 * @return the events of the source with the given type, oldest first
+	 */
+	public Iterable<EventRepresentation> getEventsOldestFirst(String sourceId, String type, int pageSize) {
+		QueryParam[] params = new QueryParam[] {
+				CustomQueryParam.SOURCE.toQueryParam(sourceId),
+				CustomQueryParam.TYPE.toQueryParam(type),
+				// revert=true (oldest first) needs a date range
+				CustomQueryParam.DATE_FROM.toQueryParam("1970-01-01T00:00:00.000Z"),
+				CustomQueryParam.DATE_TO.toQueryParam("2999-12-31T23:59:59.999Z"),
+				CustomQueryParam.REVERT.toQueryParam("true")
+		};
+		return service.callForTenant(tenant, () -> {
+			return this.platform.getEventApi().getEvents().get(pageSize, params).allPages();
+		});
+	}
+	
 	public void createMeasurements(MeasurementRepresentation measurementRepresentation) {
 		 service.runForTenant(tenant, () -> {
     		 this.platform.getMeasurementApi().create(measurementRepresentation);
@@ -266,7 +292,7 @@ public class CumulocityService {
 
 					// build query based on last retrieved id (this speeds up performance significantly)
 
-					final QueryParam q = CustomQueryParam.QUERY.setValue(buildQueryById(query, last_id)).toQueryParam();
+					final QueryParam q = CustomQueryParam.QUERY.toQueryParam(buildQueryById(query, last_id));
 
 					//String query = "$filter=_id gt '" + last_id + "'$orderby=_id asc";
 					//final QueryParam q = CustomQueryParam.DEVICE_QUERY.setValue(query).toQueryParam();
@@ -310,11 +336,70 @@ public class CumulocityService {
 		});
 	}	
 	
+	/**
+	 * Iterate over the managed objects of any platform (e.g. a migration source tenant) page by page, 
+	 * with the same efficient paging as processManagedObjects (ordering by id, next page is "_id gt last_id"). 
+	 * Unlike processManagedObjects, errors are not swallowed: a page that can not be fetched 
+	 * (after retries) ends the iteration with an exception.
+	 * 
+	 * @param platform
+	 * @param query c8y query expression, with or without "$filter=" 
+	 * @param pageSize
+	 * @param retry applied to each page request
+	 * @param limiter each page request goes through it (inside the retry)
+	 * @param pageAction called with each page, in id order
+	 * @return number of managed objects processed
+	 * @throws Exception
+	 */
+	public long processManagedObjectPages(Platform platform, String query, int pageSize, Retry retry, RequestLimiter limiter,
+			Consumer<List<ManagedObjectRepresentation>> pageAction) throws Exception {
+		String last_id = "0";
+		long processedCount = 0;
+		boolean done = false;
+		
+		while (!done) {
+			final QueryParam q = CustomQueryParam.QUERY.toQueryParam(buildQueryById(query, last_id));
+			
+			final List<ManagedObjectRepresentation> managedObjects = retry.executeCallable(() -> {
+				return limiter.call(() -> platform.getInventoryApi().getManagedObjects().get(pageSize, q).getManagedObjects());
+			});
+			
+			final int size = managedObjects.size();
+			if (size > 0) {
+				pageAction.accept(managedObjects);
+				processedCount += size;
+				last_id = managedObjects.get(size-1).getId().getValue();
+			}
+			done = size < pageSize;
+			log.debug("Processed page of {} managed objects, total {}", size, processedCount);
+		}
+		return processedCount;
+	}
+	
 	private String buildQueryById(final String query, final String last_id) {
 		String full_query = "$filter=_id gt '" + last_id + "'";
-		if (StringUtils.isNotBlank(query)) {
-			full_query += " and (" + query + ")";
+		String filter = stripFilterKeyword(query);
+		if (StringUtils.isNotBlank(filter)) {
+			full_query += " and (" + filter + ")";
 		}
 		return full_query + "$orderby=_id asc";
 	}
+	
+	/**
+	 * "$filter=(has('foo')) $orderby=name" -> "(has('foo'))"; the ordering is dropped, paging by id needs its own
+	 */
+	static String stripFilterKeyword(final String query) {
+		if (query == null) {
+			return null;
+		}
+		String filter = query.trim();
+		int orderByIndex = filter.indexOf("$orderby=");
+		if (orderByIndex >= 0) {
+			filter = filter.substring(0, orderByIndex).trim();
+		}
+		if (filter.startsWith("$filter=")) {
+			filter = filter.substring("$filter=".length()).trim();
+		}
+		return filter;
+	}
 }
@@ -0,0 +1,315 @@
+package com.softwareag.signalmigration.service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+import javax.annotation.PostConstruct;
+
+import org.joda.time.DateTime;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.cumulocity.model.idtype.GId;
+import com.cumulocity.rest.representation.event.EventRepresentation;
+import com.cumulocity.rest.representation.inventory.ManagedObjectRepresentation;
+import com.softwareag.signalmigration.model.DeviceMappingCacheChunk;
+import com.softwareag.signalmigration.model.DeviceMappingCacheEntry;
+import com.softwareag.signalmigration.util.CustomInventoryFilter;
+import com.softwareag.signalmigration.util.ManagedObjectUtil;
+
+import io.github.resilience4j.retry.Retry;
+import io.github.resilience4j.retry.RetryRegistry;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Target devices found for source devices, kept across jobs, retries and resumes: mappings between two
+ * platforms hardly ever change. Entries are per (source host, target host, source device id) and expire after
+ * positiveTtlDays; devices without a target device are cached too, for negativeTtlMinutes.
+ *
+ * A job's external id mapping advice changes the lookup, so an entry counts only for a job whose advice leads
+ * to the same lookup (see get): a found device if the advice maps its matched external id to the same target
+ * external id, a device not found only for jobs without advice (advice may find it).
+ *
+ * Stored like the device reports (DeviceReportStore): a managed object per pair of hosts, with entries
+ * appended in chunks as events of type CHUNK_EVENT_TYPE; of two entries of a device the later one counts.
+ * A pair is loaded on first use, new entries are written by save(...).
+ *
+ * Also counts which external id types matched, so that lookups try those first.
+ */
+@Component
+@Slf4j
+public class DeviceMappingCache {
+
+	public static final String CACHE_FRAGMENT_NAME = "signalMigrationDeviceMappingCache";
+
+	public static final String CHUNK_EVENT_TYPE = "signalMigrationDeviceMappings";
+
+	public static final String CHUNK_FRAGMENT_NAME = "signalMigrationDeviceMappings";
+
+	@Value("${DeviceMappingCache.enabled:true}")
+	private boolean enabled;
+
+	/**
+	 * how long a device without a target device is not looked up again
+	 */
+	@Value("${DeviceMappingCache.negativeTtlMinutes:60}")
+	private int negativeTtlMinutes;
+
+	/**
+	 * how long a found target device is used without looking it up again, e.g. in case it was recreated
+	 */
+	@Value("${DeviceMappingCache.positiveTtlDays:30}")
+	private int positiveTtlDays;
+
+	@Value("${DeviceMappingCache.chunkSize:1000}")
+	private int chunkSize;
+
+	@Autowired
+	private CumulocityService cumulocityService;
+
+	@Autowired
+	@Qualifier("defaultExternalAPIRetry")
+	private RetryRegistry retryRegistry;
+
+	@Autowired
+	private MeterRegistry registry;
+
+	private Retry apiRequestRetry;
+
+	/**
+	 * key(sourceHost, targetHost) -> mappings between the two platforms
+	 */
+	private final Map<String, HostPairMappings> hostPairs = new ConcurrentHashMap<>();
+
+	private static class HostPairMappings {
+		final String sourceHost;
+		final String targetHost;
+		final Map<String, DeviceMappingCacheEntry> entries = new ConcurrentHashMap<>();
+		final Map<String, LongAdder> externalIdTypeMatches = new ConcurrentHashMap<>();
+		// guarded by this
+		List<DeviceMappingCacheEntry> unsavedEntries = new ArrayList<>();
+		String managedObjectId;
+		volatile boolean loaded = false;
+
+		HostPairMappings(String sourceHost, String targetHost) {
+			this.sourceHost = sourceHost;
+			this.targetHost = targetHost;
+		}
+
+		void add(DeviceMappingCacheEntry entry) {
+			DeviceMappingCacheEntry previous = entries.get(entry.getSourceDeviceId());
+			if (previous != null && previous.getTime() > entry.getTime()) {
+				return;
+			}
+			entries.put(entry.getSourceDeviceId(), entry);
+			if (!entry.isUnmapped() && entry.getExternalIdType() != null) {
+				externalIdTypeMatches.computeIfAbsent(entry.getExternalIdType(), type -> new LongAdder()).increment();
+			}
+		}
+	}
+
+	@PostConstruct
+	private void init() {
+		apiRequestRetry = retryRegistry.retry("create-c8y-operation");
+	}
+
+	/**
+	 * @param adviceIndex the job's external id mapping advice, source external id -> target external id
+	 * @return the cached entry of the source device, null if there is none, it has expired or it was looked up 
+	 * with other advice
+	 */
+	public DeviceMappingCacheEntry get(String sourceHost, String targetHost, String sourceDeviceId, Map<String, String> adviceIndex) {
+		if (!enabled) {
+			return null;
+		}
+		DeviceMappingCacheEntry entry = getHostPair(sourceHost, targetHost).entries.get(sourceDeviceId);
+		if (entry == null || isExpired(entry, System.currentTimeMillis())) {
+			registry.counter("DeviceMappingCache.misses").increment();
+			return null;
+		}
+		if (!matchesAdvice(entry, adviceIndex)) {
+			registry.counter("DeviceMappingCache.adviceMisses").increment();
+			return null;
+		}
+		registry.counter("DeviceMappingCache.hits").increment();
+		return entry;
+	}
+
+	/**
+	 * Cache the target device of the source device
+	 *
+	 * @param targetExternalId the external id the target device was found by: sourceExternalId, or the advised one
+	 */
+	public void putMapping(String sourceHost, String targetHost, String sourceDeviceId, String targetDeviceId, String externalIdType,
+			String sourceExternalId, String targetExternalId) {
+		put(sourceHost, targetHost, DeviceMappingCacheEntry.builder()
+				.sourceDeviceId(sourceDeviceId)
+				.targetDeviceId(targetDeviceId)
+				.externalIdType(externalIdType)
+				.sourceExternalId(sourceExternalId)
+				.targetExternalId(targetExternalId)
+				.time(System.currentTimeMillis())
+				.build());
+	}
+
+	/**
+	 * Cache that the source device has no target device; only for lookups without advice, see get
+	 */
+	public void putUnmapped(String sourceHost, String targetHost, String sourceDeviceId) {
+		put(sourceHost, targetHost, DeviceMappingCacheEntry.builder()
+				.sourceDeviceId(sourceDeviceId)
+				.time(System.currentTimeMillis())
+				.build());
+	}
+
+	/**
+	 * @return the external id types that matched between the platforms, most frequent first
+	 */
+	public List<String> getMatchingExternalIdTypes(String sourceHost, String targetHost) {
+		if (!enabled) {
+			return List.of();
+		}
+		return getHostPair(sourceHost, targetHost).externalIdTypeMatches.entrySet().stream()
+				.sorted(Comparator.comparingLong((Map.Entry<String, LongAdder> e) -> e.getValue().sum()).reversed())
+				.map(Map.Entry::getKey)
+				.collect(Collectors.toList());
+	}
+
+	/**
+	 * Write the entries added since the last save; entries that cannot be written are kept for the next save
+	 */
+	public void save(String sourceHost, String targetHost) {
+		if (!enabled) {
+			return;
+		}
+		HostPairMappings hostPair = getHostPair(sourceHost, targetHost);
+		synchronized (hostPair) {
+			List<DeviceMappingCacheEntry> entries = hostPair.unsavedEntries;
+			if (entries.isEmpty()) {
+				return;
+			}
+			try {
+				if (hostPair.managedObjectId == null) {
+					hostPair.managedObjectId = createManagedObject(hostPair);
+				}
+				ManagedObjectRepresentation cacheMo = new ManagedObjectRepresentation();
+				cacheMo.setId(GId.asGId(hostPair.managedObjectId));
+				int numWritten = 0;
+				for (int i = 0; i < entries.size(); i += chunkSize) {
+					List<DeviceMappingCacheEntry> chunkEntries = new ArrayList<>(entries.subList(i, Math.min(entries.size(), i + chunkSize)));
+					EventRepresentation event = new EventRepresentation();
+					event.setSource(cacheMo);
+					event.setType(CHUNK_EVENT_TYPE);
+					event.setText(String.format("Device mappings %s -> %s, %d devices", sourceHost, targetHost, chunkEntries.size()));
+					event.setDateTime(DateTime.now());
+					ManagedObjectUtil.writeObjectAsFragment(event, new DeviceMappingCacheChunk(sourceHost, targetHost, chunkEntries),
+							CHUNK_FRAGMENT_NAME);
+					apiRequestRetry.executeCallable(() -> {
+						return cumulocityService.createEvent(event);
+					});
+					numWritten += chunkEntries.size();
+				}
+				hostPair.unsavedEntries = new ArrayList<>();
+				log.info("Device mappings {} -> {}: {} entries saved", sourceHost, targetHost, numWritten);
+			} catch (Exception e) {
+				// chunks written before the error are written again next time, the later copy counts
+				log.error(String.format("Error saving device mappings %s -> %s", sourceHost, targetHost), e);
+				registry.counter("DeviceMappingCache.saveErrors").increment();
+			}
+		}
+	}
+
+	private boolean isExpired(DeviceMappingCacheEntry entry, long now) {
+		long ttlMillis = entry.isUnmapped() ? negativeTtlMinutes * 60_000L : positiveTtlDays * 86_400_000L;
+		return entry.getTime() + ttlMillis < now;
+	}
+
+	/**
+	 * @return true if a lookup with the advice would look up the same target external id as the entry's
+	 */
+	static boolean matchesAdvice(DeviceMappingCacheEntry entry, Map<String, String> adviceIndex) {
+		if (entry.isUnmapped() || entry.getSourceExternalId() == null) {
+			// not found, or cached before the external ids were kept: as looked up without advice
+			return adviceIndex.isEmpty();
+		}
+		String targetExternalId = adviceIndex.getOrDefault(entry.getSourceExternalId(), entry.getSourceExternalId());
+		return targetExternalId.equals(entry.getTargetExternalId());
+	}
+
+	private void put(String sourceHost, String targetHost, DeviceMappingCacheEntry entry) {
+		if (!enabled) {
+			return;
+		}
+		HostPairMappings hostPair = getHostPair(sourceHost, targetHost);
+		hostPair.add(entry);
+		synchronized (hostPair) {
+			hostPair.unsavedEntries.add(entry);
+		}
+	}
+
+	private HostPairMappings getHostPair(String sourceHost, String targetHost) {
+		HostPairMappings hostPair = hostPairs.computeIfAbsent(sourceHost + " -> " + targetHost,
+				key -> new HostPairMappings(sourceHost, targetHost));
+		if (!hostPair.loaded) {
+			synchronized (hostPair) {
+				if (!hostPair.loaded) {
+					load(hostPair);
+					hostPair.loaded = true;
+				}
+			}
+		}
+		return hostPair;
+	}
+
+	/**
+	 * Read the stored entries of the pair of hosts; if loading fails, the cache starts empty for the pair
+	 */
+	private void load(HostPairMappings hostPair) {
+		long startTime = System.currentTimeMillis();
+		try {
+			CustomInventoryFilter filter = new CustomInventoryFilter().byQuery(
+					String.format("has('%s') and %s.sourcePlatformHost eq '%s' and %s.targetPlatformHost eq '%s'",
+							CACHE_FRAGMENT_NAME, CACHE_FRAGMENT_NAME, hostPair.sourceHost, CACHE_FRAGMENT_NAME, hostPair.targetHost));
+			// two instances may have created a managed object for the pair at the same time, both are read
+			for (ManagedObjectRepresentation cacheMo : cumulocityService.getManagedObjectsByFilter(filter)) {
+				String managedObjectId = cacheMo.getId().getValue();
+				if (hostPair.managedObjectId == null) {
+					hostPair.managedObjectId = managedObjectId;
+				}
+				for (EventRepresentation event : cumulocityService.getEventsOldestFirst(managedObjectId, CHUNK_EVENT_TYPE, 20)) {
+					DeviceMappingCacheChunk chunk = ManagedObjectUtil.readObjectFromFragment(event, DeviceMappingCacheChunk.class, CHUNK_FRAGMENT_NAME);
+					for (DeviceMappingCacheEntry entry : chunk.getEntries()) {
+						// expired entries are not kept, nor do their external id types count
+						if (!isExpired(entry, startTime)) {
+							hostPair.add(entry);
+						}
+					}
+				}
+			}
+			log.info("Device mappings {} -> {}: {} entries loaded in {} ms", hostPair.sourceHost, hostPair.targetHost,
+					hostPair.entries.size(), System.currentTimeMillis() - startTime);
+		} catch (Exception e) {
+			log.error(String.format("Error loading device mappings %s -> %s, starting without", hostPair.sourceHost, hostPair.targetHost), e);
+		}
+	}
+
+	private String createManagedObject(HostPairMappings hostPair) throws Exception {
+		ManagedObjectRepresentation cacheMo = new ManagedObjectRepresentation();
+		cacheMo.setName(String.format("Signal migration device mappings %s -> %s", hostPair.sourceHost, hostPair.targetHost));
+		cacheMo.setType(CACHE_FRAGMENT_NAME);
+		ManagedObjectUtil.writeObjectAsFragment(cacheMo, Map.of(
+				"sourcePlatformHost", hostPair.sourceHost,
+				"targetPlatformHost", hostPair.targetHost), CACHE_FRAGMENT_NAME);
+		return apiRequestRetry.executeCallable(() -> {
+			return cumulocityService.createManagedObject(cacheMo);
+		}).getId().getValue();
+	}
+}
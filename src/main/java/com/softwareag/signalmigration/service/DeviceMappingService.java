@@ -0,0 +1,618 @@
+package com.softwareag.signalmigration.service;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Collectors;
+
+import javax.annotation.PostConstruct;
+
+import org.apache.commons.lang3.StringUtils;
+import org.joda.time.DateTime;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.cumulocity.model.ID;
+import com.cumulocity.model.idtype.GId;
+import com.cumulocity.rest.representation.identity.ExternalIDRepresentation;
+import com.cumulocity.rest.representation.inventory.ManagedObjectRepresentation;
+import com.cumulocity.sdk.client.Platform;
+import com.cumulocity.sdk.client.SDKException;
+import com.cumulocity.sdk.client.identity.ExternalIDCollection;
+import com.softwareag.signalmigration.model.DeviceMappingCacheEntry;
+import com.softwareag.signalmigration.model.DeviceMappingMode;
+import com.softwareag.signalmigration.model.MigrationJob;
+import com.softwareag.signalmigration.model.MigrationJobConfig;
+import com.softwareag.signalmigration.util.DeviceIdMap;
+import com.softwareag.signalmigration.util.ManagedObjectUtil;
+import com.softwareag.signalmigration.util.RequestLimiter;
+
+import io.github.resilience4j.retry.Retry;
+import io.github.resilience4j.retry.RetryRegistry;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Finds the target device of each source device, for each page of discovered source devices before it is handed
+ * to the workers, so that workers only move data and devices without a target are reported with their page.
+ * Devices in the job's c8yIdMappingAdvice are mapped by it, the others depending on the DeviceMappingMode:
+ * - EXTERNAL_ID: identity lookups, concurrently (at most parallelism per job) and through the job's request
+ *   limiters. Results are kept in the DeviceMappingCache, lookups try the external id types that matched before first.
+ * - FRAGMENT: the target devices with the source devices' values (TargetIndex), joined in memory with each page
+ *   of source devices on a fragment value. A job with few source devices queries the target by value, a larger one
+ *   reads the whole target inventory once.
+ */
+@Component
+@Slf4j
+public class DeviceMappingService {
+
+	/**
+	 * max concurrent lookups per job
+	 */
+	@Value("${DeviceMappingService.parallelism:8}")
+	private int parallelism;
+
+	/**
+	 * page size of the target inventory scan (DeviceMappingMode.FRAGMENT)
+	 */
+	@Value("${MigrationJobService.deviceDiscoveryPageSize:2000}")
+	private int pageSize;
+
+	/**
+	 * DeviceMappingMode.FRAGMENT: a job's target devices are queried by value until it has more source values than
+	 * this; then the whole target inventory is read instead
+	 */
+	@Value("${DeviceMappingService.maxTargetQueryValues:1000}")
+	private int maxTargetQueryValues;
+
+	/**
+	 * DeviceMappingMode.FRAGMENT: values per target query ("path eq 'v1' or path eq 'v2' ...")
+	 */
+	@Value("${DeviceMappingService.valuesPerTargetQuery:50}")
+	private int valuesPerTargetQuery;
+
+	@Autowired
+	@Qualifier("defaultExternalAPIRetry")
+	private RetryRegistry retryRegistry;
+
+	@Autowired
+	private MeterRegistry registry;
+
+	@Autowired
+	private DeviceMappingCache mappingCache;
+
+	@Autowired
+	private CumulocityService cumulocityService;
+
+	@Autowired
+	private MappingAdviceStore mappingAdviceStore;
+
+	private Retry apiRequestRetry;
+
+	private static final List<String> IGNORED_EXT_ID_TYPES = List.of("c8y_OpcuaDevice");
+
+	@Data
+	public static class MappingResult {
+		/**
+		 * source device id -> target device id
+		 */
+		private DeviceIdMap targetDeviceIds = new DeviceIdMap();
+		/**
+		 * source device id -> why no target device was found
+		 */
+		private Map<String, String> errors = new HashMap<>();
+	}
+
+	/**
+	 * DeviceMappingMode.FRAGMENT: the match values of the target inventory (see indexTargetInventory), or of the target
+	 * devices with the values queried so far (see indexTargetDevices)
+	 */
+	public static class TargetIndex {
+		private final String targetPath;
+		/**
+		 * null if the whole target inventory is indexed
+		 */
+		private Set<String> queriedValues;
+		/**
+		 * value -> first target device with it
+		 */
+		private final Map<String, String> targetIdsByValue = new HashMap<>();
+		/**
+		 * value -> number of target devices with it, of the values found on more than one
+		 */
+		private final Map<String, Integer> numTargetsByValue = new HashMap<>();
+
+		public TargetIndex(String targetPath) {
+			this.targetPath = targetPath;
+		}
+
+		public void add(String value, String targetDeviceId) {
+			if (targetIdsByValue.putIfAbsent(value, targetDeviceId) != null) {
+				numTargetsByValue.merge(value, 2, (count, two) -> count + 1);
+			}
+		}
+
+		public int size() {
+			return targetIdsByValue.size();
+		}
+	}
+
+	/**
+	 * The job's mapping advice as hash indexes, built once per discovery (see indexMappingAdvice) and used for
+	 * all of its pages
+	 */
+	public static class AdviceIndex {
+		/**
+		 * c8yIdMappingAdvice: source device id -> target device id
+		 */
+		private final Map<String, String> targetIdsBySourceId;
+		/**
+		 * DeviceMappingMode.EXTERNAL_ID: source external id -> target external id, see loadExternalIdMappingAdvice
+		 */
+		private final Map<String, String> targetExternalIds;
+
+		AdviceIndex(Map<String, String> targetIdsBySourceId, Map<String, String> targetExternalIds) {
+			this.targetIdsBySourceId = targetIdsBySourceId;
+			this.targetExternalIds = targetExternalIds;
+		}
+	}
+
+	@PostConstruct
+	private void init() {
+		apiRequestRetry = retryRegistry.retry("create-c8y-operation");
+	}
+
+	/**
+	 * Find the target devices of the source devices; a device not found or failing is put into the errors
+	 * of the result, it does not stop the others.
+	 *
+	 * @param sourceMatchValues DeviceMappingMode.FRAGMENT: source device id -> value at sourceMappingPath,
+	 * collected while the source devices are discovered (see getMatchValue)
+	 * @param targetIndex DeviceMappingMode.FRAGMENT: the job's index of the target inventory (see indexTargetInventory),
+	 * null in the other modes
+	 * @param adviceIndex the job's mapping advice, see indexMappingAdvice
+	 * @param stopRequested checked before each lookup; devices not looked up are in neither map of the result
+	 */
+	public MappingResult mapDevices(Collection<String> sourceDeviceIds, Map<String, String> sourceMatchValues, TargetIndex targetIndex,
+			AdviceIndex adviceIndex, MigrationJob job, BooleanSupplier stopRequested) throws Exception {
+		long startTime = System.currentTimeMillis();
+		MigrationJobConfig config = job.getConfig();
+		MappingResult result = new MappingResult();
+		List<String> remaining = mapByC8yIdAdvice(sourceDeviceIds, adviceIndex.targetIdsBySourceId, result);
+		if (!remaining.isEmpty()) {
+			switch (getMappingMode(config)) {
+			case C8Y_ID:
+				remaining.forEach(id -> result.errors.put(id, "no c8yIdMappingAdvice for source device id: " + id));
+				break;
+			case FRAGMENT:
+				mapByTargetInventory(remaining, sourceMatchValues, targetIndex, config.getSourceMappingPath(), result);
+				break;
+			default:
+				mapByExternalId(remaining, adviceIndex.targetExternalIds, job, stopRequested, result);
+			}
+		}
+		registry.counter("DeviceMappingService.unmappedDevices").increment(result.errors.size());
+		log.info("Mapped {} of {} source devices in {} ms, {} without target device, job {}", result.targetDeviceIds.size(),
+				sourceDeviceIds.size(), System.currentTimeMillis() - startTime, result.errors.size(), job);
+		return result;
+	}
+
+	/**
+	 * @throws IllegalArgumentException if the mapping settings of the job are incomplete
+	 */
+	public void validate(MigrationJobConfig config) {
+		DeviceMappingMode mode = getMappingMode(config);
+		if (mode == DeviceMappingMode.FRAGMENT && StringUtils.isBlank(config.getSourceMappingPath())) {
+			throw new IllegalArgumentException("sourceMappingPath is required for deviceMappingMode " + mode);
+		}
+		if (mode == DeviceMappingMode.C8Y_ID && (config.getC8yIdMappingAdvice() == null || config.getC8yIdMappingAdvice().isEmpty())) {
+			throw new IllegalArgumentException("c8yIdMappingAdvice is required for deviceMappingMode " + mode);
+		}
+		if (StringUtils.isNotBlank(config.getExternalIdMappingAdviceId())) {
+			mappingAdviceStore.validate(config.getExternalIdMappingAdviceId());
+		}
+	}
+
+	public static DeviceMappingMode getMappingMode(MigrationJobConfig config) {
+		return config.getDeviceMappingMode() == null ? DeviceMappingMode.EXTERNAL_ID : config.getDeviceMappingMode();
+	}
+
+	/**
+	 * @return the value at the path (a fragment path, or name or type) as a string; null if there is none
+	 * or it is not a single value
+	 */
+	public static String getMatchValue(ManagedObjectRepresentation managedObject, String path) {
+		Object value;
+		if ("name".equals(path)) {
+			value = managedObject.getName();
+		} else if ("type".equals(path)) {
+			value = managedObject.getType();
+		} else {
+			value = ManagedObjectUtil.getNestedProperty(managedObject, path);
+		}
+		if (value instanceof String || value instanceof Number || value instanceof Boolean) {
+			return value.toString();
+		}
+		return null;
+	}
+
+	/**
+	 * Indexes the c8yIdMappingAdvice and, in DeviceMappingMode.EXTERNAL_ID, the external id mapping advice (an 
+	 * uploaded advice is read from the MappingAdviceStore), to be passed to mapDevices for every page of a discovery
+	 */
+	public AdviceIndex indexMappingAdvice(MigrationJobConfig config) {
+		Map<String, String> targetIdsBySourceId = new HashMap<>();
+		if (config.getC8yIdMappingAdvice() != null) {
+			config.getC8yIdMappingAdvice().forEach(advice -> targetIdsBySourceId.put(advice.getSourceId(), advice.getTargetId()));
+		}
+		Map<String, String> targetExternalIds = getMappingMode(config) == DeviceMappingMode.EXTERNAL_ID 
+				? loadExternalIdMappingAdvice(config) : new HashMap<>();
+		return new AdviceIndex(targetIdsBySourceId, targetExternalIds);
+	}
+
+	/**
+	 * @return the source devices not in the advice
+	 */
+	private List<String> mapByC8yIdAdvice(Collection<String> sourceDeviceIds, Map<String, String> targetIdsBySourceId, 
+			MappingResult result) {
+		if (targetIdsBySourceId.isEmpty()) {
+			return new ArrayList<>(sourceDeviceIds);
+		}
+		List<String> remaining = new ArrayList<>();
+		for (String sourceDeviceId : sourceDeviceIds) {
+			String targetDeviceId = targetIdsBySourceId.get(sourceDeviceId);
+			if (targetDeviceId != null) {
+				result.targetDeviceIds.put(sourceDeviceId, targetDeviceId);
+			} else {
+				remaining.add(sourceDeviceId);
+			}
+		}
+		return remaining;
+	}
+
+	/**
+	 * DeviceMappingMode.FRAGMENT: makes sure the index holds the target devices with the given source values. While
+	 * the job has at most maxTargetQueryValues values, only the target devices with them are read, valuesPerTargetQuery
+	 * values per query; beyond that (or for a value that can not be put into a query) the whole target inventory is
+	 * read once, see indexTargetInventory.
+	 *
+	 * @param targetIndex the job's index so far, null before the first page with devices to look up
+	 * @param values match values of the source devices to look up
+	 * @return the job's index
+	 * @throws Exception if the target inventory can not be read
+	 */
+	public TargetIndex indexTargetDevices(TargetIndex targetIndex, Collection<String> values, MigrationJob job) throws Exception {
+		if (targetIndex != null && targetIndex.queriedValues == null) {
+			return targetIndex;
+		}
+		Set<String> newValues = new LinkedHashSet<>(values);
+		if (targetIndex != null) {
+			newValues.removeAll(targetIndex.queriedValues);
+		}
+		if (newValues.isEmpty()) {
+			return targetIndex;
+		}
+		int numQueriedValues = targetIndex == null ? 0 : targetIndex.queriedValues.size();
+		if (numQueriedValues + newValues.size() > maxTargetQueryValues || newValues.stream().anyMatch(v -> v.contains("'"))) {
+			return indexTargetInventory(job);
+		}
+
+		MigrationJobConfig config = job.getConfig();
+		String targetPath = getTargetPath(config);
+		if (targetIndex == null) {
+			targetIndex = new TargetIndex(targetPath);
+			targetIndex.queriedValues = new HashSet<>();
+		}
+		TargetIndex index = targetIndex;
+		List<String> batch = new ArrayList<>(valuesPerTargetQuery);
+		for (String value : newValues) {
+			batch.add(value);
+			if (batch.size() == valuesPerTargetQuery) {
+				queryTargetDevices(index, batch, job);
+				batch.clear();
+			}
+		}
+		if (!batch.isEmpty()) {
+			queryTargetDevices(index, batch, job);
+		}
+		index.queriedValues.addAll(newValues);
+		log.info("Queried the target devices of {} values of {} ({} in total), {} found, job {}", newValues.size(), targetPath,
+				index.queriedValues.size(), index.size(), job);
+		return index;
+	}
+
+	private void queryTargetDevices(TargetIndex targetIndex, List<String> values, MigrationJob job) throws Exception {
+		String query = String.format("(%s) and (%s)", 
+				CumulocityService.stripFilterKeyword(getTargetQuery(job.getConfig(), targetIndex.targetPath)),
+				buildValueQuery(targetIndex.targetPath, values));
+		Set<String> queried = new HashSet<>(values);
+		cumulocityService.processManagedObjectPages(job.getTargetPlatform(), query, pageSize, apiRequestRetry,
+				job.getTargetRequestLimiter(), (page) -> {
+			for (ManagedObjectRepresentation targetDevice : page) {
+				// eq matches '*' as a wildcard, only exact matches count
+				String value = getMatchValue(targetDevice, targetIndex.targetPath);
+				if (value != null && queried.contains(value)) {
+					targetIndex.add(value, targetDevice.getId().getValue());
+				}
+			}
+		});
+	}
+
+	/**
+	 * @return "path eq 'v1' or path eq 'v2' ..."; a number or boolean also as unquoted value, as the target may
+	 * store it as one
+	 */
+	static String buildValueQuery(String path, Collection<String> values) {
+		List<String> terms = new ArrayList<>();
+		for (String value : values) {
+			terms.add(String.format("%s eq '%s'", path, value));
+			if (value.matches("-?\\d+(\\.\\d+)?|true|false")) {
+				terms.add(String.format("%s eq %s", path, value));
+			}
+		}
+		return String.join(" or ", terms);
+	}
+
+	/**
+	 * DeviceMappingMode.FRAGMENT: reads the target inventory once (paged by id) and keeps the match value of every
+	 * target device, so that each page of source devices is joined with it in memory as it is discovered. Memory
+	 * is bounded by the number of target devices with a value.
+	 *
+	 * @throws Exception if the target inventory can not be read
+	 */
+	public TargetIndex indexTargetInventory(MigrationJob job) throws Exception {
+		MigrationJobConfig config = job.getConfig();
+		String targetPath = getTargetPath(config);
+		String targetQuery = getTargetQuery(config, targetPath);
+		TargetIndex targetIndex = new TargetIndex(targetPath);
+		long numTargets = cumulocityService.processManagedObjectPages(job.getTargetPlatform(), targetQuery, pageSize, apiRequestRetry,
+				job.getTargetRequestLimiter(), (page) -> {
+			for (ManagedObjectRepresentation targetDevice : page) {
+				String value = getMatchValue(targetDevice, targetPath);
+				if (value != null) {
+					targetIndex.add(value, targetDevice.getId().getValue());
+				}
+			}
+		});
+		log.info("Read {} target managed objects ({}), {} values of {}, job {}", numTargets, targetQuery, targetIndex.size(),
+				targetPath, job);
+		return targetIndex;
+	}
+
+	private static String getTargetPath(MigrationJobConfig config) {
+		return StringUtils.isNotBlank(config.getTargetMappingPath()) ? config.getTargetMappingPath() : config.getSourceMappingPath();
+	}
+
+	private static String getTargetQuery(MigrationJobConfig config, String targetPath) {
+		if (StringUtils.isNotBlank(config.getTargetDevicesQuery())) {
+			return config.getTargetDevicesQuery();
+		}
+		return "name".equals(targetPath) || "type".equals(targetPath) ? "has('c8y_IsDevice')"
+				: String.format("has('%s')", targetPath.split("\\.")[0]);
+	}
+
+	/**
+	 * Hash join of the source devices with the target index on the match value. A value found on several target
+	 * devices is an error for the source devices with that value.
+	 */
+	static void mapByTargetInventory(List<String> sourceDeviceIds, Map<String, String> sourceMatchValues, TargetIndex targetIndex,
+			String sourcePath, MappingResult result) {
+		String targetPath = targetIndex.targetPath;
+		for (String sourceDeviceId : sourceDeviceIds) {
+			String value = sourceMatchValues.get(sourceDeviceId);
+			if (value == null) {
+				result.errors.put(sourceDeviceId, String.format("source device %s has no %s", sourceDeviceId, sourcePath));
+				continue;
+			}
+			String targetDeviceId = targetIndex.targetIdsByValue.get(value);
+			Integer numMatches = targetIndex.numTargetsByValue.get(value);
+			if (targetDeviceId == null) {
+				result.errors.put(sourceDeviceId, String.format("unable to find target device with %s = %s for source device id: %s",
+						targetPath, value, sourceDeviceId));
+			} else if (numMatches != null) {
+				result.errors.put(sourceDeviceId, String.format("%d target devices with %s = %s for source device id: %s",
+						numMatches, targetPath, value, sourceDeviceId));
+			} else {
+				result.targetDeviceIds.put(sourceDeviceId, targetDeviceId);
+			}
+		}
+	}
+
+	/**
+	 * Identity lookups, at most parallelism at the same time
+	 */
+	private void mapByExternalId(List<String> sourceDeviceIds, Map<String, String> adviceIndex, MigrationJob job, 
+			BooleanSupplier stopRequested, MappingResult result) throws InterruptedException {
+		ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(parallelism, sourceDeviceIds.size())));
+		try {
+			List<Future<?>> lookups = new ArrayList<>(sourceDeviceIds.size());
+			for (String sourceDeviceId : sourceDeviceIds) {
+				lookups.add(executor.submit(() -> {
+					if (stopRequested.getAsBoolean()) {
+						return;
+					}
+					try {
+						String targetDeviceId = mapDevice(sourceDeviceId, job, adviceIndex);
+						synchronized (result) {
+							result.targetDeviceIds.put(sourceDeviceId, targetDeviceId);
+						}
+					} catch (Exception e) {
+						synchronized (result) {
+							result.errors.put(sourceDeviceId, e.getMessage());
+						}
+					}
+				}));
+			}
+			for (Future<?> lookup : lookups) {
+				try {
+					lookup.get();
+				} catch (ExecutionException e) {
+					log.error("Error mapping device, job " + job.getC8yId(), e.getCause()); // not expected, mapDevice errors are caught
+				}
+			}
+		} finally {
+			executor.shutdownNow();
+			mappingCache.save(getPlatformKey(job.getConfig().getSourcePlatformHost(), job.getConfig().getSourcePlatformLoginString()),
+					getPlatformKey(job.getConfig().getTargetPlatformHost(), job.getConfig().getTargetPlatformLoginString()));
+		}
+	}
+
+	/**
+	 * Hash index of the job's external id mapping advice, instead of a search of the advice for every external id
+	 * 
+	 * @return source external id -> target external id, from the uploaded advice (a later row replaces an earlier
+	 * one) and the advice in the job (the first row of a source external id counts, as it takes precedence)
+	 */
+	private Map<String, String> loadExternalIdMappingAdvice(MigrationJobConfig config) {
+		Map<String, String> index = new HashMap<>();
+		if (StringUtils.isNotBlank(config.getExternalIdMappingAdviceId())) {
+			index.putAll(mappingAdviceStore.loadIndex(config.getExternalIdMappingAdviceId()));
+		}
+		if (config.getExternalIdMappingAdvice() != null) {
+			Map<String, String> inlineIndex = new HashMap<>();
+			config.getExternalIdMappingAdvice().forEach(advice -> inlineIndex.putIfAbsent(advice.getSourceExternalId(), advice.getTargetExternalId()));
+			index.putAll(inlineIndex);
+		}
+		return index;
+	}
+
+	/**
+	 * @param adviceIndex see loadExternalIdMappingAdvice
+	 * @return the id of the target device of the source device
+	 * @throws IOException if there is no target device
+	 */
+	private String mapDevice(String sourceDeviceId, MigrationJob job, Map<String, String> adviceIndex) throws Exception {
+		String sourceKey = getPlatformKey(job.getConfig().getSourcePlatformHost(), job.getConfig().getSourcePlatformLoginString());
+		String targetKey = getPlatformKey(job.getConfig().getTargetPlatformHost(), job.getConfig().getTargetPlatformLoginString());
+		DeviceMappingCacheEntry cached = mappingCache.get(sourceKey, targetKey, sourceDeviceId, adviceIndex);
+		if (cached != null) {
+			if (cached.isUnmapped()) {
+				throw new IOException("unable to find target device for source device id: " + sourceDeviceId 
+						+ " (not found at " + new DateTime(cached.getTime()) + ", cached)");
+			}
+			return cached.getTargetDeviceId();
+		}
+
+		DeviceMapping mapping = getTargetDeviceForSourceByExtId(sourceDeviceId, adviceIndex,
+				mappingCache.getMatchingExternalIdTypes(sourceKey, targetKey), job.getSourcePlatform(),
+				job.getTargetPlatform(), job.getSourceRequestLimiter(), job.getTargetRequestLimiter());
+		if (mapping.targetDeviceId == null) {
+			if (mapping.definite && adviceIndex.isEmpty()) {
+				mappingCache.putUnmapped(sourceKey, targetKey, sourceDeviceId);
+			}
+			throw new IOException("unable to find target device for source device id: "  + sourceDeviceId);
+		}
+		mappingCache.putMapping(sourceKey, targetKey, sourceDeviceId, mapping.targetDeviceId, mapping.externalIdType,
+				mapping.sourceExternalId, mapping.targetExternalId);
+		return mapping.targetDeviceId;
+	}
+
+	/**
+	 * @return the host, with the tenant of the login string if there is one: a host may serve several tenants
+	 */
+	private static String getPlatformKey(String host, String loginString) {
+		if (loginString == null || loginString.indexOf('/') < 0) {
+			return host;
+		}
+		return loginString.substring(0, loginString.indexOf('/')) + "@" + host;
+	}
+
+	private static class DeviceMapping {
+		String targetDeviceId; // null if not found
+		String externalIdType;
+		String sourceExternalId;
+		String targetExternalId;
+		/**
+		 * not found, and not because of an error (that may not occur next time)
+		 */
+		boolean definite = true;
+	}
+
+	private DeviceMapping getTargetDeviceForSourceByExtId(String sourceDeviceId, Map<String, String> adviceIndex, 
+			List<String> preferredExtIdTypes, Platform sourcePlatform, Platform targetPlatform,
+			RequestLimiter sourceLimiter, RequestLimiter targetLimiter) throws Exception {
+		// match by external id
+		log.debug("Looking for target device for source device with id {}", sourceDeviceId);
+
+		List<ExternalIDRepresentation> externalIds = apiRequestRetry.executeCallable( ()-> {
+			return sourceLimiter.call(() -> {
+				ExternalIDCollection externalIdsColl = sourcePlatform.getIdentityApi().getExternalIdsOfGlobalId(GId.asGId(sourceDeviceId));
+				return externalIdsColl.get(200).getExternalIds();
+			});
+		});
+
+		log.debug("sourceDeviceId {}; Found external ids: {}", sourceDeviceId, externalIds);
+		// filter, and try the types that matched for other devices first (in the order of their matches)
+		externalIds = externalIds.stream().filter( e-> {
+			return !IGNORED_EXT_ID_TYPES.contains(e.getType());
+			})
+				.sorted(Comparator.comparingInt(e -> {
+					int rank = preferredExtIdTypes.indexOf(e.getType());
+					return rank < 0 ? Integer.MAX_VALUE : rank;
+				}))
+				.collect(Collectors.toList());
+
+		if (externalIds.isEmpty()) {
+			throw new IllegalStateException("no suitable external ids of id " + sourceDeviceId);
+		}
+
+		DeviceMapping mapping = new DeviceMapping();
+		String targetExtId = "";
+		for (ExternalIDRepresentation extId : externalIds) {
+			try {
+				String sourceExtId = extId.getExternalId();
+
+				// see if there's explicit mapping advice
+				String advisedTargetExtId = adviceIndex.get(sourceExtId);
+				if (advisedTargetExtId != null) {
+					targetExtId = advisedTargetExtId; // use mapping advice
+					log.debug("mapping advice present source ext id: {} target ext id: {}", sourceExtId, targetExtId);
+				} else {
+					targetExtId = sourceExtId; // use source id
+				}
+
+				// find target device
+				String targetDeviceId = getDeviceForExternalId(extId.getType(), targetExtId, targetPlatform, targetLimiter);
+				log.debug("sourceDeviceId {}; Found matching target device; ext id: {}:{}, target device id: {}, ext id: {}:{}", sourceDeviceId, extId.getType(), sourceExtId,
+						targetDeviceId, extId.getType(), targetExtId);
+				mapping.targetDeviceId = targetDeviceId;
+				mapping.externalIdType = extId.getType();
+				mapping.sourceExternalId = sourceExtId;
+				mapping.targetExternalId = targetExtId;
+				return mapping;
+			} catch (IOException e) {
+				log.debug("Unable to find by extId " + extId.getType() + " : " + targetExtId);
+				if (!(e.getCause() instanceof SDKException) || ((SDKException) e.getCause()).getHttpStatus() != 404) {
+					mapping.definite = false;
+				}
+			}
+		}
+
+		return mapping;
+	}
+
+	private String getDeviceForExternalId(String type, String value, Platform platform, RequestLimiter limiter) throws IOException {
+		try {
+			ID extId = new ID(type, value);
+			ExternalIDRepresentation targetExternalIdRep = limiter.call(() -> platform.getIdentityApi().getExternalId(extId));
+			return targetExternalIdRep.getManagedObject().getId().getValue();
+		} catch (Exception e) {
+			throw new IOException("unable to find external id", e);
+		}
+	}
+}
@@ -0,0 +1,400 @@
+package com.softwareag.signalmigration.service;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.function.IntSupplier;
+
+import javax.annotation.PostConstruct;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Runs device migrations (and their sub-windows) of all jobs on one worker pool, with a separate
+ * queue per job instead of a shared FIFO queue:
+ * - a job never has more than its maxParallelDeviceMigrations tasks running
+ * - free workers are given to the jobs with pending tasks by smooth weighted round-robin,
+ *   so a small job submitted after a large one does not wait for all of it
+ * Within a job, tasks submitted with a priority (LARGEST_FIRST: the device's signal count) start after the
+ * other pending tasks, highest priority first, no matter when they were submitted.
+ * A job's limit may change while it runs (see AdaptiveConcurrencyService), call dispatch() when it grows.
+ * A paused job keeps its queue, but none of its tasks are started until it is resumed.
+ * On shutdown no more tasks are started, see shutdown(...).
+ */
+@Component
+@Slf4j
+public class DeviceMigrationScheduler {
+
+	/**
+	 * total number of workers, shared by all jobs; with adaptive concurrency at least AdaptiveConcurrency.maxLimit
+	 */
+	@Value("${MigrationJobService.numParallelDeviceMigrations:9}")
+	private int numParallelDeviceMigrations;
+
+	@Autowired
+	private MeterRegistry registry;
+
+	@Autowired
+	private AdaptiveConcurrencyService adaptiveConcurrencyService;
+
+	private int numWorkers;
+
+	private ThreadPoolExecutor workers;
+
+	private final Object lock = new Object();
+
+	// guarded by lock
+	private final Map<String, JobQueue> jobQueues = new LinkedHashMap<>();
+	private int numActiveTasks = 0;
+	private boolean shuttingDown = false;
+
+	private static class PrioritizedTask implements Comparable<PrioritizedTask> {
+		final Runnable task;
+		final long priority;
+		final long seq; // FIFO among equal priorities
+
+		PrioritizedTask(Runnable task, long priority, long seq) {
+			this.task = task;
+			this.priority = priority;
+			this.seq = seq;
+		}
+
+		@Override
+		public int compareTo(PrioritizedTask other) {
+			int c = Long.compare(other.priority, priority);
+			return c != 0 ? c : Long.compare(seq, other.seq);
+		}
+	}
+
+	private static class JobQueue {
+		final String jobId;
+		final Deque<Runnable> pendingTasks = new ArrayDeque<>();
+		final PriorityQueue<PrioritizedTask> prioritizedTasks = new PriorityQueue<>();
+		long numPrioritizedTasksSubmitted = 0;
+		IntSupplier maxActiveTasks; // <= 0: no per-job limit
+		int weight;
+		int numActiveTasks = 0;
+		long currentWeight = 0; // smooth weighted round-robin state
+		boolean closed = false;
+		boolean cancelled = false;
+		boolean paused = false;
+		List<Meter> meters = new ArrayList<>();
+
+		JobQueue(String jobId) {
+			this.jobId = jobId;
+		}
+
+		boolean canStartTask() {
+			if (paused || getNumPendingTasks() == 0) {
+				return false;
+			}
+			int max = maxActiveTasks.getAsInt();
+			return max <= 0 || numActiveTasks < max;
+		}
+
+		boolean isIdle() {
+			return getNumPendingTasks() == 0 && numActiveTasks == 0;
+		}
+
+		int getNumPendingTasks() {
+			return pendingTasks.size() + prioritizedTasks.size();
+		}
+
+		Runnable pollTask() {
+			Runnable task = pendingTasks.pollFirst();
+			return task != null ? task : prioritizedTasks.poll().task;
+		}
+
+		void clear() {
+			pendingTasks.clear();
+			prioritizedTasks.clear();
+		}
+	}
+
+	@PostConstruct
+	private void init() {
+		numWorkers = Math.max(numParallelDeviceMigrations, adaptiveConcurrencyService.getMaxLimit());
+		workers = (ThreadPoolExecutor) Executors.newFixedThreadPool(numWorkers);
+		log.info("Device migration workers: {}", numWorkers);
+		adaptiveConcurrencyService.addLimitListener(this::dispatch);
+		registry.gauge("MigrationJobService.executorServiceApproxActiveCount", workers, ThreadPoolExecutor::getActiveCount);
+	}
+
+	/**
+	 * Register a job (or update its settings if already registered) before submitting its tasks
+	 *
+	 * @param jobId
+	 * @param maxActiveTasks max tasks of this job running at the same time, <= 0 for no per-job limit;
+	 * evaluated on every dispatch
+	 * @param weight share of the workers relative to other jobs with pending tasks
+	 */
+	public void registerJob(String jobId, IntSupplier maxActiveTasks, int weight) {
+		synchronized (lock) {
+			JobQueue jobQueue = jobQueues.get(jobId);
+			if (jobQueue == null) {
+				jobQueue = new JobQueue(jobId);
+				jobQueues.put(jobId, jobQueue);
+				registerMeters(jobQueue);
+			}
+			jobQueue.maxActiveTasks = maxActiveTasks;
+			jobQueue.weight = Math.max(1, weight);
+			jobQueue.closed = false;
+			jobQueue.cancelled = false;
+		}
+		dispatch();
+	}
+
+	/**
+	 * Change the settings of a registered job while it runs; running and pending tasks are kept, the new 
+	 * limit applies from the next dispatch
+	 * 
+	 * @return false if the job is not registered (any more)
+	 */
+	public boolean updateJob(String jobId, IntSupplier maxActiveTasks, int weight) {
+		synchronized (lock) {
+			JobQueue jobQueue = jobQueues.get(jobId);
+			if (jobQueue == null) {
+				return false;
+			}
+			jobQueue.maxActiveTasks = maxActiveTasks;
+			jobQueue.weight = Math.max(1, weight);
+		}
+		dispatch();
+		return true;
+	}
+
+	/**
+	 * The job will not submit more tasks; its queue is removed once its running and pending tasks are done
+	 */
+	public void unregisterJob(String jobId) {
+		synchronized (lock) {
+			JobQueue jobQueue = jobQueues.get(jobId);
+			if (jobQueue != null) {
+				jobQueue.closed = true;
+				removeIfDone(jobQueue);
+			}
+		}
+	}
+
+	/**
+	 * Drop the job's pending tasks and tasks submitted later; running tasks complete
+	 */
+	public void cancelJob(String jobId) {
+		synchronized (lock) {
+			JobQueue jobQueue = jobQueues.get(jobId);
+			if (jobQueue != null) {
+				log.info("Job {} cancelled, {} pending tasks dropped", jobId, jobQueue.getNumPendingTasks());
+				jobQueue.clear();
+				jobQueue.cancelled = true;
+				jobQueue.closed = true;
+				removeIfDone(jobQueue);
+			}
+		}
+	}
+
+	/**
+	 * Stop starting the job's pending tasks, or start them again; running tasks are not affected. 
+	 * Ignored if the job is not registered.
+	 */
+	public void setJobPaused(String jobId, boolean paused) {
+		synchronized (lock) {
+			JobQueue jobQueue = jobQueues.get(jobId);
+			if (jobQueue == null) {
+				return;
+			}
+			if (jobQueue.paused != paused) {
+				log.info("Job {} {}, {} pending tasks", jobId, paused ? "paused" : "resumed", jobQueue.getNumPendingTasks());
+			}
+			jobQueue.paused = paused;
+		}
+		dispatch();
+	}
+	
+	/**
+	 * Queue a task at the end of the job's queue
+	 */
+	public void submit(String jobId, Runnable task) {
+		synchronized (lock) {
+			JobQueue jobQueue = getJobQueue(jobId);
+			if (jobQueue.cancelled) {
+				return;
+			}
+			jobQueue.pendingTasks.addLast(task);
+		}
+		dispatch();
+	}
+
+	/**
+	 * Queue a task by priority, behind the tasks queued without one
+	 * 
+	 * @param priority tasks with a higher priority start first, also if they are submitted later
+	 */
+	public void submit(String jobId, Runnable task, long priority) {
+		synchronized (lock) {
+			JobQueue jobQueue = getJobQueue(jobId);
+			if (jobQueue.cancelled) {
+				return;
+			}
+			jobQueue.prioritizedTasks.add(new PrioritizedTask(task, priority, jobQueue.numPrioritizedTasksSubmitted++));
+		}
+		dispatch();
+	}
+
+	/**
+	 * Queue a task at the head of the job's queue, e.g. the sub-windows of a device that has already started
+	 */
+	public void submitFirst(String jobId, Runnable task) {
+		synchronized (lock) {
+			JobQueue jobQueue = getJobQueue(jobId);
+			if (jobQueue.cancelled) {
+				return;
+			}
+			jobQueue.pendingTasks.addFirst(task);
+		}
+		dispatch();
+	}
+
+	/**
+	 * Stop starting tasks and wait until the running tasks have returned, at most timeoutMillis; workers
+	 * still running then are interrupted. Pending tasks stay in their queues and are not run.
+	 *
+	 * @return true if all running tasks returned in time
+	 */
+	public boolean shutdown(long timeoutMillis) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + timeoutMillis;
+		synchronized (lock) {
+			shuttingDown = true;
+			int numPendingTasks = jobQueues.values().stream().mapToInt(JobQueue::getNumPendingTasks).sum();
+			log.info("Shutting down, waiting for {} running tasks; {} pending tasks are not started", numActiveTasks, numPendingTasks);
+			long remaining;
+			while (numActiveTasks > 0 && (remaining = deadline - System.currentTimeMillis()) > 0) {
+				lock.wait(remaining);
+			}
+			if (numActiveTasks > 0) {
+				log.warn("{} tasks still running after {} ms, interrupting them", numActiveTasks, timeoutMillis);
+				workers.shutdownNow();
+				return false;
+			}
+		}
+		workers.shutdown();
+		return true;
+	}
+
+	public int getNumPendingTasks(String jobId) {
+		synchronized (lock) {
+			JobQueue jobQueue = jobQueues.get(jobId);
+			return jobQueue == null ? 0 : jobQueue.getNumPendingTasks();
+		}
+	}
+
+	public int getNumActiveTasks(String jobId) {
+		synchronized (lock) {
+			JobQueue jobQueue = jobQueues.get(jobId);
+			return jobQueue == null ? 0 : jobQueue.numActiveTasks;
+		}
+	}
+
+	private JobQueue getJobQueue(String jobId) {
+		JobQueue jobQueue = jobQueues.get(jobId);
+		if (jobQueue == null) {
+			throw new IllegalStateException("Job not registered with scheduler: " + jobId);
+		}
+		return jobQueue;
+	}
+
+	/**
+	 * Start pending tasks on free workers, as far as the job limits allow
+	 */
+	public void dispatch() {
+		synchronized (lock) {
+			while (!shuttingDown && numActiveTasks < numWorkers) {
+				JobQueue jobQueue = selectNextJobQueue();
+				if (jobQueue == null) {
+					return;
+				}
+				Runnable task = jobQueue.pollTask();
+				jobQueue.numActiveTasks++;
+				numActiveTasks++;
+				workers.execute( ()-> {
+					runTask(jobQueue, task);
+				});
+			}
+		}
+	}
+
+	/**
+	 * smooth weighted round-robin (as in nginx) among the jobs that can start a task
+	 */
+	private JobQueue selectNextJobQueue() {
+		JobQueue selected = null;
+		long totalWeight = 0;
+		for (JobQueue jobQueue : jobQueues.values()) {
+			if (!jobQueue.canStartTask()) {
+				continue;
+			}
+			jobQueue.currentWeight += jobQueue.weight;
+			totalWeight += jobQueue.weight;
+			if (selected == null || jobQueue.currentWeight > selected.currentWeight) {
+				selected = jobQueue;
+			}
+		}
+		if (selected != null) {
+			selected.currentWeight -= totalWeight;
+		}
+		return selected;
+	}
+
+	private void runTask(JobQueue jobQueue, Runnable task) {
+		try {
+			task.run();
+		} catch (Throwable e) {
+			log.error("Error running task of job " + jobQueue.jobId, e);
+		} finally {
+			synchronized (lock) {
+				jobQueue.numActiveTasks--;
+				numActiveTasks--;
+				removeIfDone(jobQueue);
+				lock.notifyAll(); // shutdown(...) waits for the running tasks
+			}
+			dispatch();
+		}
+	}
+
+	private void removeIfDone(JobQueue jobQueue) {
+		if (jobQueue.closed && jobQueue.isIdle() && jobQueues.get(jobQueue.jobId) == jobQueue) {
+			jobQueues.remove(jobQueue.jobId);
+			jobQueue.meters.forEach(registry::remove);
+			log.info("Job {} removed from scheduler", jobQueue.jobId);
+		}
+	}
+
+	private void registerMeters(JobQueue jobQueue) {
+		jobQueue.meters.add(Gauge.builder("MigrationJobService.jobPendingDeviceMigrations", jobQueue, q -> {
+					synchronized (lock) {
+						return q.getNumPendingTasks();
+					}
+				})
+				.tag("jobId", jobQueue.jobId)
+				.register(registry));
+		jobQueue.meters.add(Gauge.builder("MigrationJobService.jobActiveDeviceMigrations", jobQueue, q -> {
+					synchronized (lock) {
+						return q.numActiveTasks;
+					}
+				})
+				.tag("jobId", jobQueue.jobId)
+				.register(registry));
+	}
+}
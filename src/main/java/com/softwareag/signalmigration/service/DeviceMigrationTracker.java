@@ -0,0 +1,87 @@
+package com.softwareag.signalmigration.service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import com.softwareag.signalmigration.model.DeviceSignalMigrationReport;
+import com.softwareag.signalmigration.model.SignalType;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Collects the reports of the parts of one device migration that run on separate workers
+ * (one part per signal type and sub-window); once every part of a signal type has reported, its
+ * windows are combined into a signal type report, and once every signal type has reported, the
+ * device report is handed to the job.
+ */
+@Slf4j
+class DeviceMigrationTracker {
+
+	private final String sourceDeviceId;
+	private final String targetDeviceId;
+	private final long startTime = System.currentTimeMillis();
+	private final Consumer<DeviceSignalMigrationReport> deviceReportHandler;
+
+	// guarded by this
+	private final Map<SignalType, Integer> remainingParts;
+	private final Map<SignalType, List<DeviceSignalMigrationReport>> partReports = new EnumMap<>(SignalType.class);
+	private final List<DeviceSignalMigrationReport> signalTypeReports = new ArrayList<>();
+	private final int numSignalTypes;
+
+	/**
+	 * @param numPartsPerSignalType number of sub-windows of each signal type migrated for the device
+	 */
+	DeviceMigrationTracker(String sourceDeviceId, String targetDeviceId, Map<SignalType, Integer> numPartsPerSignalType,
+			Consumer<DeviceSignalMigrationReport> deviceReportHandler) {
+		this.sourceDeviceId = sourceDeviceId;
+		this.targetDeviceId = targetDeviceId;
+		this.remainingParts = new EnumMap<>(numPartsPerSignalType);
+		this.numSignalTypes = numPartsPerSignalType.size();
+		this.deviceReportHandler = deviceReportHandler;
+	}
+
+	void handlePartReport(DeviceSignalMigrationReport partReport) {
+		DeviceSignalMigrationReport deviceReport;
+		synchronized (this) {
+			SignalType signalType = partReport.getSignalType();
+			partReports.computeIfAbsent(signalType, t -> new ArrayList<>()).add(partReport);
+			int remaining = remainingParts.merge(signalType, -1, Integer::sum);
+			if (remaining > 0) {
+				log.debug("Source device {}, {} part done, {} parts remaining", sourceDeviceId, signalType, remaining);
+				return;
+			}
+
+			signalTypeReports.add(combineWindows(partReports.remove(signalType)));
+			if (signalTypeReports.size() < numSignalTypes) {
+				log.debug("Source device {}, {} done", sourceDeviceId, signalType);
+				return;
+			}
+
+			if (numSignalTypes == 1) {
+				deviceReport = signalTypeReports.get(0);
+			} else {
+				signalTypeReports.sort(Comparator.comparing(DeviceSignalMigrationReport::getSignalType));
+				deviceReport = DeviceSignalMigrationReport.combineSignalTypes(sourceDeviceId, targetDeviceId,
+						new ArrayList<>(signalTypeReports), getDurationSec());
+			}
+		}
+		deviceReportHandler.accept(deviceReport);
+	}
+
+	private DeviceSignalMigrationReport combineWindows(List<DeviceSignalMigrationReport> reports) {
+		if (reports.size() == 1) {
+			return reports.get(0);
+		}
+		reports.sort(Comparator.comparing(DeviceSignalMigrationReport::getDateFrom,
+				Comparator.nullsFirst(Comparator.naturalOrder())));
+		return DeviceSignalMigrationReport.combine(sourceDeviceId, targetDeviceId, reports, getDurationSec());
+	}
+
+	private long getDurationSec() {
+		return (System.currentTimeMillis() - startTime) / 1000;
+	}
+}
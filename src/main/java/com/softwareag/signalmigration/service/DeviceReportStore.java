@@ -0,0 +1,137 @@
+package com.softwareag.signalmigration.service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import javax.annotation.PostConstruct;
+
+import org.joda.time.DateTime;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.cumulocity.model.idtype.GId;
+import com.cumulocity.rest.representation.event.EventRepresentation;
+import com.cumulocity.rest.representation.inventory.ManagedObjectRepresentation;
+import com.softwareag.signalmigration.model.DeviceReportChunk;
+import com.softwareag.signalmigration.model.DeviceSignalMigrationReport;
+import com.softwareag.signalmigration.model.MigrationJob;
+import com.softwareag.signalmigration.util.ManagedObjectUtil;
+
+import io.github.resilience4j.retry.Retry;
+import io.github.resilience4j.retry.RetryRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Keeps the device reports of a job outside of the job managed object: reports are appended in chunks,
+ * each chunk an event of type REPORT_EVENT_TYPE with the job managed object as source.
+ * The store is append only; when a device is migrated again (retry), its latest report counts.
+ */
+@Component
+@Slf4j
+public class DeviceReportStore {
+
+	public static final String REPORT_EVENT_TYPE = "signalMigrationReports";
+
+	public static final String REPORT_FRAGMENT_NAME = "signalMigrationReports";
+
+	@Value("${DeviceReportStore.chunkSize:200}")
+	private int chunkSize;
+
+	/**
+	 * chunks read per request
+	 */
+	@Value("${DeviceReportStore.readPageSize:20}")
+	private int readPageSize;
+
+	@Autowired
+	private CumulocityService cumulocityService;
+
+	@Autowired
+	@Qualifier("defaultExternalAPIRetry")
+	private RetryRegistry retryRegistry;
+
+	private Retry apiRequestRetry;
+
+	@PostConstruct
+	private void init() {
+		apiRequestRetry = retryRegistry.retry("create-c8y-operation");
+	}
+
+	/**
+	 * Write the reports as new chunks of the job (which must have been saved before);
+	 * updates the job's pointer to the reports
+	 */
+	public void append(MigrationJob job, List<DeviceSignalMigrationReport> reports) throws Exception {
+		ManagedObjectRepresentation jobMo = new ManagedObjectRepresentation();
+		jobMo.setId(GId.asGId(job.getC8yId()));
+
+		for (int i = 0; i < reports.size(); i += chunkSize) {
+			DeviceReportChunk chunk = new DeviceReportChunk(job.getNumReportChunks(),
+					new ArrayList<>(reports.subList(i, Math.min(reports.size(), i + chunkSize))));
+
+			EventRepresentation event = new EventRepresentation();
+			event.setSource(jobMo);
+			event.setType(REPORT_EVENT_TYPE);
+			event.setText(String.format("Signal migration job %s, %d device reports", job.getC8yId(), chunk.getReports().size()));
+			event.setDateTime(DateTime.now());
+			ManagedObjectUtil.writeObjectAsFragment(event, chunk, REPORT_FRAGMENT_NAME);
+
+			apiRequestRetry.executeCallable(() -> {
+				return cumulocityService.createEvent(event);
+			});
+			job.setReportEventType(REPORT_EVENT_TYPE);
+			job.setNumReportChunks(chunk.getSeq() + 1);
+		}
+		log.debug("Job {}: {} reports written, {} chunks", job.getC8yId(), reports.size(), job.getNumReportChunks());
+	}
+
+	/**
+	 * Streams the reports of the job in the order they were read. Chunks written at the same time may be read
+	 * in any order, possibly pages apart, so a report is skipped if a report of its device from a later chunk
+	 * (higher seq) was passed before: the last report passed for a device is its latest.
+	 */
+	public void forEachReport(String jobId, Consumer<DeviceSignalMigrationReport> action) {
+		// source device id -> seq of the last report passed
+		Map<String, Integer> deviceSeqs = new HashMap<>();
+		for (EventRepresentation event : cumulocityService.getEventsOldestFirst(jobId, REPORT_EVENT_TYPE, readPageSize)) {
+			DeviceReportChunk chunk = ManagedObjectUtil.readObjectFromFragment(event, DeviceReportChunk.class, REPORT_FRAGMENT_NAME);
+			Integer seq = chunk.getSeq();
+			for (DeviceSignalMigrationReport report : chunk.getReports()) {
+				Integer passedSeq = deviceSeqs.get(report.getSourceDeviceId());
+				if (passedSeq != null && passedSeq > seq) {
+					continue;
+				}
+				deviceSeqs.put(report.getSourceDeviceId(), seq);
+				action.accept(report);
+			}
+		}
+	}
+
+	/**
+	 * @return the latest report of every device of the job; loads all reports, for small jobs and tests
+	 */
+	public List<DeviceSignalMigrationReport> getReports(String jobId) {
+		LinkedHashMap<String, DeviceSignalMigrationReport> reports = new LinkedHashMap<>();
+		forEachReport(jobId, report -> {
+			reports.remove(report.getSourceDeviceId());
+			reports.put(report.getSourceDeviceId(), report);
+		});
+		return new ArrayList<>(reports.values());
+	}
+
+	/**
+	 * Index the job's stored reports (processed and failed devices), without keeping the reports
+	 */
+	public void loadIndex(MigrationJob job) {
+		long startTime = System.currentTimeMillis();
+		forEachReport(job.getC8yId(), job::indexDeviceReport);
+		log.info("Job {}: indexed {} device reports in {} ms", job.getC8yId(), job.getNumCompletedDevices(),
+				System.currentTimeMillis() - startTime);
+	}
+}
@@ -0,0 +1,382 @@
+package com.softwareag.signalmigration.service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.cumulocity.model.operation.OperationStatus;
+import com.cumulocity.rest.representation.inventory.ManagedObjectRepresentation;
+import com.softwareag.signalmigration.model.ClusterProgress;
+import com.softwareag.signalmigration.model.MigrationJob;
+import com.softwareag.signalmigration.model.MigrationJobConfig;
+import com.softwareag.signalmigration.model.PartitionLease;
+import com.softwareag.signalmigration.service.PartitionLeaseCoordinator.LeaseRound;
+import com.softwareag.signalmigration.util.CustomInventoryFilter;
+import com.softwareag.signalmigration.util.ManagedObjectUtil;
+
+import io.github.resilience4j.retry.Retry;
+import io.github.resilience4j.retry.RetryRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Runs distributed jobs (MigrationJobConfig.distributed) on all instances of the microservice.
+ *
+ * A distributed job is split into numPartitions partition jobs (devices are assigned by the hash of their id),
+ * each a regular job with its own managed object, reports and cursors, plus a lease fragment. Every instance
+ * periodically renews its leases and claims free or expired ones, up to maxPartitionsPerInstance per job,
+ * and runs the claimed partition jobs (resuming them if another instance had started them).
+ * When every partition is done, the distributed job is completed.
+ *
+ * Instances find distributed jobs started on other instances by polling inventory.
+ */
+@Component
+@Slf4j
+public class DistributedJobService {
+
+	/**
+	 * not set = host name and a random suffix
+	 */
+	@Value("${DistributedJobService.instanceId:}")
+	private String instanceId;
+
+	@Value("${DistributedJobService.defaultNumPartitions:16}")
+	private int defaultNumPartitions;
+
+	@Value("${DistributedJobService.maxPartitionsPerInstance:4}")
+	private int maxPartitionsPerInstance;
+
+	/**
+	 * a lease not renewed for this long is taken over by another instance
+	 */
+	@Value("${DistributedJobService.leaseDurationSeconds:60}")
+	private int leaseDurationSeconds;
+
+	@Value("${DistributedJobService.renewIntervalSeconds:15}")
+	private int renewIntervalSeconds;
+
+	/**
+	 * how often to look for distributed jobs started on other instances
+	 */
+	@Value("${DistributedJobService.pollIntervalSeconds:60}")
+	private int pollIntervalSeconds;
+
+	@Autowired
+	private CumulocityService cumulocityService;
+
+	@Autowired
+	private MigrationJobService migrationJobService;
+
+	@Autowired
+	private MigrationJobPersister jobPersister;
+
+	@Autowired
+	private DeviceMigrationScheduler scheduler;
+
+	@Autowired
+	private PartitionLeaseStore leaseStore;
+
+	@Autowired
+	@Qualifier("defaultExternalAPIRetry")
+	private RetryRegistry retryRegistry;
+
+	private Retry apiRequestRetry;
+
+	private PartitionLeaseCoordinator coordinator;
+
+	/**
+	 * all coordination runs on this thread
+	 */
+	private ScheduledExecutorService coordinatorThread;
+
+	// confined to the coordinator thread
+	private final Map<String, MigrationJob> joinedJobs = new HashMap<>();
+	private final Map<String, MigrationJob> runningPartitionJobs = new HashMap<>();
+	/**
+	 * partitionJobId -> earliest start time of a partition taken over from another instance
+	 */
+	private final Map<String, Long> delayedPartitionStarts = new HashMap<>();
+	private long lastPollTime = 0;
+
+	@PostConstruct
+	private void init() {
+		apiRequestRetry = retryRegistry.retry("create-c8y-operation");
+		if (StringUtils.isBlank(instanceId)) {
+			String host = StringUtils.defaultIfBlank(System.getenv("HOSTNAME"), "instance");
+			instanceId = host + "-" + UUID.randomUUID().toString().substring(0, 8);
+		}
+		coordinator = new PartitionLeaseCoordinator(leaseStore, instanceId, leaseDurationSeconds * 1000L, System::currentTimeMillis);
+		coordinatorThread = Executors.newSingleThreadScheduledExecutor();
+		coordinatorThread.scheduleWithFixedDelay(this::coordinate, renewIntervalSeconds, renewIntervalSeconds, TimeUnit.SECONDS);
+		log.info("Distributed jobs: instance id {}", instanceId);
+	}
+
+	/**
+	 * Start (or resume) a distributed job: saves it, creates its partition jobs if they do not exist yet,
+	 * and joins it
+	 *
+	 * @return the saved job managed object
+	 */
+	public ManagedObjectRepresentation startJob(MigrationJob job) throws Exception {
+		MigrationJobConfig config = job.getConfig();
+		if (config.getNumPartitions() == null) {
+			config.setNumPartitions(defaultNumPartitions);
+		}
+		job.setVersion(MigrationJob.VERSION);
+		job.setError(null);
+		job.setStatus(OperationStatus.EXECUTING);
+		ManagedObjectRepresentation savedJob = jobPersister.save(job);
+
+		if (leaseStore.getLeases(job.getC8yId()).isEmpty()) {
+			createPartitionJobs(job);
+		}
+		runOnCoordinatorThread(() -> {
+			joinedJobs.put(job.getC8yId(), job);
+			coordinateJob(job);
+			return null;
+		});
+		return savedJob;
+	}
+
+	/**
+	 * Retry the failed partitions of a completed distributed job
+	 */
+	public void retryJob(MigrationJob job) throws Exception {
+		runOnCoordinatorThread(() -> {
+			int numRetried = 0;
+			for (PartitionLease lease : leaseStore.getLeases(job.getC8yId())) {
+				if (!lease.isFailed()) {
+					continue;
+				}
+				// PENDING: the claiming instance removes the reports with errors and runs the partition again
+				MigrationJob partitionJob = migrationJobService.loadJob(lease.getPartitionJobId());
+				partitionJob.setStatus(OperationStatus.PENDING);
+				jobPersister.save(partitionJob);
+				coordinator.reopen(lease);
+				numRetried++;
+			}
+			if (numRetried == 0 && job.getError() == null) {
+				throw new IllegalStateException("No failed partitions found! Will not retry.");
+			}
+			log.info("Retrying {} partitions of distributed job {}", numRetried, job.getC8yId());
+			synchronized (job) {
+				job.setError(null);
+				job.setStatus(OperationStatus.EXECUTING);
+			}
+			jobPersister.save(job);
+			joinedJobs.put(job.getC8yId(), job);
+			return null;
+		});
+	}
+
+	/**
+	 * @return progress summed over the partition jobs, and which instance runs which partition
+	 */
+	public ClusterProgress getClusterProgress(String jobId) {
+		MigrationJob job = ManagedObjectUtil.readObjectFromFragment(cumulocityService.getManagedObject(jobId), MigrationJob.class,
+				MigrationJobService.JOB_FRAGMENT_NAME);
+		ClusterProgress progress = new ClusterProgress();
+		progress.setJobId(jobId);
+		progress.setStatus(job.getStatus());
+		CustomInventoryFilter filter = new CustomInventoryFilter().byQuery(
+				String.format("has('%s') and %s.jobId eq '%s'", InventoryPartitionLeaseStore.LEASE_FRAGMENT_NAME,
+						InventoryPartitionLeaseStore.LEASE_FRAGMENT_NAME, jobId));
+		for (ManagedObjectRepresentation moRep : cumulocityService.getManagedObjectsByFilter(filter)) {
+			PartitionLease lease = ManagedObjectUtil.readObjectFromFragment(moRep, PartitionLease.class,
+					InventoryPartitionLeaseStore.LEASE_FRAGMENT_NAME);
+			lease.setPartitionJobId(moRep.getId().getValue());
+			MigrationJob partitionJob = ManagedObjectUtil.readObjectFromFragment(moRep, MigrationJob.class,
+					MigrationJobService.JOB_FRAGMENT_NAME);
+			progress.add(lease, partitionJob);
+		}
+		progress.getPartitions().sort((a, b) -> Integer.compare(a.getPartition(), b.getPartition()));
+		return progress;
+	}
+
+	public String getInstanceId() {
+		return instanceId;
+	}
+
+	@PreDestroy
+	private void shutdown() throws Exception {
+		coordinatorThread.shutdown();
+		coordinatorThread.awaitTermination(renewIntervalSeconds, TimeUnit.SECONDS);
+		// hand the partitions over right away instead of after the lease duration
+		for (MigrationJob job : joinedJobs.values()) {
+			for (PartitionLease lease : leaseStore.getLeases(job.getC8yId())) {
+				if (!instanceId.equals(lease.getOwner()) || lease.isDone()) {
+					continue;
+				}
+				MigrationJob partitionJob = runningPartitionJobs.get(lease.getPartitionJobId());
+				if (partitionJob != null) {
+					jobPersister.save(partitionJob);
+					partitionJob.setDetached(true);
+				}
+				coordinator.release(lease, false, false);
+				log.info("Released partition {} of job {}", lease.getPartition(), job.getC8yId());
+			}
+		}
+	}
+
+	private void createPartitionJobs(MigrationJob job) throws Exception {
+		MigrationJobConfig config = job.getConfig();
+		for (int partition = 0; partition < config.getNumPartitions(); partition++) {
+			MigrationJob partitionJob = new MigrationJob(config.toBuilder()
+					.distributed(null)
+					.partition(partition)
+					.parentJobId(job.getC8yId())
+					.jobName(config.getJobName() + " [" + partition + "/" + config.getNumPartitions() + "]")
+					.build());
+			ManagedObjectRepresentation partitionJobMo = new ManagedObjectRepresentation();
+			ManagedObjectUtil.writeObjectAsFragment(partitionJobMo, partitionJob, MigrationJobService.JOB_FRAGMENT_NAME);
+			InventoryPartitionLeaseStore.writeFreeLease(partitionJobMo, job.getC8yId(), partition);
+			apiRequestRetry.executeCallable(() -> {
+				return cumulocityService.createManagedObject(partitionJobMo);
+			});
+		}
+		log.info("Created {} partition jobs of distributed job {}", config.getNumPartitions(), job.getC8yId());
+	}
+
+	private void coordinate() {
+		try {
+			if (System.currentTimeMillis() - lastPollTime >= pollIntervalSeconds * 1000L) {
+				lastPollTime = System.currentTimeMillis();
+				joinJobsOfOtherInstances();
+			}
+		} catch (Exception e) {
+			log.error("Error looking for distributed jobs", e);
+		}
+		for (MigrationJob job : new ArrayList<>(joinedJobs.values())) {
+			try {
+				coordinateJob(job);
+			} catch (Exception e) {
+				log.error("Error coordinating distributed job " + job.getC8yId(), e);
+			}
+		}
+	}
+
+	private void joinJobsOfOtherInstances() {
+		CustomInventoryFilter filter = new CustomInventoryFilter().byQuery(
+				String.format("has('%s') and %s.status eq '%s' and %s.config.distributed eq true and not(has('%s'))",
+						MigrationJobService.JOB_FRAGMENT_NAME,
+						MigrationJobService.JOB_FRAGMENT_NAME,
+						OperationStatus.EXECUTING.name(),
+						MigrationJobService.JOB_FRAGMENT_NAME,
+						InventoryPartitionLeaseStore.LEASE_FRAGMENT_NAME));
+		for (ManagedObjectRepresentation moRep : cumulocityService.getManagedObjectsByFilter(filter)) {
+			String jobId = moRep.getId().getValue();
+			if (!joinedJobs.containsKey(jobId)) {
+				MigrationJob job = ManagedObjectUtil.readObjectFromFragment(moRep, MigrationJob.class, MigrationJobService.JOB_FRAGMENT_NAME);
+				job.setC8yId(jobId);
+				joinedJobs.put(jobId, job);
+				log.info("Joined distributed job {}", jobId);
+			}
+		}
+	}
+
+	private void coordinateJob(MigrationJob job) throws Exception {
+		String jobId = job.getC8yId();
+		LeaseRound round = coordinator.renewAndClaim(jobId, maxPartitionsPerInstance);
+
+		for (PartitionLease lease : round.getLost()) {
+			delayedPartitionStarts.remove(lease.getPartitionJobId());
+			MigrationJob partitionJob = runningPartitionJobs.remove(lease.getPartitionJobId());
+			if (partitionJob != null) {
+				// running tasks stop at their next batch boundary (see MigrationJobService.migrateDeviceSignals)
+				partitionJob.setDetached(true);
+				scheduler.cancelJob(lease.getPartitionJobId());
+			}
+		}
+
+		for (PartitionLease lease : round.getHeld()) {
+			MigrationJob partitionJob = runningPartitionJobs.get(lease.getPartitionJobId());
+			Long delayedStart = delayedPartitionStarts.get(lease.getPartitionJobId());
+			if (round.getTakenOver().contains(lease)) {
+				// the previous owner may still be writing signals until its next renewal fails
+				delayedPartitionStarts.put(lease.getPartitionJobId(), System.currentTimeMillis() + renewIntervalSeconds * 1000L);
+				log.info("Partition {} of job {} taken over, starting in {} s", lease.getPartition(), jobId, renewIntervalSeconds);
+			} else if (round.getClaimed().contains(lease)) {
+				startPartitionJob(lease);
+			} else if (delayedStart != null) {
+				if (System.currentTimeMillis() >= delayedStart) {
+					delayedPartitionStarts.remove(lease.getPartitionJobId());
+					startPartitionJob(lease);
+				}
+			} else if (partitionJob != null && !partitionJob.getStatus().equals(OperationStatus.EXECUTING)) {
+				releaseCompletedPartitionJob(lease, partitionJob);
+			}
+		}
+
+		if (round.isAllDone()) {
+			completeJob(job, round.getLeases());
+		}
+	}
+
+	private void startPartitionJob(PartitionLease lease) throws Exception {
+		MigrationJob partitionJob = migrationJobService.loadJob(lease.getPartitionJobId());
+		switch (partitionJob.getStatus()) {
+		case PENDING:
+			// new, or to be retried
+			partitionJob.removeReportsWithErrors();
+			break;
+		case EXECUTING:
+			log.info("Resuming partition {} of job {}", lease.getPartition(), lease.getJobId());
+			break;
+		default:
+			// completed, but the previous owner did not release it
+			releaseCompletedPartitionJob(lease, partitionJob);
+			return;
+		}
+		runningPartitionJobs.put(lease.getPartitionJobId(), partitionJob);
+		migrationJobService.runMigrationJob(partitionJob);
+	}
+
+	private void releaseCompletedPartitionJob(PartitionLease lease, MigrationJob partitionJob) throws Exception {
+		jobPersister.save(partitionJob); // final state saved before others see the partition as done
+		boolean failed = partitionJob.getStatus().equals(OperationStatus.FAILED);
+		if (coordinator.release(lease, true, failed)) {
+			runningPartitionJobs.remove(lease.getPartitionJobId());
+			log.info("Partition {} of job {} done, failed: {}", lease.getPartition(), lease.getJobId(), failed);
+		}
+	}
+
+	private void completeJob(MigrationJob job, List<PartitionLease> leases) throws Exception {
+		ClusterProgress progress = getClusterProgress(job.getC8yId());
+		synchronized (job) {
+			job.setNumTotalDevices(progress.getNumTotalDevices());
+			job.setNumCompletedDevices(progress.getNumCompletedDevices());
+			job.setNumFailedDevices(progress.getNumFailedDevices());
+			job.setNumMigratedSignals(progress.getNumMigratedSignals());
+			job.setNumSignalErrors(progress.getNumSignalErrors());
+			job.setNumDuplicatesSkipped(progress.getNumDuplicatesSkipped());
+			job.setStatus(progress.getNumPartitionsFailed() > 0 ? OperationStatus.FAILED : OperationStatus.SUCCESSFUL);
+		}
+		jobPersister.save(job);
+		joinedJobs.remove(job.getC8yId());
+		coordinator.removeJob(job.getC8yId(), leases);
+		log.info("Distributed job {} completed: {}", job.getC8yId(), job);
+	}
+
+	private <T> T runOnCoordinatorThread(Callable<T> action) throws Exception {
+		try {
+			return coordinatorThread.submit(action).get();
+		} catch (ExecutionException e) {
+			throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+		}
+	}
+}
@@ -13,10 +13,13 @@ import com.cumulocity.rest.representation.inventory.ManagedObjectRepresentation;
 import com.cumulocity.sdk.client.Platform;
 import com.cumulocity.sdk.client.QueryParam;
 import com.cumulocity.sdk.client.event.EventApi;
-import com.google.common.collect.HashMultiset;
-import com.google.common.collect.Multiset;
 import com.softwareag.signalmigration.model.DeviceSignalMigrationReport;
+import com.softwareag.signalmigration.model.SignalMigrationTask;
 import com.softwareag.signalmigration.util.EventUtil;
+import com.softwareag.signalmigration.util.HashSetDeduplicator;
+import com.softwareag.signalmigration.util.MergeJoinDeduplicator;
+import com.softwareag.signalmigration.util.RequestLimiter.RequestClass;
+import com.softwareag.signalmigration.util.SignalDeduplicator;
 
 import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
@@ -25,21 +28,27 @@ import lombok.extern.slf4j.Slf4j;
 @Slf4j
 public class EventMigrationService {
 	
+	/**
+	 * events are created one by one; the cursor is committed every CURSOR_INTERVAL events
+	 */
+	private static final int CURSOR_INTERVAL = 200;
+	
 	@Autowired
 	private MeterRegistry registry;
 
+	@Autowired
+	private TargetCountCheck targetCountCheck;
+
 	/**
-	 * @param sourceDeviceId
-	 * @param targetDeviceId
-	 * @param signalQueryParams
-	 * @param sourceC8yPlatform
+	 * @param task source/target device, range (whole job range or a sub-window) and report handler
 	 */
-	public void migrateEvents(String sourceDeviceId, 
-			String targetDeviceId,
-			List<QueryParam> signalQueryParams,
-			Platform sourceC8yPlatform,
-			Platform targetC8yPlatform,
-			Consumer<DeviceSignalMigrationReport> reportHandler) {
+	public void migrateEvents(SignalMigrationTask task) {
+		String sourceDeviceId = task.getSourceDeviceId();
+		String targetDeviceId = task.getTargetDeviceId();
+		List<QueryParam> signalQueryParams = task.getSignalQueryParams();
+		Platform sourceC8yPlatform = task.getSourcePlatform();
+		Platform targetC8yPlatform = task.getTargetPlatform();
+		Consumer<DeviceSignalMigrationReport> reportHandler = task.getReportHandler();
 
 		log.info(String.format("Will now migrate device events, src device id: %s, targetDeviceId: %s", sourceDeviceId,
 				targetDeviceId));
@@ -52,16 +61,27 @@ public class EventMigrationService {
 			targetMo.setId(GId.asGId(targetDeviceId));
 			
 			EventApi targetEventAPI = targetC8yPlatform.getEventApi();
-			Iterable<EventRepresentation> trgtEvents = EventUtil.getEvents(targetDeviceId, signalQueryParams, targetEventAPI);
-			Multiset<Integer> uniqueHashesSet = createUniqueHashesSet(trgtEvents);
+			TargetCountCheck.Counts counts = targetCountCheck.count(task);
+			if (counts.isTargetComplete()) {
+				log.info("SourceDeviceId {}, target device id {} has all {} events of the range, nothing to migrate", 
+						sourceDeviceId, targetDeviceId, counts.source);
+				reportHandler.accept(task.reportBuilder()
+						.duplicatesSkipped((int) Math.min(Integer.MAX_VALUE, counts.source))
+						.durationSec((System.currentTimeMillis() - startTime)/1000)
+						.build());
+				return;
+			}
+			Iterable<EventRepresentation> trgtEvents = EventUtil.getEvents(targetDeviceId, signalQueryParams, targetEventAPI, task.getTargetLimiter());
+			SignalDeduplicator<EventRepresentation> deduplicator = createDeduplicator(task, counts, trgtEvents);
 			
-			Iterable<EventRepresentation> sourceEvents = EventUtil.getEvents(sourceDeviceId, signalQueryParams, sourceC8yPlatform.getEventApi());
+			Iterable<EventRepresentation> sourceEvents = EventUtil.getEvents(sourceDeviceId, signalQueryParams, sourceC8yPlatform.getEventApi(), task.getSourceLimiter());
 						
 			Iterator<EventRepresentation> eventItor = sourceEvents.iterator();
 			
 			int numMigrated = 0;
 			int numErrors = 0;
 			int numDuplicatesSkipped = 0;
+			EventRepresentation lastCreated = null;
 			while (eventItor.hasNext()) {
 				try {					
 					EventRepresentation event = eventItor.next();
@@ -74,10 +94,7 @@ public class EventMigrationService {
 //					}
 					
 					// if already present in the target tenant, skip
-					int uniqueHash = EventUtil.generateUniqueHash(event);
-					if (uniqueHashesSet.contains(uniqueHash)) {
-						// use a counter: allows for the possibility of multiple identical signals on tenant A to be copied to tenant B
-						uniqueHashesSet.remove(uniqueHash); 
+					if (deduplicator.isDuplicate(event)) {
 						numDuplicatesSkipped ++;
 						registry.counter("EventMigrationService.duplicatesSkipped").increment();
 						continue;
@@ -85,9 +102,29 @@ public class EventMigrationService {
 					
 					event.setSource(targetMo);
 					
-					targetEventAPI.create(event);
+					if (task.isDryRun()) {
+						task.getDryRunSink().write(List.of(event));
+					} else {
+						task.getTargetLimiter().acquireSignals(1);
+						task.getTargetLimiter().run(RequestClass.WRITE, () -> targetEventAPI.create(event));
+					}
 					numMigrated++;
 					registry.counter("EventMigrationService.migrated").increment();					
+					lastCreated = event;
+					
+					// events are read oldest first; after a failed event the cursor stays before it
+					if (numErrors == 0 && numMigrated % CURSOR_INTERVAL == 0) {
+						task.commitCursor(event.getDateTime());
+						if (eventItor.hasNext() && task.isPauseRequested()) {
+							log.info("SourceDeviceId {}, job paused, events from {} are migrated when it continues", sourceDeviceId, event.getDateTime());
+							task.pauseAt(event.getDateTime(), task.reportBuilder()
+									.migrated(numMigrated)
+									.duplicatesSkipped(numDuplicatesSkipped)
+									.durationSec((System.currentTimeMillis() - startTime)/1000)
+									.build());
+							return;
+						}
+					}
 					
 				} catch (Exception e) {
 					log.error("Error migrating event", e);
@@ -96,13 +133,14 @@ public class EventMigrationService {
 					// TODO: handle exception, track errors
 				}
 			}
+			if (numErrors == 0 && lastCreated != null) {
+				task.commitCursor(lastCreated.getDateTime());
+			}
+			reportMergeJoin(deduplicator, sourceDeviceId);
 			log.info(String.format("SourceDeviceId %s, DONE migrating events, target device id %s, numMigrated %d, numErrors %d, numDuplicatesSkipped %d ",
 					sourceDeviceId, targetDeviceId, numMigrated, numErrors, numDuplicatesSkipped ));
 			
-			reportHandler.accept(DeviceSignalMigrationReport.builder()
-					.sourceDeviceId(sourceDeviceId)
-					.targetDeviceId(targetDeviceId)
-					//.signalType(SignalType.MEASUREMENT)
+			reportHandler.accept(task.reportBuilder()
 					.migrated(numMigrated)
 					.errors(numErrors)
 					.duplicatesSkipped(numDuplicatesSkipped)
@@ -113,25 +151,33 @@ public class EventMigrationService {
 		} catch (Exception e) {
 			log.error("Error migrating events of src device id " + sourceDeviceId, e);
 			registry.counter("EventMigrationService.deviceErrors").increment();
-			reportHandler.accept(DeviceSignalMigrationReport.builder()
+			reportHandler.accept(task.reportBuilder()
 					.durationSec((System.currentTimeMillis() - startTime)/1000)
 					.error(e.getMessage()).build());
 		}
 	}
 
 
-	private Multiset<Integer> createUniqueHashesSet(Iterable<EventRepresentation> trgtEvts) {		
-		Multiset<Integer> uniqueHashesSet = HashMultiset.create();
+	private SignalDeduplicator<EventRepresentation> createDeduplicator(SignalMigrationTask task, TargetCountCheck.Counts counts, 
+			Iterable<EventRepresentation> trgtEvents) {
+		// also a dry run, see TargetCountCheck
+		if (counts.isTargetEmpty()) {
+			return SignalDeduplicator.none();
+		}
+		if (task.isMergeJoinDedup()) {
+			return new MergeJoinDeduplicator<>(trgtEvents.iterator(), event -> event.getDateTime().getMillis(),
+					EventUtil::generateUniqueHash);
+		}
+		return new HashSetDeduplicator<>(trgtEvents, EventUtil::generateUniqueHash);
+	}
 
-		for (EventRepresentation evtRep : trgtEvts) {
-			
-			int uniqueHash = EventUtil.generateUniqueHash(evtRep);
-			
-			uniqueHashesSet.add(uniqueHash);
-										
+	private void reportMergeJoin(SignalDeduplicator<EventRepresentation> deduplicator, String sourceDeviceId) {
+		if (deduplicator instanceof MergeJoinDeduplicator) {
+			long numOutOfOrder = ((MergeJoinDeduplicator<EventRepresentation>) deduplicator).getNumOutOfOrder();
+			if (numOutOfOrder > 0) {
+				log.warn("SourceDeviceId {}, {} events were not read in time order and were written without a dedup check", 
+						sourceDeviceId, numOutOfOrder);
+			}
 		}
-		
-		return uniqueHashesSet;
-		
 	}
 }
\ No newline at end of file
@@ -0,0 +1,72 @@
+package com.softwareag.signalmigration.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Brings the running jobs into a state they can be resumed from when the application stops. Runs as a
+ * lifecycle stop, i.e. before any bean is destroyed:
+ * - no more jobs or devices are started, the device discovery stops
+ * - running tasks stop after their current batch, with its cursor committed; pending tasks are not started
+ * - once the workers are idle (at most shutdownTimeoutSeconds, then they are interrupted), the pending
+ *   job updates are applied and the changed jobs are saved with their cursors
+ * Only then are the partition leases of distributed jobs released (DistributedJobService). A resumed job
+ * skips the devices already reported and continues the others from their cursors.
+ */
+@Component
+@Slf4j
+public class GracefulShutdownService implements SmartLifecycle {
+
+	/**
+	 * how long running tasks may take to finish their current batch
+	 */
+	@Value("${GracefulShutdownService.shutdownTimeoutSeconds:20}")
+	private int shutdownTimeoutSeconds;
+
+	@Autowired
+	private MigrationJobService migrationJobService;
+
+	@Autowired
+	private DeviceMigrationScheduler scheduler;
+
+	@Autowired
+	private JobStateAggregator jobStateAggregator;
+
+	@Autowired
+	private MigrationJobPersister jobPersister;
+
+	private volatile boolean running = false;
+
+	@Override
+	public void start() {
+		running = true;
+	}
+
+	@Override
+	public void stop() {
+		running = false;
+		log.info("Shutting down, stopping jobs within {} s", shutdownTimeoutSeconds);
+		long startTime = System.currentTimeMillis();
+		try {
+			migrationJobService.stopStartingWork();
+			boolean idle = scheduler.shutdown(shutdownTimeoutSeconds * 1000L);
+			jobStateAggregator.applyPendingUpdatesAndStop();
+			jobPersister.saveChangedJobsNow();
+			log.info("Jobs stopped {}in {} ms", idle ? "" : "(workers interrupted) ", System.currentTimeMillis() - startTime);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			log.warn("Interrupted while stopping jobs");
+		} catch (Exception e) {
+			log.error("Error stopping jobs, they continue from their last saved state", e);
+		}
+	}
+
+	@Override
+	public boolean isRunning() {
+		return running;
+	}
+}
@@ -0,0 +1,98 @@
+package com.softwareag.signalmigration.service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.cumulocity.model.idtype.GId;
+import com.cumulocity.rest.representation.inventory.ManagedObjectRepresentation;
+import com.softwareag.signalmigration.model.PartitionLease;
+import com.softwareag.signalmigration.util.CustomInventoryFilter;
+import com.softwareag.signalmigration.util.ManagedObjectUtil;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Keeps each lease as a fragment of its partition job's managed object.
+ * 
+ * Inventory has no conditional update, compareAndSet is emulated: read and compare the version, write,
+ * then read back after verifyDelayMillis. If two instances write the same version, both read back the 
+ * later write and only its writer wins. A write that lands after the other instance's read-back can still
+ * give two owners for a moment, as can a takeover of a lease whose owner is alive but slow to renew. The
+ * loser finds out on its next renewal and stops its tasks at their next batch boundary; the winner waits
+ * one renew interval before it starts migrating (see DistributedJobService). Without that wait, signals
+ * the loser writes after the winner has counted or read the target (TargetCountCheck, dedup) would be
+ * migrated twice.
+ */
+@Component
+@Slf4j
+public class InventoryPartitionLeaseStore implements PartitionLeaseStore {
+
+	public static final String LEASE_FRAGMENT_NAME = "signalMigrationLease";
+
+	@Value("${InventoryPartitionLeaseStore.verifyDelayMillis:500}")
+	private long verifyDelayMillis;
+
+	@Autowired
+	private CumulocityService cumulocityService;
+
+	@Override
+	public List<PartitionLease> getLeases(String jobId) {
+		CustomInventoryFilter filter = new CustomInventoryFilter().byQuery(
+				String.format("has('%s') and %s.jobId eq '%s'", LEASE_FRAGMENT_NAME, LEASE_FRAGMENT_NAME, jobId));
+		List<PartitionLease> leases = new ArrayList<>();
+		for (ManagedObjectRepresentation moRep : cumulocityService.getManagedObjectsByFilter(filter)) {
+			leases.add(readLease(moRep));
+		}
+		leases.sort(Comparator.comparingInt(PartitionLease::getPartition));
+		return leases;
+	}
+
+	@Override
+	public boolean compareAndSet(PartitionLease expected, PartitionLease update) {
+		String partitionJobId = expected.getPartitionJobId();
+		PartitionLease current = readLease(cumulocityService.getManagedObject(partitionJobId));
+		if (current.getVersion() != expected.getVersion()) {
+			return false;
+		}
+
+		ManagedObjectRepresentation moRep = new ManagedObjectRepresentation();
+		moRep.setId(GId.asGId(partitionJobId));
+		ManagedObjectUtil.writeObjectAsFragment(moRep, update, LEASE_FRAGMENT_NAME);
+		cumulocityService.updateManagedObject(moRep);
+
+		try {
+			Thread.sleep(verifyDelayMillis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+		PartitionLease written = readLease(cumulocityService.getManagedObject(partitionJobId));
+		boolean success = written.getVersion() == update.getVersion() && Objects.equals(written.getOwner(), update.getOwner());
+		if (!success) {
+			log.info("Lease on partition {} of job {} was taken by {}", update.getPartition(), update.getJobId(), written.getOwner());
+		}
+		return success;
+	}
+
+	/**
+	 * A new partition job's managed object carries a free lease
+	 */
+	public static void writeFreeLease(ManagedObjectRepresentation partitionJobMo, String jobId, int partition) {
+		ManagedObjectUtil.writeObjectAsFragment(partitionJobMo, PartitionLease.builder()
+				.jobId(jobId)
+				.partition(partition)
+				.build(), LEASE_FRAGMENT_NAME);
+	}
+
+	private PartitionLease readLease(ManagedObjectRepresentation moRep) {
+		PartitionLease lease = ManagedObjectUtil.readObjectFromFragment(moRep, PartitionLease.class, LEASE_FRAGMENT_NAME);
+		lease.setPartitionJobId(moRep.getId().getValue());
+		return lease;
+	}
+}
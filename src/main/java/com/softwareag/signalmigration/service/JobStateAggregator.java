@@ -0,0 +1,214 @@
+package com.softwareag.signalmigration.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.cumulocity.model.operation.OperationStatus;
+import com.softwareag.signalmigration.model.DeviceSignalMigrationReport;
+import com.softwareag.signalmigration.model.MigrationJob;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Owns the state of running jobs: workers (and the device discovery) publish results and changes to a
+ * lock-free queue per job and return right away; a single aggregator thread applies them to the job,
+ * updates its status, and hands the job to the persister. Workers never wait for each other, for the
+ * job lock or for a save.
+ *
+ * Signals reported in this run are also counted per job in LongAdders, for the metrics.
+ */
+@Component
+@Slf4j
+public class JobStateAggregator {
+
+	/**
+	 * max updates applied under one acquisition of the job lock
+	 */
+	@Value("${JobStateAggregator.maxUpdatesPerBatch:500}")
+	private int maxUpdatesPerBatch;
+
+	@Value("${JobStateAggregator.shutdownTimeoutSeconds:10}")
+	private int shutdownTimeoutSeconds;
+
+	@Autowired
+	private MigrationJobPersister jobPersister;
+
+	@Autowired
+	private DeviceMigrationScheduler scheduler;
+
+	@Autowired
+	private MeterRegistry registry;
+
+	private ExecutorService aggregator;
+
+	/**
+	 * jobId -> inbox of the running job instance
+	 */
+	private final Map<String, JobInbox> inboxes = new ConcurrentHashMap<>();
+
+	private static class JobInbox {
+		final MigrationJob job;
+		final Queue<Consumer<MigrationJob>> updates = new ConcurrentLinkedQueue<>();
+		final AtomicBoolean drainScheduled = new AtomicBoolean();
+		final LongAdder migratedSignals = new LongAdder();
+		final LongAdder signalErrors = new LongAdder();
+		final LongAdder duplicatesSkipped = new LongAdder();
+		final List<Meter> meters = new ArrayList<>();
+
+		JobInbox(MigrationJob job) {
+			this.job = job;
+		}
+	}
+
+	@PostConstruct
+	private void init() {
+		aggregator = Executors.newSingleThreadExecutor();
+	}
+
+	/**
+	 * Queue the device report of a worker
+	 */
+	public void publishReport(MigrationJob job, DeviceSignalMigrationReport report) {
+		JobInbox inbox = getInbox(job);
+		inbox.migratedSignals.add(report.getMigrated());
+		inbox.signalErrors.add(report.getErrors());
+		inbox.duplicatesSkipped.add(report.getDuplicatesSkipped());
+		publish(inbox, j -> {
+			j.addDeviceReport(report);
+			if (report.getError() == null && report.getErrors() == 0) {
+				// cursors of devices with errors are kept, a retry continues from there
+				j.removeSignalCursors(report.getSourceDeviceId());
+			}
+		});
+	}
+
+	/**
+	 * Queue a signal cursor; cursors and reports of a job are applied in the order they were published
+	 */
+	public void publishCursor(MigrationJob job, String key, String cursor) {
+		publish(getInbox(job), j -> j.setSignalCursor(key, cursor));
+	}
+
+	/**
+	 * Queue any other change of the job, applied under the job lock on the aggregator thread
+	 */
+	public void publishUpdate(MigrationJob job, Consumer<MigrationJob> update) {
+		publish(getInbox(job), update);
+	}
+
+	/**
+	 * Apply the updates published so far and stop; later updates are lost. Called on shutdown once the 
+	 * workers have stopped, before the changed jobs are saved.
+	 */
+	@PreDestroy
+	public void applyPendingUpdatesAndStop() throws InterruptedException {
+		// pending updates are applied before the persister saves the changed jobs on its shutdown
+		aggregator.shutdown();
+		if (!aggregator.awaitTermination(shutdownTimeoutSeconds, TimeUnit.SECONDS)) {
+			log.warn("Job updates not applied within {} s", shutdownTimeoutSeconds);
+		}
+	}
+
+	private JobInbox getInbox(MigrationJob job) {
+		// a resumed or retried job is a new instance with the same id
+		return inboxes.compute(job.getC8yId(), (id, existing) -> {
+			if (existing != null && existing.job == job) {
+				return existing;
+			}
+			if (existing != null) {
+				existing.meters.forEach(registry::remove);
+			}
+			JobInbox inbox = new JobInbox(job);
+			registerMeters(inbox);
+			return inbox;
+		});
+	}
+
+	private void publish(JobInbox inbox, Consumer<MigrationJob> update) {
+		inbox.updates.offer(update);
+		if (inbox.drainScheduled.compareAndSet(false, true)) {
+			try {
+				aggregator.execute(() -> drain(inbox));
+			} catch (RejectedExecutionException e) {
+				log.warn("Shutting down, update of job {} is lost", inbox.job.getC8yId());
+			}
+		}
+	}
+
+	private void drain(JobInbox inbox) {
+		do {
+			while (!inbox.updates.isEmpty()) {
+				applyBatch(inbox);
+			}
+			inbox.drainScheduled.set(false);
+			// an update published after the queue was found empty but before the flag was reset
+		} while (!inbox.updates.isEmpty() && inbox.drainScheduled.compareAndSet(false, true));
+
+		MigrationJob job = inbox.job;
+		if (!job.getStatus().equals(OperationStatus.EXECUTING)) {
+			scheduler.unregisterJob(job.getC8yId());
+			if (inboxes.remove(job.getC8yId(), inbox)) {
+				inbox.meters.forEach(registry::remove);
+			}
+		}
+	}
+
+	private void applyBatch(JobInbox inbox) {
+		MigrationJob job = inbox.job;
+		int numUpdates = 0;
+		boolean statusChanged;
+		synchronized (job) {
+			OperationStatus status = job.getStatus();
+			Consumer<MigrationJob> update;
+			while (numUpdates < maxUpdatesPerBatch && (update = inbox.updates.poll()) != null) {
+				numUpdates++;
+				try {
+					update.accept(job);
+				} catch (Exception e) {
+					log.error("Error applying update to job " + job.getC8yId(), e);
+				}
+			}
+			job.updateStatus();
+			statusChanged = !job.getStatus().equals(status);
+		}
+		jobPersister.changed(job, numUpdates, statusChanged);
+	}
+
+	private void registerMeters(JobInbox inbox) {
+		String jobId = inbox.job.getC8yId();
+		inbox.meters.add(FunctionCounter.builder("JobStateAggregator.migratedSignals", inbox.migratedSignals, LongAdder::sum)
+				.tag("jobId", jobId)
+				.register(registry));
+		inbox.meters.add(FunctionCounter.builder("JobStateAggregator.signalErrors", inbox.signalErrors, LongAdder::sum)
+				.tag("jobId", jobId)
+				.register(registry));
+		inbox.meters.add(FunctionCounter.builder("JobStateAggregator.duplicatesSkipped", inbox.duplicatesSkipped, LongAdder::sum)
+				.tag("jobId", jobId)
+				.register(registry));
+		inbox.meters.add(Gauge.builder("JobStateAggregator.pendingUpdates", inbox.updates, Queue::size)
+				.tag("jobId", jobId)
+				.register(registry));
+	}
+}
@@ -0,0 +1,116 @@
+package com.softwareag.signalmigration.service;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+import javax.annotation.PostConstruct;
+
+import org.joda.time.DateTime;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.cumulocity.model.idtype.GId;
+import com.cumulocity.rest.representation.event.EventRepresentation;
+import com.cumulocity.rest.representation.inventory.ManagedObjectRepresentation;
+import com.softwareag.signalmigration.model.JobTableChunk;
+import com.softwareag.signalmigration.util.ManagedObjectUtil;
+
+import io.github.resilience4j.retry.Retry;
+import io.github.resilience4j.retry.RetryRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Keeps per-job tables of source device id -> value that grow with the fleet (e.g. target device ids) outside of
+ * the job managed object, so that saving a job does not send them again: as with the device reports
+ * (DeviceReportStore), entries are appended in chunks, each an event of the table's type with the job
+ * managed object as source. A table is written once per entry and device in general; if a device has
+ * several entries, the one read last counts.
+ */
+@Component
+@Slf4j
+public class JobTableStore {
+
+	/**
+	 * source device id -> number of signals in the job range (DeviceSchedulingMode.LARGEST_FIRST)
+	 */
+	public static final String SIGNAL_COUNTS = "signalMigrationSignalCounts";
+
+	/**
+	 * source device id -> target device id, from the mapping phase (see DeviceMappingService)
+	 */
+	public static final String TARGET_DEVICE_IDS = "signalMigrationTargetDevices";
+
+	@Value("${JobTableStore.chunkSize:1000}")
+	private int chunkSize;
+
+	/**
+	 * chunks read per request
+	 */
+	@Value("${JobTableStore.readPageSize:20}")
+	private int readPageSize;
+
+	@Autowired
+	private CumulocityService cumulocityService;
+
+	@Autowired
+	@Qualifier("defaultExternalAPIRetry")
+	private RetryRegistry retryRegistry;
+
+	private Retry apiRequestRetry;
+
+	@PostConstruct
+	private void init() {
+		apiRequestRetry = retryRegistry.retry("create-c8y-operation");
+	}
+
+	/**
+	 * Write the entries as new chunks of the job's table; the job must have been saved before
+	 *
+	 * @param table event type and fragment name of the table, e.g. SIGNAL_COUNTS
+	 */
+	public void append(String jobId, String table, Map<String, String> entries) throws Exception {
+		if (entries.isEmpty()) {
+			return;
+		}
+		ManagedObjectRepresentation jobMo = new ManagedObjectRepresentation();
+		jobMo.setId(GId.asGId(jobId));
+
+		List<Map.Entry<String, String>> list = new ArrayList<>(entries.entrySet());
+		for (int i = 0; i < list.size(); i += chunkSize) {
+			Map<String, String> chunkEntries = new LinkedHashMap<>();
+			for (Map.Entry<String, String> entry : list.subList(i, Math.min(list.size(), i + chunkSize))) {
+				chunkEntries.put(entry.getKey(), entry.getValue());
+			}
+			EventRepresentation event = new EventRepresentation();
+			event.setSource(jobMo);
+			event.setType(table);
+			event.setText(String.format("Signal migration job %s, %d entries of %s", jobId, chunkEntries.size(), table));
+			event.setDateTime(DateTime.now());
+			ManagedObjectUtil.writeObjectAsFragment(event, new JobTableChunk(chunkEntries), table);
+
+			apiRequestRetry.executeCallable(() -> {
+				return cumulocityService.createEvent(event);
+			});
+		}
+		log.debug("Job {}: {} entries of {} written", jobId, entries.size(), table);
+	}
+
+	/**
+	 * Streams the entries of the job's table in the order they were written
+	 */
+	public void forEachEntry(String jobId, String table, BiConsumer<String, String> action) {
+		long startTime = System.currentTimeMillis();
+		long numEntries = 0;
+		for (EventRepresentation event : cumulocityService.getEventsOldestFirst(jobId, table, readPageSize)) {
+			JobTableChunk chunk = ManagedObjectUtil.readObjectFromFragment(event, JobTableChunk.class, table);
+			chunk.getEntries().forEach(action);
+			numEntries += chunk.getEntries().size();
+		}
+		log.info("Job {}: {} entries of {} read in {} ms", jobId, numEntries, table, System.currentTimeMillis() - startTime);
+	}
+}
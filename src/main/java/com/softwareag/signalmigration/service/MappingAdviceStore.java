@@ -0,0 +1,277 @@
+package com.softwareag.signalmigration.service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import javax.annotation.PostConstruct;
+
+import org.joda.time.DateTime;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.cumulocity.model.idtype.GId;
+import com.cumulocity.rest.representation.event.EventRepresentation;
+import com.cumulocity.rest.representation.inventory.ManagedObjectRepresentation;
+import com.softwareag.signalmigration.model.ExternalIdMappingAdvice;
+import com.softwareag.signalmigration.model.MappingAdviceChunk;
+import com.softwareag.signalmigration.model.MappingAdviceInfo;
+import com.softwareag.signalmigration.util.ManagedObjectUtil;
+
+import io.github.resilience4j.retry.Retry;
+import io.github.resilience4j.retry.RetryRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Keeps uploaded external id mapping advice files, so that large advice lists are not embedded in every job:
+ * a managed object per file (fragment ADVICE_FRAGMENT_NAME, see MappingAdviceInfo), with the rows in chunks
+ * of chunkSize, each an event of type CHUNK_EVENT_TYPE, as in DeviceReportStore.
+ *
+ * Files are read line by line and written chunk by chunk, never held in memory as a whole. Formats:
+ * - csv: a header with the columns sourceExternalId and targetExternalId (others are ignored), comma separated,
+ *   values may be quoted
+ * - ndjson: one json object per line, {"sourceExternalId": "...", "targetExternalId": "..."}
+ */
+@Component
+@Slf4j
+public class MappingAdviceStore {
+
+	public static final String ADVICE_FRAGMENT_NAME = "signalMigrationMappingAdvice";
+
+	public static final String CHUNK_EVENT_TYPE = "signalMigrationMappingAdviceRows";
+
+	public static final String CHUNK_FRAGMENT_NAME = "signalMigrationMappingAdviceRows";
+
+	public static final String FORMAT_CSV = "csv";
+
+	public static final String FORMAT_NDJSON = "ndjson";
+
+	@Value("${MappingAdviceStore.chunkSize:2000}")
+	private int chunkSize;
+
+	/**
+	 * chunks read per request
+	 */
+	@Value("${MappingAdviceStore.readPageSize:20}")
+	private int readPageSize;
+
+	@Autowired
+	private CumulocityService cumulocityService;
+
+	@Autowired
+	@Qualifier("defaultExternalAPIRetry")
+	private RetryRegistry retryRegistry;
+
+	private Retry apiRequestRetry;
+
+	@PostConstruct
+	private void init() {
+		apiRequestRetry = retryRegistry.retry("create-c8y-operation");
+	}
+
+	/**
+	 * Store the advice read from the stream
+	 *
+	 * @param format FORMAT_CSV or FORMAT_NDJSON
+	 * @return the stored file; not complete if a row could not be read or stored (see error)
+	 * @throws IllegalArgumentException if the format is unknown or the csv header lacks a column
+	 */
+	public MappingAdviceInfo upload(InputStream in, String name, String format) throws Exception {
+		if (!FORMAT_CSV.equals(format) && !FORMAT_NDJSON.equals(format)) {
+			throw new IllegalArgumentException("Unknown format: " + format + ", expected " + FORMAT_CSV + " or " + FORMAT_NDJSON);
+		}
+		long startTime = System.currentTimeMillis();
+		BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+		int[] columns = null;
+		if (FORMAT_CSV.equals(format)) {
+			columns = parseCsvHeader(reader.readLine());
+		}
+
+		MappingAdviceInfo info = MappingAdviceInfo.builder()
+				.name(name)
+				.format(format)
+				.build();
+		ManagedObjectRepresentation adviceMo = new ManagedObjectRepresentation();
+		adviceMo.setName(name != null ? name : "Signal migration mapping advice");
+		adviceMo.setType(ADVICE_FRAGMENT_NAME);
+		ManagedObjectUtil.writeObjectAsFragment(adviceMo, info, ADVICE_FRAGMENT_NAME);
+		info.setId(apiRequestRetry.executeCallable(() -> {
+			return cumulocityService.createManagedObject(adviceMo);
+		}).getId().getValue());
+
+		List<ExternalIdMappingAdvice> rows = new ArrayList<>(chunkSize);
+		long lineNumber = columns == null ? 0 : 1;
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				lineNumber++;
+				if (line.isBlank()) {
+					continue;
+				}
+				ExternalIdMappingAdvice row = FORMAT_CSV.equals(format) ? parseCsvRow(line, columns)
+						: ManagedObjectUtil.fromJson(line, ExternalIdMappingAdvice.class);
+				if (row.getSourceExternalId() == null || row.getTargetExternalId() == null) {
+					throw new IllegalArgumentException("sourceExternalId or targetExternalId missing");
+				}
+				rows.add(row);
+				if (rows.size() >= chunkSize) {
+					writeChunk(info, rows);
+					rows = new ArrayList<>(chunkSize);
+				}
+			}
+			writeChunk(info, rows);
+			info.setComplete(true);
+			log.info("Mapping advice {} stored, {} rows, {} chunks in {} ms", info.getId(), info.getNumRows(), info.getNumChunks(),
+					System.currentTimeMillis() - startTime);
+		} catch (Exception e) {
+			log.error("Error storing mapping advice " + info.getId() + " at line " + lineNumber, e);
+			info.setError(String.format("line %d: %s", lineNumber, e.getMessage()));
+		}
+
+		ManagedObjectRepresentation update = new ManagedObjectRepresentation();
+		update.setId(GId.asGId(info.getId()));
+		ManagedObjectUtil.writeObjectAsFragment(update, info, ADVICE_FRAGMENT_NAME);
+		apiRequestRetry.executeCallable(() -> {
+			return cumulocityService.updateManagedObject(update);
+		});
+		return info;
+	}
+
+	public MappingAdviceInfo getInfo(String adviceId) {
+		ManagedObjectRepresentation adviceMo = cumulocityService.getManagedObject(adviceId);
+		MappingAdviceInfo info = ManagedObjectUtil.readObjectFromFragment(adviceMo, MappingAdviceInfo.class, ADVICE_FRAGMENT_NAME);
+		if (info == null) {
+			throw new IllegalArgumentException("Not a mapping advice: " + adviceId);
+		}
+		info.setId(adviceId);
+		return info;
+	}
+
+	/**
+	 * @throws IllegalArgumentException if the advice does not exist or is not complete
+	 */
+	public void validate(String adviceId) {
+		MappingAdviceInfo info = getInfo(adviceId);
+		if (!info.isComplete()) {
+			throw new IllegalArgumentException("Mapping advice " + adviceId + " is not complete: " + info.getError());
+		}
+	}
+
+	/**
+	 * @return source external id -> target external id; a later row replaces an earlier one
+	 */
+	public Map<String, String> loadIndex(String adviceId) {
+		long startTime = System.currentTimeMillis();
+		validate(adviceId);
+		Map<String, String> index = new HashMap<>();
+		forEachRow(adviceId, row -> index.put(row.getSourceExternalId(), row.getTargetExternalId()));
+		log.info("Mapping advice {}: {} entries loaded in {} ms", adviceId, index.size(), System.currentTimeMillis() - startTime);
+		return index;
+	}
+
+	/**
+	 * Streams the rows in the order of the file, one page of chunks at a time
+	 */
+	public void forEachRow(String adviceId, Consumer<ExternalIdMappingAdvice> action) {
+		List<MappingAdviceChunk> page = new ArrayList<>();
+		for (EventRepresentation event : cumulocityService.getEventsOldestFirst(adviceId, CHUNK_EVENT_TYPE, readPageSize)) {
+			page.add(ManagedObjectUtil.readObjectFromFragment(event, MappingAdviceChunk.class, CHUNK_FRAGMENT_NAME));
+			if (page.size() >= readPageSize) {
+				processPage(page, action);
+			}
+		}
+		processPage(page, action);
+	}
+
+	private void processPage(List<MappingAdviceChunk> page, Consumer<ExternalIdMappingAdvice> action) {
+		// events with the same time may come in any order
+		page.sort(Comparator.comparingInt(MappingAdviceChunk::getSeq));
+		for (MappingAdviceChunk chunk : page) {
+			chunk.getRows().forEach(action);
+		}
+		page.clear();
+	}
+
+	private void writeChunk(MappingAdviceInfo info, List<ExternalIdMappingAdvice> rows) throws Exception {
+		if (rows.isEmpty()) {
+			return;
+		}
+		ManagedObjectRepresentation adviceMo = new ManagedObjectRepresentation();
+		adviceMo.setId(GId.asGId(info.getId()));
+		EventRepresentation event = new EventRepresentation();
+		event.setSource(adviceMo);
+		event.setType(CHUNK_EVENT_TYPE);
+		event.setText(String.format("Mapping advice %s, %d rows", info.getId(), rows.size()));
+		event.setDateTime(DateTime.now());
+		ManagedObjectUtil.writeObjectAsFragment(event, new MappingAdviceChunk(info.getNumChunks(), rows), CHUNK_FRAGMENT_NAME);
+		apiRequestRetry.executeCallable(() -> {
+			return cumulocityService.createEvent(event);
+		});
+		info.setNumChunks(info.getNumChunks() + 1);
+		info.setNumRows(info.getNumRows() + rows.size());
+	}
+
+	/**
+	 * @return the indexes of the sourceExternalId and targetExternalId columns
+	 */
+	private static int[] parseCsvHeader(String header) {
+		if (header == null) {
+			throw new IllegalArgumentException("Empty file, expected a csv header with sourceExternalId and targetExternalId");
+		}
+		List<String> names = parseCsvLine(!header.isEmpty() && header.charAt(0) == '\uFEFF' ? header.substring(1) : header);
+		int[] columns = new int[] { names.indexOf("sourceExternalId"), names.indexOf("targetExternalId") };
+		if (columns[0] < 0 || columns[1] < 0) {
+			throw new IllegalArgumentException("csv header must have the columns sourceExternalId and targetExternalId: " + header);
+		}
+		return columns;
+	}
+
+	private static ExternalIdMappingAdvice parseCsvRow(String line, int[] columns) throws IOException {
+		List<String> values = parseCsvLine(line);
+		if (values.size() <= Math.max(columns[0], columns[1])) {
+			throw new IOException("too few columns");
+		}
+		return new ExternalIdMappingAdvice(values.get(columns[0]), values.get(columns[1]));
+	}
+
+	/**
+	 * Splits at commas outside of double quotes; "" in a quoted value is a quote
+	 */
+	private static List<String> parseCsvLine(String line) {
+		List<String> values = new ArrayList<>();
+		StringBuilder value = new StringBuilder();
+		boolean quoted = false;
+		for (int i = 0; i < line.length(); i++) {
+			char c = line.charAt(i);
+			if (quoted) {
+				if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+					value.append('"');
+					i++;
+				} else if (c == '"') {
+					quoted = false;
+				} else {
+					value.append(c);
+				}
+			} else if (c == '"') {
+				quoted = true;
+			} else if (c == ',') {
+				values.add(value.toString().trim());
+				value.setLength(0);
+			} else {
+				value.append(c);
+			}
+		}
+		values.add(value.toString().trim());
+		return values;
+	}
+}
@@ -5,6 +5,7 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.function.Consumer;
 
+import org.joda.time.DateTime;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
@@ -15,10 +16,13 @@ import com.cumulocity.rest.representation.measurement.MeasurementRepresentation;
 import com.cumulocity.sdk.client.Platform;
 import com.cumulocity.sdk.client.QueryParam;
 import com.cumulocity.sdk.client.measurement.MeasurementApi;
-import com.google.common.collect.HashMultiset;
-import com.google.common.collect.Multiset;
 import com.softwareag.signalmigration.model.DeviceSignalMigrationReport;
+import com.softwareag.signalmigration.model.SignalMigrationTask;
+import com.softwareag.signalmigration.util.HashSetDeduplicator;
 import com.softwareag.signalmigration.util.MeasurementUtil;
+import com.softwareag.signalmigration.util.MergeJoinDeduplicator;
+import com.softwareag.signalmigration.util.RequestLimiter.RequestClass;
+import com.softwareag.signalmigration.util.SignalDeduplicator;
 
 import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
@@ -26,22 +30,28 @@ import lombok.extern.slf4j.Slf4j;
 @Component
 @Slf4j
 public class MeasurementMigrationService {
+	
+	/**
+	 * max. measurements per bulk create request, if the job does not set measurementBatchSize
+	 */
+	public static final int DEFAULT_BATCH_SIZE = 200;
 		
 	@Autowired
 	private MeterRegistry registry;
 
+	@Autowired
+	private TargetCountCheck targetCountCheck;
+
 	/**
-	 * @param sourceDeviceId
-	 * @param targetDeviceId
-	 * @param signalQueryParams
-	 * @param sourceC8yPlatform
+	 * @param task source/target device, range (whole job range or a sub-window) and report handler
 	 */
-	public void migrateMeasurements(String sourceDeviceId, 
-			String targetDeviceId,
-			List<QueryParam> signalQueryParams,
-			Platform sourceC8yPlatform,
-			Platform targetC8yPlatform,
-			Consumer<DeviceSignalMigrationReport> reportHandler) {
+	public void migrateMeasurements(SignalMigrationTask task) {
+		String sourceDeviceId = task.getSourceDeviceId();
+		String targetDeviceId = task.getTargetDeviceId();
+		List<QueryParam> signalQueryParams = task.getSignalQueryParams();
+		Platform sourceC8yPlatform = task.getSourcePlatform();
+		Platform targetC8yPlatform = task.getTargetPlatform();
+		Consumer<DeviceSignalMigrationReport> reportHandler = task.getReportHandler();
 
 		log.info(String.format("Will now migrate device measurements, src device id: %s, targetDeviceId: %s", sourceDeviceId,
 				targetDeviceId));
@@ -54,17 +64,26 @@ public class MeasurementMigrationService {
 			targetMo.setId(GId.asGId(targetDeviceId));
 			
 			MeasurementApi targetMeasurementsAPI = targetC8yPlatform.getMeasurementApi();
-			Iterable<MeasurementRepresentation> trgtMsmts = MeasurementUtil.getMeasurements(targetDeviceId, signalQueryParams, targetMeasurementsAPI);
-			Multiset<Integer> uniqueHashesSet = createUniqueHashesSet(trgtMsmts);
+			TargetCountCheck.Counts counts = targetCountCheck.count(task);
+			if (counts.isTargetComplete()) {
+				log.info("SourceDeviceId {}, target device id {} has all {} measurements of the range, nothing to migrate", 
+						sourceDeviceId, targetDeviceId, counts.source);
+				reportHandler.accept(task.reportBuilder()
+						.duplicatesSkipped((int) Math.min(Integer.MAX_VALUE, counts.source))
+						.durationSec((System.currentTimeMillis() - startTime)/1000)
+						.build());
+				return;
+			}
+			Iterable<MeasurementRepresentation> trgtMsmts = MeasurementUtil.getMeasurements(targetDeviceId, signalQueryParams, targetMeasurementsAPI, task.getTargetLimiter());
+			SignalDeduplicator<MeasurementRepresentation> deduplicator = createDeduplicator(task, counts, trgtMsmts);
 
-			Iterable<MeasurementRepresentation> sourceMsmts = MeasurementUtil.getMeasurements(sourceDeviceId, signalQueryParams, sourceC8yPlatform.getMeasurementApi());
+			Iterable<MeasurementRepresentation> sourceMsmts = MeasurementUtil.getMeasurements(sourceDeviceId, signalQueryParams, sourceC8yPlatform.getMeasurementApi(), task.getSourceLimiter());
 			Iterator<MeasurementRepresentation> msmtItor = sourceMsmts.iterator();
 			
 			int numMigrated = 0;
 			int numErrors = 0;
 			int numDuplicatesSkipped = 0;
 			ArrayList<MeasurementRepresentation> msmtBatch = new ArrayList<>();
-			int maxBatchSize = 200;
 			String sourceMsmtId = null;
 			while (msmtItor.hasNext()) {
 				try {
@@ -74,22 +93,24 @@ public class MeasurementMigrationService {
 					MeasurementUtil.trimTenantSpecificFields(msmt);
 					
 					// if already present in the target tenant, skip
-					int uniqueHash = MeasurementUtil.generateUniqueHash(msmt);
-					if (uniqueHashesSet.contains(uniqueHash)) {
-						// use a counter: allows for the possibility of multiple identical signals on tenant A to be copied to tenant B
-						uniqueHashesSet.remove(uniqueHash); 
+					if (deduplicator.isDuplicate(msmt)) {
 						numDuplicatesSkipped ++;
 						registry.counter("MeasurementMigrationService.numDuplicatesSkipped").increment();
-						continue;
-					}						
-					
-					msmt.setSource(targetMo);
-					msmtBatch.add(msmt);
+					} else {
+						msmt.setSource(targetMo);
+						msmtBatch.add(msmt);
+					}
 
-					if (msmtBatch.size() >= maxBatchSize || !msmtItor.hasNext()) {							
-						MeasurementCollectionRepresentation msmtColl = new MeasurementCollectionRepresentation();
-						msmtColl.setMeasurements(msmtBatch);
-						targetMeasurementsAPI.createBulkWithoutResponse(msmtColl);
+					// also flush when the last measurements are duplicates
+					if (!msmtBatch.isEmpty() && (msmtBatch.size() >= task.getBatchSize(DEFAULT_BATCH_SIZE) || !msmtItor.hasNext())) {							
+						if (task.isDryRun()) {
+							task.getDryRunSink().write(msmtBatch);
+						} else {
+							MeasurementCollectionRepresentation msmtColl = new MeasurementCollectionRepresentation();
+							msmtColl.setMeasurements(msmtBatch);
+							task.getTargetLimiter().acquireSignals(msmtBatch.size());
+							task.getTargetLimiter().run(RequestClass.WRITE, () -> targetMeasurementsAPI.createBulkWithoutResponse(msmtColl));
+						}
 						/*
 						 * c8y_SupportedMeasurements are not refreshed when using bulk creation, so they don't show in
 						 * the UI which uses c8y_SupportedMeasurements to display?!
@@ -101,23 +122,36 @@ public class MeasurementMigrationService {
 						//measurements.createWithoutResponse(msmt); // Does not send Accept header to make the request be processed faster.
 						numMigrated += msmtBatch.size();
 						registry.counter("MeasurementMigrationService.migrated").increment(msmtBatch.size());						
-						msmtBatch.clear();
 						log.debug(String.format("SourceDeviceId %s, migrating measurements, target device id %s, numMigrated %d, numErrors %d, numDuplicatesSkipped %d ",
 								sourceDeviceId, targetDeviceId, numMigrated, numErrors, numDuplicatesSkipped ));							
+						if (numErrors == 0) {
+							// measurements are read oldest first; after a failed batch the cursor stays before it
+							DateTime cursor = msmtBatch.get(msmtBatch.size() - 1).getDateTime();
+							task.commitCursor(cursor);
+							if (msmtItor.hasNext() && task.isPauseRequested()) {
+								log.info("SourceDeviceId {}, job paused, measurements from {} are migrated when it continues", sourceDeviceId, cursor);
+								task.pauseAt(cursor, task.reportBuilder()
+										.migrated(numMigrated)
+										.duplicatesSkipped(numDuplicatesSkipped)
+										.durationSec((System.currentTimeMillis() - startTime)/1000)
+										.build());
+								return;
+							}
+						}
+						msmtBatch.clear();
 					}
 				} catch (Exception e) {
 					log.error("Error migrating a measurement, sourceMsmtId " + sourceMsmtId, e);
-					numErrors+= msmtBatch.size();
+					numErrors+= Math.max(1, msmtBatch.size());
+					msmtBatch.clear(); // counted as errors, not sent again with the next batch
 					registry.counter("MeasurementMigrationService.errors").increment();
 					// TODO: handle exception, track errors
 				}
 			}
+			reportMergeJoin(deduplicator, sourceDeviceId);
 			log.info(String.format("SourceDeviceId %s, DONE migrating measurements, target device id %s, numMigrated %d, numErrors %d, numDuplicatesSkipped %d ",
 					sourceDeviceId, targetDeviceId, numMigrated, numErrors, numDuplicatesSkipped ));
-			reportHandler.accept(DeviceSignalMigrationReport.builder()
-					.sourceDeviceId(sourceDeviceId)
-					.targetDeviceId(targetDeviceId)
-					//.signalType(SignalType.MEASUREMENT)
+			reportHandler.accept(task.reportBuilder()
 					.migrated(numMigrated)
 					.errors(numErrors)
 					.duplicatesSkipped(numDuplicatesSkipped)
@@ -128,28 +162,37 @@ public class MeasurementMigrationService {
 		} catch (Exception e) {
 			log.error("Error migrating measurements of source device id " + sourceDeviceId, e);
 			registry.counter("MeasurementMigrationService.deviceErrors").increment();
-			reportHandler.accept(DeviceSignalMigrationReport.builder()
+			reportHandler.accept(task.reportBuilder()
 					.durationSec((System.currentTimeMillis() - startTime)/1000)
 					.error(e.getMessage()).build());
 		}
 	}
 
 
-	private Multiset<Integer> createUniqueHashesSet(Iterable<MeasurementRepresentation> trgtMsmts) {		
-		Multiset<Integer> uniqueHashesSet = HashMultiset.create();
-
-		for (MeasurementRepresentation msmtRep : trgtMsmts) {
-			
-			int uniqueHash = MeasurementUtil.generateUniqueHash(msmtRep);
-			uniqueHashesSet.add(uniqueHash);
-			registry.counter("MeasurementMigrationService.uniqueHashesGenerated").increment();
-										
+	private SignalDeduplicator<MeasurementRepresentation> createDeduplicator(SignalMigrationTask task, TargetCountCheck.Counts counts, 
+			Iterable<MeasurementRepresentation> trgtMsmts) {
+		// also a dry run, see TargetCountCheck
+		if (counts.isTargetEmpty()) {
+			return SignalDeduplicator.none();
 		}
-		
-		return uniqueHashesSet;
-		
+		if (task.isMergeJoinDedup()) {
+			// the target is read while migrating, its hashes are counted in reportMergeJoin
+			return new MergeJoinDeduplicator<>(trgtMsmts.iterator(), msmt -> msmt.getDateTime().getMillis(),
+					MeasurementUtil::generateUniqueHash);
+		}
+		HashSetDeduplicator<MeasurementRepresentation> deduplicator = new HashSetDeduplicator<>(trgtMsmts, MeasurementUtil::generateUniqueHash);
+		registry.counter("MeasurementMigrationService.uniqueHashesGenerated").increment(deduplicator.getNumTargetSignalsRead());
+		return deduplicator;
 	}
 
-
-	
+	private void reportMergeJoin(SignalDeduplicator<MeasurementRepresentation> deduplicator, String sourceDeviceId) {
+		if (deduplicator instanceof MergeJoinDeduplicator) {
+			registry.counter("MeasurementMigrationService.uniqueHashesGenerated").increment(deduplicator.getNumTargetSignalsRead());
+			long numOutOfOrder = ((MergeJoinDeduplicator<MeasurementRepresentation>) deduplicator).getNumOutOfOrder();
+			if (numOutOfOrder > 0) {
+				log.warn("SourceDeviceId {}, {} measurements were not read in time order and were written without a dedup check", 
+						sourceDeviceId, numOutOfOrder);
+			}
+		}
+	}
 }
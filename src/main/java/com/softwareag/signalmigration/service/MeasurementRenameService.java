@@ -54,7 +54,7 @@ public class MeasurementRenameService {
 			String newValueFragmentSeries) throws InterruptedException, ExecutionException {
 		
 		List<QueryParam> params = Arrays.asList(
-				CustomQueryParam.VALUE_FRAGMENT_TYPE.setValue(valueFragmentType).toQueryParam());
+				CustomQueryParam.VALUE_FRAGMENT_TYPE.toQueryParam(valueFragmentType));
 		
 		Iterable<MeasurementRepresentation> sourceMsmts = measurementApi
 				.getMeasurements().get(500, params.toArray(new QueryParam[0])).allPages();
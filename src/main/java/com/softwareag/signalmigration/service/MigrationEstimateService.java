@@ -0,0 +1,404 @@
+package com.softwareag.signalmigration.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import javax.annotation.PostConstruct;
+
+import org.joda.time.DateTime;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.cumulocity.rest.representation.inventory.ManagedObjectRepresentation;
+import com.cumulocity.sdk.client.Platform;
+import com.softwareag.signalmigration.model.DeviceSchedulingMode;
+import com.softwareag.signalmigration.model.MigrationEstimate;
+import com.softwareag.signalmigration.model.MigrationJobConfig;
+import com.softwareag.signalmigration.model.MigrationJobSettings;
+import com.softwareag.signalmigration.model.SignalMigrationTask;
+import com.softwareag.signalmigration.model.SignalType;
+import com.softwareag.signalmigration.model.SignalTypeEstimate;
+import com.softwareag.signalmigration.model.WindowSplitMode;
+import com.softwareag.signalmigration.util.CountingRequestLimiter;
+import com.softwareag.signalmigration.util.DateUtil;
+import com.softwareag.signalmigration.util.LongMultiset;
+import com.softwareag.signalmigration.util.JobRequestLimiter;
+import com.softwareag.signalmigration.util.NullSignalSink;
+
+import io.github.resilience4j.retry.Retry;
+import io.github.resilience4j.retry.RetryRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Estimates the cost and duration of a job before it runs, without writing to (or reading from) the target:
+ * - the source devices are discovered and their signals counted (count queries)
+ * - a sample of the devices, spread over the range of signal counts, is migrated to a NullSignalSink
+ *   (canary run), with the job's rate limits; the requests, bytes and worker time per signal are measured
+ * - these are extrapolated to the signal counts of all devices, at the job's concurrency and rate limits
+ *
+ * The estimate assumes an empty target: the count check of a device (TargetCountCheck) costs one request on
+ * each platform, and the target is not scanned for dedup. A write request is
+ * assumed to take as long as the average source request of the canary run.
+ */
+@Component
+@Slf4j
+public class MigrationEstimateService {
+
+	/**
+	 * signals read per page, see MeasurementUtil.getMeasurements(...)
+	 */
+	private static final int PAGE_SIZE = 500;
+
+	/**
+	 * heap of a signal representation relative to its JSON size
+	 */
+	private static final int OBJECT_SIZE_FACTOR = 4;
+
+	/**
+	 * heap per entry of a dedup set (LongMultiset; fingerprints hardly ever occur twice)
+	 */
+	private static final int DEDUP_BYTES_PER_SIGNAL = LongMultiset.MAX_BYTES_PER_VALUE;
+
+	@Value("${MigrationEstimateService.defaultSampleSize:10}")
+	private int defaultSampleSize;
+
+	/**
+	 * a canary device migration stops after this many signals (at a batch boundary)
+	 */
+	@Value("${MigrationEstimateService.maxSampleSignalsPerDevice:20000}")
+	private long maxSampleSignalsPerDevice;
+
+	@Value("${MigrationEstimateService.canaryTimeoutMinutes:30}")
+	private int canaryTimeoutMinutes;
+
+	@Value("${MigrationJobService.numParallelDeviceMigrations:9}")
+	private int numParallelDeviceMigrations;
+
+	@Value("${MigrationJobService.deviceDiscoveryPageSize:2000}")
+	private int deviceDiscoveryPageSize;
+
+	@Autowired
+	private CumulocityService cumulocityService;
+
+	@Autowired
+	private PlatformUtil platformUtil;
+
+	@Autowired
+	private SignalMetricCollectionService signalMetricCollectionService;
+
+	@Autowired
+	private AdaptiveConcurrencyService adaptiveConcurrencyService;
+
+	@Autowired
+	private MigrationJobService migrationJobService;
+
+	@Autowired
+	private MeasurementMigrationService measurementMigrationService;
+
+	@Autowired
+	private EventMigrationService eventMigrationService;
+
+	@Autowired
+	private AlarmMigrationService alarmMigrationService;
+
+	@Autowired
+	@Qualifier("defaultExternalAPIRetry")
+	private RetryRegistry retryRegistry;
+
+	private Retry apiRequestRetry;
+
+	/**
+	 * one migration of the canary run: a sample device and signal type
+	 */
+	private static class CanaryPart {
+		final SignalType signalType;
+		final String sourceDeviceId;
+		final CountingRequestLimiter sourceLimiter;
+		final NullSignalSink sink = new NullSignalSink();
+		volatile long workerMillis;
+		volatile String error;
+
+		CanaryPart(SignalType signalType, String sourceDeviceId, CountingRequestLimiter sourceLimiter) {
+			this.signalType = signalType;
+			this.sourceDeviceId = sourceDeviceId;
+			this.sourceLimiter = sourceLimiter;
+		}
+	}
+
+	@PostConstruct
+	private void init() {
+		apiRequestRetry = retryRegistry.retry("create-c8y-operation");
+	}
+
+	/**
+	 * @param config the job to estimate
+	 * @param sampleSize number of devices of the canary run, null = defaultSampleSize
+	 */
+	public MigrationEstimate estimate(MigrationJobConfig config, Integer sampleSize) throws Exception {
+		List<SignalType> signalTypes = config.getSignalTypesToMigrate();
+		MigrationJobSettings settings = migrationJobService.resolveSettings(config);
+		DateTime dateFrom = DateUtil.parser.withZoneUTC().parseDateTime(config.getDateFrom());
+		DateTime dateTo = DateUtil.parser.withZoneUTC().parseDateTime(config.getDateTo());
+
+		Platform sourcePlatform = platformUtil.resolvePlatform(config.getSourcePlatformHost(), config.getSourcePlatformLoginString());
+		Platform targetPlatform = platformUtil.resolvePlatform(config.getTargetPlatformHost(), config.getTargetPlatformLoginString());
+		JobRequestLimiter sourceLimiter = new JobRequestLimiter("Estimate source",
+				adaptiveConcurrencyService.getLimiter(AdaptiveConcurrencyService.ROLE_SOURCE, config.getSourcePlatformHost()),
+				settings.getSourceRequestsPerSecond(), settings.getSourceSignalsPerSecond());
+		JobRequestLimiter targetLimiter = new JobRequestLimiter("Estimate target",
+				adaptiveConcurrencyService.getLimiter(AdaptiveConcurrencyService.ROLE_TARGET, config.getTargetPlatformHost()),
+				settings.getTargetRequestsPerSecond(), settings.getTargetSignalsPerSecond());
+
+		List<String> deviceIds = new ArrayList<>();
+		cumulocityService.processManagedObjectPages(sourcePlatform, config.getSourceDevicesQuery(), deviceDiscoveryPageSize,
+				apiRequestRetry, sourceLimiter, page -> {
+			for (ManagedObjectRepresentation device : page) {
+				if (config.isInPartition(device.getId().getValue())) {
+					deviceIds.add(device.getId().getValue());
+				}
+			}
+		});
+		log.info("Estimate: {} source devices, counting signals", deviceIds.size());
+
+		// source device id -> signal count, per signal type; a device missing any count is left out
+		Map<SignalType, Map<String, Long>> counts = new HashMap<>();
+		for (SignalType signalType : signalTypes) {
+			counts.put(signalType, signalMetricCollectionService.collectDeviceSignalCounts(deviceIds, signalType, sourcePlatform, sourceLimiter,
+					dateFrom, dateTo));
+		}
+		List<String> countedDeviceIds = deviceIds.stream()
+				.filter(id -> counts.values().stream().allMatch(typeCounts -> typeCounts.containsKey(id)))
+				.collect(Collectors.toList());
+
+		List<String> sampleDeviceIds = selectSample(countedDeviceIds, counts, sampleSize != null ? sampleSize : defaultSampleSize);
+		int concurrency = settings.getMaxParallelDeviceMigrations() > 0 ? settings.getMaxParallelDeviceMigrations() : numParallelDeviceMigrations;
+		List<CanaryPart> canaryParts = runCanary(config, settings, signalTypes, sampleDeviceIds, concurrency,
+				sourcePlatform, targetPlatform, sourceLimiter, targetLimiter);
+
+		List<SignalTypeEstimate> typeEstimates = new ArrayList<>();
+		for (SignalType signalType : signalTypes) {
+			typeEstimates.add(estimateSignalType(signalType, counts.get(signalType), countedDeviceIds, sampleDeviceIds.size(),
+					canaryParts.stream().filter(part -> part.signalType == signalType).collect(Collectors.toList())));
+		}
+
+		MigrationEstimate estimate = MigrationEstimate.builder()
+				.settings(settings)
+				.concurrency(concurrency)
+				.numDevices(deviceIds.size())
+				.numUncountedDevices(deviceIds.size() - countedDeviceIds.size())
+				.sampleDeviceIds(sampleDeviceIds)
+				.numSignals(typeEstimates.stream().mapToLong(SignalTypeEstimate::getNumSignals).sum())
+				.signalTypeEstimates(typeEstimates)
+				.sampleErrors(canaryParts.stream()
+						.filter(part -> part.error != null)
+						.map(part -> String.format("%s %s: %s", part.sourceDeviceId, part.signalType, part.error))
+						.collect(Collectors.toList()))
+				.build();
+		estimateTotals(estimate, config, countedDeviceIds, counts);
+		log.info("Estimate: {}", estimate);
+		return estimate;
+	}
+
+	/**
+	 * Devices at evenly spaced ranks of their signal count, so that small and large devices are measured
+	 */
+	private List<String> selectSample(List<String> deviceIds, Map<SignalType, Map<String, Long>> counts, int sampleSize) {
+		if (deviceIds.isEmpty() || sampleSize <= 0) {
+			return Collections.emptyList();
+		}
+		List<String> sorted = new ArrayList<>(deviceIds);
+		sorted.sort(Comparator.comparingLong(id -> totalCount(id, counts)));
+		int n = Math.min(sampleSize, sorted.size());
+		LinkedHashSet<String> sample = new LinkedHashSet<>();
+		for (int i = 0; i < n; i++) {
+			sample.add(sorted.get(n == 1 ? sorted.size() / 2 : (int) ((long) i * (sorted.size() - 1) / (n - 1))));
+		}
+		return new ArrayList<>(sample);
+	}
+
+	private static long totalCount(String deviceId, Map<SignalType, Map<String, Long>> counts) {
+		return counts.values().stream().mapToLong(typeCounts -> typeCounts.getOrDefault(deviceId, 0L)).sum();
+	}
+
+	private List<CanaryPart> runCanary(MigrationJobConfig config, MigrationJobSettings settings, List<SignalType> signalTypes,
+			List<String> sampleDeviceIds, int concurrency, Platform sourcePlatform, Platform targetPlatform,
+			JobRequestLimiter sourceLimiter, JobRequestLimiter targetLimiter) throws InterruptedException {
+		List<CanaryPart> parts = new ArrayList<>();
+		if (sampleDeviceIds.isEmpty()) {
+			return parts;
+		}
+		log.info("Estimate: canary run of {} devices", sampleDeviceIds.size());
+		ExecutorService executorService = Executors.newFixedThreadPool(Math.min(concurrency, sampleDeviceIds.size() * signalTypes.size()));
+		for (String sourceDeviceId : sampleDeviceIds) {
+			for (SignalType signalType : signalTypes) {
+				CanaryPart part = new CanaryPart(signalType, sourceDeviceId, new CountingRequestLimiter(sourceLimiter));
+				parts.add(part);
+				SignalMigrationTask task = SignalMigrationTask.builder()
+						.sourceDeviceId(sourceDeviceId)
+						.targetDeviceId(sourceDeviceId) // not used, the target is not touched
+						.signalType(signalType)
+						.dateFrom(config.getDateFrom())
+						.dateTo(config.getDateTo())
+						.sourcePlatform(sourcePlatform)
+						.targetPlatform(targetPlatform)
+						.sourceLimiter(part.sourceLimiter)
+						.targetLimiter(targetLimiter)
+						.batchSize(() -> settings.getMeasurementBatchSize())
+						.dryRunSink(part.sink)
+						.reportHandler(report -> part.error = report.getError())
+						// a large device stops early, the rest of it is not needed for the estimate
+						.pauseRequested(() -> part.sourceLimiter.getNumSignals() >= maxSampleSignalsPerDevice)
+						.pauseHandler(rest -> {})
+						.build();
+				executorService.execute(() -> {
+					long start = System.currentTimeMillis();
+					try {
+						migrate(task);
+					} catch (Exception e) {
+						log.error("Error in canary run of source device " + sourceDeviceId, e);
+						part.error = e.getMessage();
+					}
+					part.workerMillis = System.currentTimeMillis() - start;
+				});
+			}
+		}
+		executorService.shutdown();
+		if (!executorService.awaitTermination(canaryTimeoutMinutes, TimeUnit.MINUTES)) {
+			log.warn("Estimate: canary run not done within {} minutes, estimating from the completed part", canaryTimeoutMinutes);
+			executorService.shutdownNow();
+		}
+		return parts;
+	}
+
+	private void migrate(SignalMigrationTask task) {
+		switch (task.getSignalType()) {
+		case MEASUREMENT:
+			measurementMigrationService.migrateMeasurements(task);
+			break;
+		case EVENT:
+			eventMigrationService.migrateEvents(task);
+			break;
+		case ALARM:
+			alarmMigrationService.migrateAlarms(task);
+			break;
+		default:
+			throw new UnsupportedOperationException();
+		}
+	}
+
+	private SignalTypeEstimate estimateSignalType(SignalType signalType, Map<String, Long> typeCounts, List<String> countedDeviceIds,
+			int numSampleDevices, List<CanaryPart> parts) {
+		long numSignals = countedDeviceIds.stream().mapToLong(typeCounts::get).sum();
+		long maxDeviceSignals = countedDeviceIds.stream().mapToLong(typeCounts::get).max().orElse(0);
+		long signalsRead = parts.stream().mapToLong(part -> part.sourceLimiter.getNumSignals()).sum();
+		long sourceRequests = parts.stream().mapToLong(part -> part.sourceLimiter.getNumRequests()).sum();
+		long sourceRequestMillis = parts.stream().mapToLong(part -> part.sourceLimiter.getRequestMillis()).sum();
+		long targetRequests = parts.stream().mapToLong(part -> part.sink.getNumRequests()).sum();
+		long signalsWritten = parts.stream().mapToLong(part -> part.sink.getNumSignals()).sum();
+		long bytes = parts.stream().mapToLong(part -> part.sink.getNumBytes()).sum();
+		long workerMillis = parts.stream().mapToLong(part -> part.workerMillis).sum();
+
+		// per signal where the sample has signals, per device otherwise
+		double scale = signalsRead > 0 ? (double) numSignals / signalsRead
+				: numSampleDevices > 0 ? (double) countedDeviceIds.size() / numSampleDevices : 0;
+		double millisPerRequest = sourceRequests > 0 ? (double) sourceRequestMillis / sourceRequests : 0;
+		int numDevices = countedDeviceIds.size();
+
+		// at least one read per device; plus the count queries of TargetCountCheck on both platforms
+		long estimatedSourceRequests = Math.max(numDevices, Math.round(sourceRequests * scale)) + numDevices;
+		long estimatedWrites = Math.round(targetRequests * scale);
+		long estimatedTargetRequests = estimatedWrites + numDevices;
+		double estimatedWorkerMillis = workerMillis * scale + estimatedTargetRequests * millisPerRequest;
+		double workerMillisPerSignal = numSignals > 0 ? estimatedWorkerMillis / numSignals : 0;
+
+		return SignalTypeEstimate.builder()
+				.signalType(signalType)
+				.numSignals(numSignals)
+				.maxDeviceSignals(maxDeviceSignals)
+				.sampleSignalsRead(signalsRead)
+				.sampleSourceRequests(sourceRequests)
+				.sampleTargetRequests(targetRequests)
+				.sampleSignalsWritten(signalsWritten)
+				.sampleBytes(bytes)
+				.sampleWorkerMillis(workerMillis)
+				.sampleSourceRequestMillis(sourceRequestMillis)
+				.estimatedSourceRequests(estimatedSourceRequests)
+				.estimatedTargetRequests(estimatedTargetRequests)
+				.estimatedBytes(Math.round(bytes * scale))
+				.estimatedWorkerSec(Math.round(estimatedWorkerMillis / 1000))
+				.estimatedLargestDeviceSec(Math.round(maxDeviceSignals * workerMillisPerSignal / 1000))
+				.build();
+	}
+
+	private void estimateTotals(MigrationEstimate estimate, MigrationJobConfig config, List<String> countedDeviceIds,
+			Map<SignalType, Map<String, Long>> counts) {
+		MigrationJobSettings settings = estimate.getSettings();
+		List<SignalTypeEstimate> typeEstimates = estimate.getSignalTypeEstimates();
+		int numDevices = estimate.getNumDevices();
+		int numSignalTypes = typeEstimates.size();
+
+		// device discovery, identity lookups (source external ids, target device), counts for LARGEST_FIRST
+		long sourceRequests = numDevices / deviceDiscoveryPageSize + 1 + numDevices;
+		if (DeviceSchedulingMode.LARGEST_FIRST.equals(config.getSchedulingMode())) {
+			sourceRequests += (long) numDevices * numSignalTypes;
+		}
+		sourceRequests += typeEstimates.stream().mapToLong(SignalTypeEstimate::getEstimatedSourceRequests).sum();
+		long targetRequests = numDevices + typeEstimates.stream().mapToLong(SignalTypeEstimate::getEstimatedTargetRequests).sum();
+		estimate.setEstimatedSourceRequests(sourceRequests);
+		estimate.setEstimatedTargetRequests(targetRequests);
+		estimate.setEstimatedBytes(typeEstimates.stream().mapToLong(SignalTypeEstimate::getEstimatedBytes).sum());
+
+		// the duration is set by the slowest of: the workers, each rate limit, the largest device
+		Map<String, Double> durations = new HashMap<>();
+		double workerSec = typeEstimates.stream().mapToLong(SignalTypeEstimate::getEstimatedWorkerSec).sum();
+		durations.put("concurrency", workerSec / estimate.getConcurrency());
+		durations.put("sourceRequestsPerSecond", perSecond(sourceRequests, settings.getSourceRequestsPerSecond()));
+		durations.put("sourceSignalsPerSecond", perSecond(estimate.getNumSignals(), settings.getSourceSignalsPerSecond()));
+		durations.put("targetRequestsPerSecond", perSecond(targetRequests, settings.getTargetRequestsPerSecond()));
+		durations.put("targetSignalsPerSecond", perSecond(estimate.getNumSignals(), settings.getTargetSignalsPerSecond()));
+		if (config.getWindowSplitMode() == null || WindowSplitMode.NONE.equals(config.getWindowSplitMode())) {
+			// a device's signal types run concurrently, its sub-windows are not split
+			durations.put("largestDevice", (double) typeEstimates.stream().mapToLong(SignalTypeEstimate::getEstimatedLargestDeviceSec).max().orElse(0));
+		}
+		Map.Entry<String, Double> longest = Collections.max(durations.entrySet(), Map.Entry.comparingByValue());
+		estimate.setEstimatedDurationSec(Math.round(longest.getValue()));
+		estimate.setDurationLimitedBy(longest.getKey());
+
+		// each worker holds a page and a batch; alarms of a device are all read before they are written
+		long pageBytes = 0;
+		long alarmBytes = 0;
+		for (SignalTypeEstimate typeEstimate : typeEstimates) {
+			long bytesPerSignal = typeEstimate.getSampleSignalsWritten() > 0 ? typeEstimate.getSampleBytes() / typeEstimate.getSampleSignalsWritten() : 0;
+			pageBytes = Math.max(pageBytes, (PAGE_SIZE + settings.getMeasurementBatchSize()) * bytesPerSignal * OBJECT_SIZE_FACTOR);
+			if (typeEstimate.getSignalType() == SignalType.ALARM) {
+				alarmBytes = typeEstimate.getMaxDeviceSignals() * bytesPerSignal * OBJECT_SIZE_FACTOR;
+			}
+		}
+		int concurrency = estimate.getConcurrency();
+		estimate.setEstimatedPeakMemoryBytes(concurrency * Math.max(pageBytes, alarmBytes));
+
+		// worst case: the largest devices run at the same time, and the target holds all of their signals
+		long largestDevicesSignals = countedDeviceIds.stream()
+				.map(id -> totalCount(id, counts))
+				.sorted(Comparator.reverseOrder())
+				.limit(concurrency)
+				.mapToLong(Long::longValue)
+				.sum();
+		estimate.setEstimatedPeakDedupMemoryBytes(largestDevicesSignals * DEDUP_BYTES_PER_SIGNAL);
+	}
+
+	private static double perSecond(long amount, int perSecond) {
+		return perSecond > 0 ? (double) amount / perSecond : 0;
+	}
+}
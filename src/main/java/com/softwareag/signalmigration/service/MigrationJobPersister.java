@@ -0,0 +1,222 @@
+package com.softwareag.signalmigration.service;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.cumulocity.model.idtype.GId;
+import com.cumulocity.model.operation.OperationStatus;
+import com.cumulocity.rest.representation.inventory.ManagedObjectRepresentation;
+import com.softwareag.signalmigration.model.DeviceSignalMigrationReport;
+import com.softwareag.signalmigration.model.MigrationJob;
+import com.softwareag.signalmigration.util.ManagedObjectUtil;
+
+import io.github.resilience4j.retry.Retry;
+import io.github.resilience4j.retry.RetryRegistry;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Saves jobs to inventory on a single background thread, so that workers recording a result never wait on
+ * inventory I/O. Changes are collected and a job is saved
+ * - every saveIntervalSeconds if it has changed
+ * - as soon as saveEveryNChanges changes have been collected
+ * - right away on a status change, and on shutdown
+ *
+ * All saves, including the synchronous save(...), run on the same thread, so an older state never
+ * overwrites a newer one.
+ */
+@Component
+@Slf4j
+public class MigrationJobPersister {
+
+	@Value("${MigrationJobPersister.saveIntervalSeconds:10}")
+	private int saveIntervalSeconds;
+
+	@Value("${MigrationJobPersister.saveEveryNChanges:100}")
+	private int saveEveryNChanges;
+
+	@Value("${MigrationJobPersister.shutdownTimeoutSeconds:60}")
+	private int shutdownTimeoutSeconds;
+
+	@Autowired
+	private CumulocityService cumulocityService;
+
+	@Autowired
+	private DeviceReportStore reportStore;
+
+	@Autowired
+	@Qualifier("defaultExternalAPIRetry")
+	private RetryRegistry retryRegistry;
+
+	@Autowired
+	private MeterRegistry registry;
+
+	private Retry apiRequestRetry;
+
+	private ScheduledExecutorService saver;
+
+	/**
+	 * jobId -> job with unsaved changes
+	 */
+	private final Map<String, PendingJob> pendingJobs = new ConcurrentHashMap<>();
+
+	private static class PendingJob {
+		final MigrationJob job;
+		final AtomicInteger numChanges = new AtomicInteger();
+
+		PendingJob(MigrationJob job) {
+			this.job = job;
+		}
+	}
+
+	@PostConstruct
+	private void init() {
+		apiRequestRetry = retryRegistry.retry("create-c8y-operation");
+		saver = Executors.newSingleThreadScheduledExecutor();
+		saver.scheduleWithFixedDelay(this::saveChangedJobs, saveIntervalSeconds, saveIntervalSeconds, TimeUnit.SECONDS);
+	}
+
+	/**
+	 * Save the job now and wait for it, e.g. to get the id of a new job
+	 */
+	public ManagedObjectRepresentation save(MigrationJob job) throws Exception {
+		try {
+			return saver.submit(() -> {
+				PendingJob pending = job.getC8yId() == null ? null : pendingJobs.get(job.getC8yId());
+				if (pending != null) {
+					pending.numChanges.set(0);
+				}
+				return doSave(job);
+			}).get();
+		} catch (ExecutionException e) {
+			throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+		}
+	}
+
+	/**
+	 * Record a change of the job, it will be saved in the background; returns immediately
+	 *
+	 * @param statusChanged save without waiting for the interval
+	 */
+	public void changed(MigrationJob job, boolean statusChanged) {
+		changed(job, 1, statusChanged);
+	}
+
+	/**
+	 * Record numChanges changes of the job at once, e.g. a batch of reports
+	 */
+	public void changed(MigrationJob job, int numChanges, boolean statusChanged) {
+		// a resumed or retried job is a new instance with the same id
+		PendingJob pending = pendingJobs.compute(job.getC8yId(), (id, existing) -> {
+			return existing != null && existing.job == job ? existing : new PendingJob(job);
+		});
+		int total = pending.numChanges.addAndGet(numChanges);
+		if (statusChanged || (total >= saveEveryNChanges && total - numChanges < saveEveryNChanges)) {
+			try {
+				saver.execute(() -> saveIfChanged(pending));
+			} catch (RejectedExecutionException e) {
+				log.debug("Shutting down, job {} is saved by shutdown()", job.getC8yId());
+			}
+		}
+	}
+
+	/**
+	 * Save all changed jobs now and wait for it, e.g. on shutdown before the partition leases are released
+	 */
+	public void saveChangedJobsNow() throws Exception {
+		try {
+			saver.submit(this::saveChangedJobs).get(shutdownTimeoutSeconds, TimeUnit.SECONDS);
+		} catch (ExecutionException e) {
+			throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+		}
+	}
+
+	@PreDestroy
+	private void shutdown() throws InterruptedException {
+		saver.shutdown();
+		if (!saver.awaitTermination(shutdownTimeoutSeconds, TimeUnit.SECONDS)) {
+			log.warn("Job saves did not finish within {} s", shutdownTimeoutSeconds);
+			return;
+		}
+		log.info("Saving {} jobs on shutdown", pendingJobs.size());
+		saveChangedJobs();
+	}
+
+	private void saveChangedJobs() {
+		pendingJobs.values().forEach(this::saveIfChanged);
+	}
+
+	private void saveIfChanged(PendingJob pending) {
+		int numChanges = pending.numChanges.getAndSet(0);
+		if (numChanges == 0) {
+			return;
+		}
+		if (pending.job.isDetached()) {
+			log.info("Job {} is run by another instance, not saved", pending.job.getC8yId());
+			pendingJobs.remove(pending.job.getC8yId(), pending);
+			return;
+		}
+		try {
+			doSave(pending.job);
+			log.debug("Saved job {} with {} changes", pending.job.getC8yId(), numChanges);
+			if (!pending.job.getStatus().equals(OperationStatus.EXECUTING) && pending.numChanges.get() == 0) {
+				pendingJobs.remove(pending.job.getC8yId(), pending);
+			}
+		} catch (Exception e) {
+			log.error("Error saving job " + pending.job.getC8yId(), e);
+			registry.counter("MigrationJobPersister.saveErrors").increment();
+			pending.numChanges.addAndGet(numChanges); // next interval tries again
+		}
+	}
+
+	private ManagedObjectRepresentation doSave(MigrationJob job) throws Exception {
+		// reports first, so that the saved job never points to reports that are not stored
+		if (job.getC8yId() != null) {
+			List<DeviceSignalMigrationReport> reports = job.takeUnsavedReports();
+			if (!reports.isEmpty()) {
+				try {
+					reportStore.append(job, reports);
+				} catch (Exception e) {
+					job.returnUnsavedReports(reports);
+					throw e;
+				}
+			}
+		}
+		
+		return apiRequestRetry.executeCallable(() -> {
+			ManagedObjectRepresentation jobMo = new ManagedObjectRepresentation();
+
+			// consistent snapshot: the job's state changes under its lock
+			synchronized (job) {
+				ManagedObjectUtil.writeObjectAsFragment(jobMo, job, MigrationJobService.JOB_FRAGMENT_NAME);
+			}
+
+			ManagedObjectRepresentation managedObject;
+			if (job.getC8yId() == null) {
+				log.info("Creating job in c8y " + job);
+				managedObject = cumulocityService.createManagedObject(jobMo);
+				job.setC8yId(managedObject.getId().getValue());
+			} else {
+				log.info("Updating job in c8y " + job);
+				jobMo.setId(GId.asGId(job.getC8yId()));
+				managedObject = cumulocityService.updateManagedObject(jobMo);
+			}
+			return managedObject;
+		});
+	}
+}
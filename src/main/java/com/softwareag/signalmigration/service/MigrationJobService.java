@@ -1,17 +1,28 @@
 package com.softwareag.signalmigration.service;
 
-import java.io.IOException;
+import java.time.ZonedDateTime;
 import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
-import java.util.concurrent.BlockingQueue;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.IntSupplier;
 import java.util.stream.Collectors;
 
 import javax.annotation.PostConstruct;
 
+import org.joda.time.DateTime;
+import org.joda.time.Interval;
+
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
@@ -21,21 +32,23 @@ import org.springframework.stereotype.Component;
 
 import com.cumulocity.microservice.subscription.model.MicroserviceSubscriptionsInitializedEvent;
 import com.cumulocity.microservice.subscription.service.MicroserviceSubscriptionsService;
-import com.cumulocity.model.ID;
-import com.cumulocity.model.idtype.GId;
 import com.cumulocity.model.operation.OperationStatus;
-import com.cumulocity.rest.representation.identity.ExternalIDRepresentation;
 import com.cumulocity.rest.representation.inventory.ManagedObjectRepresentation;
-import com.cumulocity.sdk.client.Platform;
-import com.cumulocity.sdk.client.identity.ExternalIDCollection;
 import com.cumulocity.sdk.client.identity.IdentityApi;
-import com.cumulocity.sdk.client.inventory.InventoryFilter;
+import com.softwareag.signalmigration.model.DeviceMappingMode;
+import com.softwareag.signalmigration.model.DeviceSchedulingMode;
 import com.softwareag.signalmigration.model.DeviceSignalMigrationReport;
-import com.softwareag.signalmigration.model.ExternalIdMappingAdvice;
+import com.softwareag.signalmigration.model.ExecutionWindow;
 import com.softwareag.signalmigration.model.MigrationJob;
 import com.softwareag.signalmigration.model.MigrationJobConfig;
+import com.softwareag.signalmigration.model.MigrationJobSettings;
+import com.softwareag.signalmigration.model.SignalMigrationTask;
 import com.softwareag.signalmigration.model.SignalType;
+import com.softwareag.signalmigration.util.AimdConcurrencyLimiter;
 import com.softwareag.signalmigration.util.CustomInventoryFilter;
+import com.softwareag.signalmigration.util.DateUtil;
+import com.softwareag.signalmigration.util.DeviceIdMap;
+import com.softwareag.signalmigration.util.JobRequestLimiter;
 import com.softwareag.signalmigration.util.ManagedObjectUtil;
 
 import io.github.resilience4j.retry.Retry;
@@ -65,29 +78,95 @@ public class MigrationJobService {
 	@Autowired
 	private PlatformUtil platformUtil;
 	
+	@Autowired
+	private SignalWindowPlanner signalWindowPlanner;
+	
+	@Autowired
+	private SignalMetricCollectionService signalMetricCollectionService;
+	
+	@Autowired
+	private AdaptiveConcurrencyService adaptiveConcurrencyService;
+	
 	@Autowired
 	@Qualifier("defaultExternalAPIRetry")	
 	private RetryRegistry retryRegistry;
 	
-	@Value("${MigrationJobService.numParallelDeviceMigrations:9}")
-	private int numParallelDeviceMigrations;
+	/**
+	 * default for MigrationJobConfig.maxParallelDeviceMigrations, <= 0 for no per-job limit 
+	 */
+	@Value("${MigrationJobService.maxParallelDeviceMigrationsPerJob:0}")
+	private int maxParallelDeviceMigrationsPerJob;
+	
+	/**
+	 * defaults for the rate limits of MigrationJobConfig, 0 = no limit
+	 */
+	@Value("${MigrationJobService.defaultSourceRequestsPerSecond:0}")
+	private int defaultSourceRequestsPerSecond;
+	
+	@Value("${MigrationJobService.defaultSourceSignalsPerSecond:0}")
+	private int defaultSourceSignalsPerSecond;
+	
+	@Value("${MigrationJobService.defaultTargetRequestsPerSecond:0}")
+	private int defaultTargetRequestsPerSecond;
+	
+	@Value("${MigrationJobService.defaultTargetSignalsPerSecond:0}")
+	private int defaultTargetSignalsPerSecond;
+	
+	@Value("${MigrationJobService.executionWindowCheckSeconds:30}")
+	private int executionWindowCheckSeconds;
 	
 	@Value("${MigrationJobService.resumeIncompleteJobsOnStartup:true}")
 	private boolean resumeIncompleteJobsOnStartup;
 	
+	@Value("${MigrationJobService.deviceDiscoveryPageSize:2000}")
+	private int deviceDiscoveryPageSize;
+	
 	@Autowired
 	private MeterRegistry registry;
 		
-	private ThreadPoolExecutor executorService;
+	@Autowired
+	private DeviceMigrationScheduler scheduler;
+	
+	@Autowired
+	private MigrationJobPersister jobPersister;
+	
+	@Autowired
+	private DeviceReportStore deviceReportStore;
+	
+	@Autowired
+	private JobTableStore jobTableStore;
+	
+	@Autowired
+	private JobStateAggregator jobStateAggregator;
+	
+	@Autowired
+	private DistributedJobService distributedJobService;
+	
+	@Autowired
+	private DeviceMappingService deviceMappingService;
+	
+	private ExecutorService deviceDiscoveryExecutorService;
+	
+	private ScheduledExecutorService executionWindowTimer;
+	
+	/**
+	 * jobId -> job run by this instance; jobs that are no longer executing are removed lazily
+	 */
+	private final Map<String, MigrationJob> runningJobs = new ConcurrentHashMap<>();
+	
+	/**
+	 * set on shutdown: no more jobs or devices are started, running tasks stop after their current batch
+	 */
+	private volatile boolean shuttingDown = false;
 	
 	private Retry apiRequestRetry;
 	
 	@PostConstruct
 	private void init() {
-		executorService = (ThreadPoolExecutor) Executors.newFixedThreadPool(numParallelDeviceMigrations);
-		BlockingQueue<Runnable> queue = executorService.getQueue();
-		registry.gauge("MigrationJobService.pendingDeviceMigrationsQueueSize", queue, BlockingQueue::size);
-		registry.gauge("MigrationJobService.executorServiceApproxActiveCount", executorService, ThreadPoolExecutor::getActiveCount);
+		deviceDiscoveryExecutorService = Executors.newCachedThreadPool();
+		executionWindowTimer = Executors.newSingleThreadScheduledExecutor();
+		executionWindowTimer.scheduleWithFixedDelay(this::checkExecutionWindows, 
+				executionWindowCheckSeconds, executionWindowCheckSeconds, TimeUnit.SECONDS);
 
 				
 		apiRequestRetry = retryRegistry.retry("create-c8y-operation");		
@@ -126,27 +205,45 @@ public class MigrationJobService {
 				throw new IllegalArgumentException("Job is not completed!");
 			}
 		}
+		if (job.getConfig().isDistributedParent()) {
+			distributedJobService.retryJob(job);
+			return;
+		}
 		int removed = job.removeReportsWithErrors();
-		if (removed == 0) {
+		if (removed == 0 && job.getError() == null) {
 			throw new IllegalStateException("No device migration errors found! Will not retry.");
 		}
 		log.info("Retrying job, {} devices with errors removed, job: {}", removed, job);
 		runMigrationJob(job);
 	}
 	
+	/**
+	 * First step of a graceful shutdown: stop the device discovery and the execution window checks, start
+	 * no more jobs or devices, and make running tasks stop after their current batch. Their cursors are 
+	 * committed, so that a resumed job continues from there. See GracefulShutdownService.
+	 */
+	public void stopStartingWork() {
+		shuttingDown = true;
+		executionWindowTimer.shutdownNow();
+		deviceDiscoveryExecutorService.shutdownNow();
+	}
+	
 	private ArrayList<MigrationJob> loadIncompleteJobs() {
+		// partition jobs of distributed jobs are resumed by the instance that claims them
 		CustomInventoryFilter filter = new CustomInventoryFilter().byQuery(
-				String.format("has('%s') and %s.version eq %d and %s.status eq '%s'",
+				String.format("has('%s') and %s.version ge %d and %s.status eq '%s' and not(has('%s'))",
 						JOB_FRAGMENT_NAME, 
 						JOB_FRAGMENT_NAME,
-						MigrationJob.VERSION,
+						MigrationJob.MIN_SUPPORTED_VERSION,
 						JOB_FRAGMENT_NAME,
-						OperationStatus.EXECUTING.name()));
+						OperationStatus.EXECUTING.name(),
+						InventoryPartitionLeaseStore.LEASE_FRAGMENT_NAME));
 		ArrayList<MigrationJob> jobs = new ArrayList<>();
 		for (Iterator<ManagedObjectRepresentation> iterator = cumulocityService.getManagedObjectsByFilter(filter).iterator(); iterator.hasNext();) {
 			ManagedObjectRepresentation moRep = iterator.next();
 			MigrationJob job = ManagedObjectUtil.readObjectFromFragment(moRep, MigrationJob.class, JOB_FRAGMENT_NAME);
 			job.setC8yId(moRep.getId().getValue());
+			deviceReportStore.loadIndex(job);
 			jobs.add(job);
 		}
 		return jobs;
@@ -156,85 +253,65 @@ public class MigrationJobService {
 		ManagedObjectRepresentation moRep = cumulocityService.getManagedObject(id);
 		MigrationJob job = ManagedObjectUtil.readObjectFromFragment(moRep, MigrationJob.class, JOB_FRAGMENT_NAME);
 		job.setC8yId(moRep.getId().getValue());
+		deviceReportStore.loadIndex(job);
 		return job;
 	}
 
 	private ManagedObjectRepresentation saveJob(MigrationJob job) throws Exception {
-		ManagedObjectRepresentation saved = null;
-		saved = apiRequestRetry.executeCallable( ()-> {
-			return doSaveJob(job);
-		});
-		return saved;
-	}
-	
-	private ManagedObjectRepresentation doSaveJob(MigrationJob job) {
-		ManagedObjectRepresentation jobMo = new ManagedObjectRepresentation();
-		
-		ManagedObjectUtil.writeObjectAsFragment(jobMo, job, JOB_FRAGMENT_NAME);
-		
-		ManagedObjectRepresentation managedObject;
-		if (job.getC8yId() == null) {
-			log.info("Creating job in c8y " + job);
-			managedObject = cumulocityService.createManagedObject(jobMo);
-			job.setC8yId(managedObject.getId().getValue());
-		} else {
-			log.info("Updating job in c8y " + job);
-			jobMo.setId(GId.asGId(job.getC8yId()));
-			managedObject = cumulocityService.updateManagedObject(jobMo);
-		}
-		return managedObject;
+		return jobPersister.save(job);
 	}
 
+	/**
+	 * Saves the job and starts it; in the background the source devices are discovered page by page, 
+	 * mapped to their target devices (see DeviceMappingService), and then handed to the workers.
+	 * 
+	 * @return the saved job managed object
+	 * @throws Exception
+	 */
 	public ManagedObjectRepresentation runMigrationJob(MigrationJob job) throws Exception {		
 		log.info(String.format("Starting migration job %s", job));
+		if (shuttingDown) {
+			throw new IllegalStateException("Shutting down, job not started");
+		}
 		
 		ManagedObjectRepresentation savedJob = null;
 
 		try {
+			job.getConfig().getSignalTypesToMigrate(); // validates the signal type(s)
+			if (job.getConfig().hasExecutionWindows()) {
+				job.getConfig().getExecutionWindows().forEach(ExecutionWindow::validate);
+			}
+			deviceMappingService.validate(job.getConfig());
 			
-			MigrationJobConfig config = job.getConfig();
+			if (job.getConfig().isDistributedParent()) {
+				return distributedJobService.startJob(job);
+			}
 			
 			job.setSourcePlatform(platformUtil.resolvePlatform(job.getConfig().getSourcePlatformHost(), 
 					job.getConfig().getSourcePlatformLoginString()));			
 			job.setTargetPlatform(platformUtil.resolvePlatform(job.getConfig().getTargetPlatformHost(), 
 					job.getConfig().getTargetPlatformLoginString()));
-	
-			String sourceDevicesQuery = config.getSourceDevicesQuery();
-			
-			InventoryFilter filter = new CustomInventoryFilter().byQuery(sourceDevicesQuery);
-			
-			// get source devices
-			Iterable<ManagedObjectRepresentation> sourceDevicesItor = job.getSourcePlatform().getInventoryApi().getManagedObjectsByFilter(filter).get(200).allPages();
-			
-			ArrayList<String> sourceDeviceIds = new ArrayList<>();
-			for (ManagedObjectRepresentation sourceDevice : sourceDevicesItor) {
-				sourceDeviceIds.add(sourceDevice.getId().getValue());
-			}
-			
-			log.info("{} source devices found, job {}", sourceDeviceIds.size(), job.toString());
+			job.setSourceLimiter(adaptiveConcurrencyService.getLimiter(AdaptiveConcurrencyService.ROLE_SOURCE, 
+					job.getConfig().getSourcePlatformHost()));
+			job.setTargetLimiter(adaptiveConcurrencyService.getLimiter(AdaptiveConcurrencyService.ROLE_TARGET, 
+					job.getConfig().getTargetPlatformHost()));
+			updateExecutionWindow(job, ZonedDateTime.now());
+			setRequestLimiters(job);
 			
 			// save
-			job.setNumTotalDevices(sourceDeviceIds.size());
+			job.setVersion(MigrationJob.VERSION);
+			job.setNumTotalDevices(-1);
+			job.setNumDiscoveredDevices(0);
+			job.setError(null);
 			job.setStatus(OperationStatus.EXECUTING);
 			savedJob = saveJob(job);
 			
-			if (sourceDeviceIds.isEmpty()) {
-				job.setStatus(OperationStatus.SUCCESSFUL);
-				saveJob(job);			
-			}
-			
-			// start migration
-			for (String sourceDeviceId : sourceDeviceIds) {
-				// migrate only if not already processed (e.g. if this is a resumed partial job)
-				if (!job.isDeviceProcessed(sourceDeviceId)) {
-					executorService.execute( ()-> {
-						migrateDeviceSignals(sourceDeviceId, job);			
-					});
-				} else {
-					log.info("device is processed, skipping; source device {}, job {}", sourceDeviceId, job.toString());
-				}
-			}
+			runningJobs.put(job.getC8yId(), job);
+			registerWithScheduler(job);
 			
+			deviceDiscoveryExecutorService.execute( ()-> {
+				discoverAndMigrateDevices(job);
+			});
 		
 		} catch (Exception e) {
 			log.error("Error starting job " + job.toString(), e);
@@ -244,137 +321,580 @@ public class MigrationJobService {
 		return savedJob;
 	}
 	
-	private void migrateDeviceSignals(String sourceDeviceId, MigrationJob job) {
-		log.info(String.format("Will now migrate device signals, src device id: %s, job: %s", sourceDeviceId, job));
+	private void setRequestLimiters(MigrationJob job) {
+		MigrationJobConfig config = getEffectiveConfig(job);
+		String name = "Job " + job.getC8yId();
+		job.setSourceRequestLimiter(new JobRequestLimiter(name + " source", job.getSourceLimiter(),
+				valueOrDefault(config.getSourceRequestsPerSecond(), defaultSourceRequestsPerSecond),
+				valueOrDefault(config.getSourceSignalsPerSecond(), defaultSourceSignalsPerSecond)));
+		job.setTargetRequestLimiter(new JobRequestLimiter(name + " target", job.getTargetLimiter(),
+				valueOrDefault(config.getTargetRequestsPerSecond(), defaultTargetRequestsPerSecond),
+				valueOrDefault(config.getTargetSignalsPerSecond(), defaultTargetSignalsPerSecond)));
+	}
+	
+	private static int valueOrDefault(Integer value, int defaultValue) {
+		return value != null ? value : defaultValue;
+	}
+	
+	/**
+	 * @return the job's config, with the settings of the open execution window applied
+	 */
+	private MigrationJobConfig getEffectiveConfig(MigrationJob job) {
+		synchronized (job) {
+			ExecutionWindow window = job.getOpenExecutionWindow();
+			if (window == null || window.getSettings() == null) {
+				return job.getConfig();
+			}
+			MigrationJobConfig effective = job.getConfig().toBuilder().build();
+			window.getSettings().applyTo(effective);
+			return effective;
+		}
+	}
+	
+	/**
+	 * Hand the job's current settings to the scheduler and the rate limiters; running and pending tasks are 
+	 * kept, the workers read the batch size before every batch
+	 */
+	private void applySettings(MigrationJob job) {
+		MigrationJobConfig config = getEffectiveConfig(job);
+		JobRequestLimiter sourceLimiter = job.getSourceRequestLimiter();
+		sourceLimiter.setRequestsPerSecond(valueOrDefault(config.getSourceRequestsPerSecond(), defaultSourceRequestsPerSecond));
+		sourceLimiter.setSignalsPerSecond(valueOrDefault(config.getSourceSignalsPerSecond(), defaultSourceSignalsPerSecond));
+		JobRequestLimiter targetLimiter = job.getTargetRequestLimiter();
+		targetLimiter.setRequestsPerSecond(valueOrDefault(config.getTargetRequestsPerSecond(), defaultTargetRequestsPerSecond));
+		targetLimiter.setSignalsPerSecond(valueOrDefault(config.getTargetSignalsPerSecond(), defaultTargetSignalsPerSecond));
+		scheduler.updateJob(job.getC8yId(), getMaxActiveTasks(job), getSchedulingWeight(job));
+	}
+	
+	/**
+	 * @return the current settings of the job running on this instance (including those of an open execution 
+	 * window), with defaults filled in
+	 */
+	public MigrationJobSettings getJobSettings(String jobId) {
+		return resolveSettings(getEffectiveConfig(getRunningJob(jobId)));
+	}
+	
+	/**
+	 * @return the settings of a job with this config, with defaults filled in
+	 */
+	public MigrationJobSettings resolveSettings(MigrationJobConfig config) {
+		return MigrationJobSettings.builder()
+				.maxParallelDeviceMigrations(valueOrDefault(config.getMaxParallelDeviceMigrations(), maxParallelDeviceMigrationsPerJob))
+				.schedulingWeight(valueOrDefault(config.getSchedulingWeight(), 1))
+				.sourceRequestsPerSecond(valueOrDefault(config.getSourceRequestsPerSecond(), defaultSourceRequestsPerSecond))
+				.sourceSignalsPerSecond(valueOrDefault(config.getSourceSignalsPerSecond(), defaultSourceSignalsPerSecond))
+				.targetRequestsPerSecond(valueOrDefault(config.getTargetRequestsPerSecond(), defaultTargetRequestsPerSecond))
+				.targetSignalsPerSecond(valueOrDefault(config.getTargetSignalsPerSecond(), defaultTargetSignalsPerSecond))
+				.measurementBatchSize(valueOrDefault(config.getMeasurementBatchSize(), MeasurementMigrationService.DEFAULT_BATCH_SIZE))
+				.build();
+	}
+	
+	/**
+	 * Change settings of a job running on this instance; the scheduler, the limiters and the workers' next 
+	 * batches use the new values right away, and they are saved with the job's config. The settings of an 
+	 * open execution window take precedence until it closes.
+	 */
+	public MigrationJobSettings changeJobSettings(String jobId, MigrationJobSettings settings) {
+		settings.validate();
+		MigrationJob job = getRunningJob(jobId);
+		log.info("Changing settings of job {}: {}", jobId, settings);
+		synchronized (job) {
+			settings.applyTo(job.getConfig());
+		}
+		applySettings(job);
+		jobPersister.changed(job, false);
+		return getJobSettings(jobId);
+	}
+	
+	/**
+	 * Stop starting devices (and sub-windows) of a job running on this instance; running ones stop at their 
+	 * next batch boundary (alarms: complete) and continue from there when the job is resumed. 
+	 * The job stays paused when it is resumed after a restart, until resumeJob(...).
+	 */
+	public void pauseJob(String jobId) {
+		MigrationJob job = getRunningJob(jobId);
+		job.setPaused(true);
+		scheduler.setJobPaused(job.getC8yId(), job.isPausedNow());
+		jobPersister.changed(job, false);
+	}
+	
+	/**
+	 * Undo pauseJob(...); a job outside its execution windows stays paused until one opens
+	 */
+	public void resumeJob(String jobId) {
+		MigrationJob job = getRunningJob(jobId);
+		job.setPaused(false);
+		scheduler.setJobPaused(job.getC8yId(), job.isPausedNow());
+		jobPersister.changed(job, false);
+	}
+	
+	/**
+	 * Open or close the execution windows of the job for the time now
+	 * 
+	 * @return true if the open window (or being outside all windows) has changed
+	 */
+	private boolean updateExecutionWindow(MigrationJob job, ZonedDateTime now) {
+		MigrationJobConfig config = job.getConfig();
+		if (!config.hasExecutionWindows()) {
+			return false;
+		}
+		ExecutionWindow window = config.getOpenExecutionWindow(now);
+		if (window == job.getOpenExecutionWindow() && (window == null) == job.isOutsideExecutionWindows()) {
+			return false;
+		}
+		log.info("Job {}: {}", job.getC8yId(), window != null ? "execution window " + window.getCron() + " open" : "outside execution windows, pausing");
+		job.setOpenExecutionWindow(window);
+		job.setOutsideExecutionWindows(window == null);
+		return true;
+	}
+	
+	/**
+	 * Runs every executionWindowCheckSeconds: pauses jobs whose execution window has closed, continues jobs 
+	 * whose window has opened, and applies the window's settings
+	 */
+	private void checkExecutionWindows() {
+		ZonedDateTime now = ZonedDateTime.now();
+		runningJobs.values().removeIf(j -> !isRunning(j));
+		for (MigrationJob job : runningJobs.values()) {
+			try {
+				if (isRunning(job) && updateExecutionWindow(job, now)) {
+					applySettings(job);
+					scheduler.setJobPaused(job.getC8yId(), job.isPausedNow());
+				}
+			} catch (Exception e) {
+				log.error("Error checking execution windows of job " + job.getC8yId(), e);
+			}
+		}
+	}
+	
+	/**
+	 * @throws IllegalArgumentException if the job is not executing on this instance (a distributed job's 
+	 * partitions are jobs of their own)
+	 */
+	private MigrationJob getRunningJob(String jobId) {
+		MigrationJob job = runningJobs.get(jobId);
+		if (job != null && !isRunning(job)) {
+			runningJobs.remove(jobId, job);
+			job = null;
+		}
+		if (job == null) {
+			throw new IllegalArgumentException("Job is not running on this instance: " + jobId);
+		}
+		return job;
+	}
+	
+	private static boolean isRunning(MigrationJob job) {
+		return job.getStatus().equals(OperationStatus.EXECUTING) && !job.isDetached();
+	}
+	
+	private int getMeasurementBatchSize(MigrationJob job) {
+		return valueOrDefault(getEffectiveConfig(job).getMeasurementBatchSize(), MeasurementMigrationService.DEFAULT_BATCH_SIZE);
+	}
+	
+	private void registerWithScheduler(MigrationJob job) {
+		scheduler.registerJob(job.getC8yId(), getMaxActiveTasks(job), getSchedulingWeight(job));
+		scheduler.setJobPaused(job.getC8yId(), job.isPausedNow());
+	}
+	
+	/**
+	 * The job's device concurrency follows the adaptive request limits of its platforms (a device migration 
+	 * has one request in flight at a time), capped by the job's maxParallelDeviceMigrations
+	 */
+	private IntSupplier getMaxActiveTasks(MigrationJob job) {
+		int maxParallel = valueOrDefault(getEffectiveConfig(job).getMaxParallelDeviceMigrations(), maxParallelDeviceMigrationsPerJob);
+		AimdConcurrencyLimiter sourceLimiter = job.getSourceLimiter();
+		AimdConcurrencyLimiter targetLimiter = job.getTargetLimiter();
+		return () -> {
+			int limit = Math.min(sourceLimiter.getLimit(), targetLimiter.getLimit());
+			return maxParallel > 0 ? Math.min(maxParallel, limit) : limit;
+		};
+	}
+	
+	private int getSchedulingWeight(MigrationJob job) {
+		return valueOrDefault(getEffectiveConfig(job).getSchedulingWeight(), 1);
+	}
+	
+	private void discoverAndMigrateDevices(MigrationJob job) {
+		MigrationJobConfig config = job.getConfig();
+		boolean largestFirst = DeviceSchedulingMode.LARGEST_FIRST.equals(config.getSchedulingMode());
+		boolean mapByFragment = DeviceMappingMode.FRAGMENT.equals(DeviceMappingService.getMappingMode(config));
+		
 		try {
-			String targetDeviceId = getTargetDeviceForSource(sourceDeviceId, job).getId().getValue();
-
-			if (job.getConfig().getSignalType().equals(SignalType.MEASUREMENT)) {
-				
-				//targetDeviceId= "2114265";
-				measurementMigrationService.migrateMeasurements(sourceDeviceId, targetDeviceId, 
-						job.getConfig().getSignalQueryParams(),
-						job.getSourcePlatform(),
-						job.getTargetPlatform(),
-						(DeviceSignalMigrationReport report) -> {
-							handleDeviceReport(report, job);
-						});
+			loadJobTables(job, largestFirst);
+			jobStateAggregator.publishUpdate(job, j -> j.setNumUnmappedDevices(0));
+			
+			// the devices of the job's partition, all devices if the job is not a partition job
+			AtomicLong numJobDevices = new AtomicLong();
+			AtomicLong numDevicesToMigrate = new AtomicLong();
+			// DeviceMappingMode.FRAGMENT: the target devices of the values looked up so far, or of the whole target inventory
+			AtomicReference<DeviceMappingService.TargetIndex> targetIndex = new AtomicReference<>();
+			// built once, not for every page
+			DeviceMappingService.AdviceIndex adviceIndex = deviceMappingService.indexMappingAdvice(config);
+			
+			// each page is mapped to its target devices (and, for LARGEST_FIRST, counted) and handed to the workers
+			// before the next page is read
+			long numDevices = cumulocityService.processManagedObjectPages(job.getSourcePlatform(), 
+					config.getSourceDevicesQuery(), deviceDiscoveryPageSize, apiRequestRetry, job.getSourceRequestLimiter(), (page) -> {
 				
-			} else if (job.getConfig().getSignalType().equals(SignalType.EVENT)) {				
+				ArrayList<String> sourceDeviceIds = new ArrayList<>();
+				// DeviceMappingMode.FRAGMENT: source device id -> value to match in the target inventory
+				Map<String, String> sourceMatchValues = new HashMap<>();
+				for (ManagedObjectRepresentation sourceDevice : page) {
+					String sourceDeviceId = sourceDevice.getId().getValue();
+					if (!config.isInPartition(sourceDeviceId)) {
+						continue;
+					}
+					numJobDevices.incrementAndGet();
+					// migrate only if not already processed (e.g. if this is a resumed partial job)
+					if (!job.isDeviceProcessed(sourceDeviceId)) {
+						sourceDeviceIds.add(sourceDeviceId);
+						if (mapByFragment) {
+							String value = DeviceMappingService.getMatchValue(sourceDevice, config.getSourceMappingPath());
+							if (value != null) {
+								sourceMatchValues.put(sourceDeviceId, value);
+							}
+						}
+					}
+				}
+				job.setNumDiscoveredDevices((int) numJobDevices.get());
+				numDevicesToMigrate.addAndGet(sourceDeviceIds.size());
+				if (sourceDeviceIds.isEmpty() || shuttingDown || job.isDetached()) {
+					return;
+				}
 				
-				eventMigrationService.migrateEvents(sourceDeviceId, targetDeviceId, job.getConfig().getSignalQueryParams(),
-						job.getSourcePlatform(),
-						job.getTargetPlatform(),
-						(DeviceSignalMigrationReport report) -> {
-							handleDeviceReport(report, job);
-						});
+				try {
+					Map<String, String> targetDeviceIds = mapTargetDevices(sourceDeviceIds, sourceMatchValues, targetIndex, 
+							adviceIndex, job);
+					sourceDeviceIds.removeIf(id -> !targetDeviceIds.containsKey(id));
+					Map<String, Long> signalCounts = largestFirst ? getSignalCounts(sourceDeviceIds, job) : null;
+					for (String sourceDeviceId : sourceDeviceIds) {
+						// devices without a count (count query failed) go first, they may be heavy
+						Long priority = largestFirst ? signalCounts.getOrDefault(sourceDeviceId, Long.MAX_VALUE) : null;
+						submitDeviceMigration(sourceDeviceId, targetDeviceIds.get(sourceDeviceId), priority, job);
+					}
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new IllegalStateException("interrupted", e);
+				} catch (Exception e) {
+					throw new IllegalStateException(e.getMessage(), e);
+				}
+			});
 			
-			} else if (job.getConfig().getSignalType().equals(SignalType.ALARM)) {
+			log.info("{} source devices found, {} of them in the job, {} to migrate, job {}", numDevices, numJobDevices.get(), 
+					numDevicesToMigrate.get(), job.toString());
+			handleDevicesDiscovered((int) numJobDevices.get(), job);
 			
-				alarmMigrationService.migrateAlarms(sourceDeviceId, targetDeviceId,job.getConfig().getSignalQueryParams(),
-						job.getSourcePlatform(),
-						job.getTargetPlatform(),
-						(DeviceSignalMigrationReport report) -> {
-							handleDeviceReport(report, job);
-						});
-				
+		} catch (Exception e) {
+			if (shuttingDown) {
+				// not an error of the job, the discovery is repeated when the job is resumed
+				log.info("Shutting down, device discovery stopped, job {}", job);
+				return;
+			}
+			log.error("Error discovering source devices, job " + job.toString(), e);
+			handleDiscoveryError(e, job);
+		}
+	}
+	
+	/**
+	 * Loads the job's tables kept outside of the job managed object (JobTableStore) into the job, unless this 
+	 * instance has them already (job resumed without being reloaded). A table that can not be read is rebuilt: 
+	 * the devices are looked up (and counted) again.
+	 */
+	private void loadJobTables(MigrationJob job, boolean largestFirst) {
+		try {
+			if (job.getNumTargetDeviceIds() == 0) {
+				DeviceIdMap targetDeviceIds = new DeviceIdMap();
+				jobTableStore.forEachEntry(job.getC8yId(), JobTableStore.TARGET_DEVICE_IDS, targetDeviceIds::put);
+				jobStateAggregator.publishUpdate(job, j -> j.putTargetDeviceIds(targetDeviceIds));
+			}
+			if (largestFirst && job.getDeviceSignalCounts().isEmpty()) {
+				Map<String, Long> counts = new HashMap<>();
+				jobTableStore.forEachEntry(job.getC8yId(), JobTableStore.SIGNAL_COUNTS, (id, count) -> counts.put(id, Long.valueOf(count)));
+				jobStateAggregator.publishUpdate(job, j -> j.getDeviceSignalCounts().putAll(counts));
+			}
+		} catch (Exception e) {
+			log.warn("Job {}: stored mappings or signal counts not read: {}", job.getC8yId(), e.getMessage());
+		}
+	}
+	
+	/**
+	 * Mapping phase of a page of source devices: finds the target devices not yet in the job's mapping table 
+	 * (see DeviceMappingService) and stores them (JobTableStore.TARGET_DEVICE_IDS); the devices without a target
+	 * device are reported as failed right away.
+	 * 
+	 * @param targetIndex DeviceMappingMode.FRAGMENT: the job's index of the target devices, extended for each page
+	 * @param adviceIndex the job's mapping advice, indexed when the discovery started
+	 * @return source device id -> target device id of the devices that can be migrated
+	 */
+	private Map<String, String> mapTargetDevices(List<String> sourceDeviceIds, Map<String, String> sourceMatchValues, 
+			AtomicReference<DeviceMappingService.TargetIndex> targetIndex, DeviceMappingService.AdviceIndex adviceIndex, 
+			MigrationJob job) throws Exception {
+		Map<String, String> targetDeviceIds = new HashMap<>();
+		List<String> unmapped = new ArrayList<>();
+		for (String sourceDeviceId : sourceDeviceIds) {
+			String targetDeviceId = job.getTargetDeviceId(sourceDeviceId);
+			if (targetDeviceId != null) {
+				targetDeviceIds.put(sourceDeviceId, targetDeviceId);
 			} else {
-				throw new UnsupportedOperationException();
+				unmapped.add(sourceDeviceId);
 			}
+		}
+		if (unmapped.isEmpty()) {
+			return targetDeviceIds;
+		}
+		
+		if (DeviceMappingMode.FRAGMENT.equals(DeviceMappingService.getMappingMode(job.getConfig()))) {
+			List<String> values = unmapped.stream().map(sourceMatchValues::get).filter(Objects::nonNull).collect(Collectors.toList());
+			targetIndex.set(deviceMappingService.indexTargetDevices(targetIndex.get(), values, job));
+		}
+		log.info("Looking up the target devices of {} source devices ({} known), job {}", unmapped.size(), targetDeviceIds.size(), job);
+		DeviceMappingService.MappingResult result = deviceMappingService.mapDevices(unmapped, sourceMatchValues, targetIndex.get(), 
+				adviceIndex, job, () -> shuttingDown || job.isDetached());
+		result.getTargetDeviceIds().forEach(targetDeviceIds::put);
+		jobStateAggregator.publishUpdate(job, j -> {
+			j.putTargetDeviceIds(result.getTargetDeviceIds());
+			j.setNumUnmappedDevices(j.getNumUnmappedDevices() + result.getErrors().size());
+		});
+		try {
+			jobTableStore.append(job.getC8yId(), JobTableStore.TARGET_DEVICE_IDS, result.getTargetDeviceIds().toMap());
 		} catch (Exception e) {
-			log.error("error", e);
+			// the devices are looked up again when the job is resumed
+			log.warn("Job {}: target device ids not stored: {}", job.getC8yId(), e.getMessage());
+		}
+		result.getErrors().forEach((sourceDeviceId, error) -> {
 			handleDeviceReport(DeviceSignalMigrationReport.builder()
 					.sourceDeviceId(sourceDeviceId)
-					.error(e.getMessage())
+					.error(error)
 					.build(), job);
-		}		
+		});
+		return targetDeviceIds;
 	}
-
-	private synchronized void handleDeviceReport(DeviceSignalMigrationReport report, MigrationJob job) {
-		try {
-			job.addDeviceReport(report);
-			job.updateStatus();
-			saveJob(job);
-		} catch (Exception e) {
-			//must swallow ex, otherwise messes up caller logic - will submit an additional error report
-			log.error("Error hanndling report", e);
+	
+	/**
+	 * @param priority LARGEST_FIRST: the device's signal count, null to queue the device in discovery order
+	 */
+	private void submitDeviceMigration(String sourceDeviceId, String targetDeviceId, Long priority, MigrationJob job) {
+		if (job.isDetached()) {
+			return; // the job is run by another instance now
+		}
+		if (shuttingDown) {
+			return; // migrated when the job is resumed
+		}
+		Runnable task = ()-> {
+			migrateDeviceSignals(sourceDeviceId, targetDeviceId, job);			
+		};
+		if (priority != null) {
+			scheduler.submit(job.getC8yId(), task, priority);
+		} else {
+			scheduler.submit(job.getC8yId(), task);
 		}
 	}
 	
-	private ManagedObjectRepresentation getTargetDeviceForSource(String sourceDeviceId, MigrationJob job) throws Exception {
-		// TODO other mapping methods (e.g. c8yIdMappingAdvice)
-		ArrayList<ExternalIdMappingAdvice> externalIdMappingAdvice = job.getConfig().getExternalIdMappingAdvice();		
-		return getTargetDeviceForSourceByExtId(sourceDeviceId, externalIdMappingAdvice, job.getSourcePlatform(), job.getTargetPlatform());
+	private void handleDevicesDiscovered(int numDevices, MigrationJob job) {
+		jobStateAggregator.publishUpdate(job, j -> {
+			j.setNumTotalDevices(numDevices);
+			if (numDevices == 0) {
+				j.setStatus(OperationStatus.SUCCESSFUL);
+			}
+		});
 	}
 	
-	private ManagedObjectRepresentation getTargetDeviceForSourceByExtId(String sourceDeviceId, ArrayList<ExternalIdMappingAdvice> externalIdMappingAdvice, Platform sourcePlatform, Platform targetPlatform) throws Exception {
-		// match by external id
-		log.info("Looking for target device for source device with id {}", sourceDeviceId);
-		
-		List<ExternalIDRepresentation> externalIds = apiRequestRetry.executeCallable( ()-> {
-			ExternalIDCollection externalIdsColl = sourcePlatform.getIdentityApi().getExternalIdsOfGlobalId(GId.asGId(sourceDeviceId));			
-			return externalIdsColl.get(200).getExternalIds();			
+	private void handleDiscoveryError(Exception e, MigrationJob job) {
+		String error = "Error discovering source devices: " + e.getMessage();
+		jobStateAggregator.publishUpdate(job, j -> {
+			// devices already handed to the workers still complete; a retry rediscovers the rest
+			j.setError(error);
+			j.setStatus(OperationStatus.FAILED);
 		});
-//		ExternalIDCollection externalIdsColl = remoteC8yPlatform.getIdentityApi().getExternalIdsOfGlobalId(GId.asGId(sourceDeviceId));
-//		List<ExternalIDRepresentation> externalIds = externalIdsColl.get(200).getExternalIds();
-		
-		log.info("sourceDeviceId {}; Found external ids: {}", sourceDeviceId, externalIds.toString());
-		List<String> ignoredExtIdTypes = List.of("c8y_OpcuaDevice");
-		// filter
-		externalIds = externalIds.stream().filter( e-> {
-			return !ignoredExtIdTypes.contains(e.getType());
-			}).collect(Collectors.toList());
-		
-		if (externalIds.isEmpty()) {
-			throw new IllegalStateException("no suitable external ids of id " + sourceDeviceId);
-		} 
+	}
+	
+	/**
+	 * Longest-processing-time-first: the devices are queued by their signal count (see DeviceMigrationScheduler), 
+	 * so that a heavy device picked up last does not set the job duration; a heavy device discovered on a later 
+	 * page still starts before the light devices queued from earlier pages. Counts stored with the job 
+	 * (JobTableStore.SIGNAL_COUNTS, resumed or retried jobs) are reused.
+	 * 
+	 * @return source device id -> signal count; devices whose count query failed are missing
+	 */
+	private Map<String, Long> getSignalCounts(List<String> sourceDeviceIds, MigrationJob job) throws InterruptedException {
+		MigrationJobConfig config = job.getConfig();
+		Map<String, Long> counts;
+		synchronized (job) {
+			counts = new HashMap<>(job.getDeviceSignalCounts());
+		}
 		
-		ManagedObjectRepresentation targetDevice = null;
-		String targetExtId = "";
-		for (ExternalIDRepresentation extId : externalIds) {
+		List<String> uncounted = sourceDeviceIds.stream()
+				.filter(id -> !counts.containsKey(id) && !job.isDeviceProcessed(id))
+				.collect(Collectors.toList());
+		if (!uncounted.isEmpty()) {
+			log.info("Counting signals of {} source devices, job {}", uncounted.size(), job);
+			// a device's count is the sum over the job's signal types; a device missing any count stays uncounted
+			Map<String, Long> uncountedTotals = null;
+			for (SignalType signalType : config.getSignalTypesToMigrate()) {
+				Map<String, Long> typeCounts = signalMetricCollectionService.collectDeviceSignalCounts(uncounted, signalType,
+						job.getSourcePlatform(), job.getSourceRequestLimiter(),
+						DateUtil.parser.withZoneUTC().parseDateTime(config.getDateFrom()),
+						DateUtil.parser.withZoneUTC().parseDateTime(config.getDateTo()));
+				if (uncountedTotals == null) {
+					uncountedTotals = new HashMap<>(typeCounts);
+				} else {
+					uncountedTotals.keySet().retainAll(typeCounts.keySet());
+					uncountedTotals.replaceAll((id, count) -> count + typeCounts.get(id));
+				}
+			}
+			counts.putAll(uncountedTotals);
+			Map<String, Long> newCounts = uncountedTotals;
+			jobStateAggregator.publishUpdate(job, j -> j.getDeviceSignalCounts().putAll(newCounts));
 			try {
-				String sourceExtId = extId.getExternalId();
+				Map<String, String> storedCounts = new HashMap<>();
+				newCounts.forEach((id, count) -> storedCounts.put(id, count.toString()));
+				jobTableStore.append(job.getC8yId(), JobTableStore.SIGNAL_COUNTS, storedCounts);
+			} catch (Exception e) {
+				// the devices are counted again when the job is resumed
+				log.warn("Job {}: signal counts not stored: {}", job.getC8yId(), e.getMessage());
+			}
+		}
+		return counts;
+	}
+	
+	private void migrateDeviceSignals(String sourceDeviceId, String targetDeviceId, MigrationJob job) {
+		log.info(String.format("Will now migrate device signals, src device id: %s, job: %s", sourceDeviceId, job));
+		try {
+			Map<SignalType, List<Interval>> windowsPerSignalType = new EnumMap<>(SignalType.class);
+			for (SignalType signalType : job.getConfig().getSignalTypesToMigrate()) {
+				windowsPerSignalType.put(signalType, planWindows(sourceDeviceId, signalType, job));
+			}
+			
+			// the device is reported to the job once every window of every signal type has reported
+			Map<SignalType, Integer> numPartsPerSignalType = new EnumMap<>(SignalType.class);
+			windowsPerSignalType.forEach((signalType, windows) -> numPartsPerSignalType.put(signalType, windows.size()));
+			DeviceMigrationTracker tracker = new DeviceMigrationTracker(sourceDeviceId, targetDeviceId, numPartsPerSignalType,
+					(DeviceSignalMigrationReport report) -> {
+						handleDeviceReport(report, job);
+					});
+			
+			ArrayList<SignalMigrationTask> tasks = new ArrayList<>();
+			windowsPerSignalType.forEach((signalType, windows) -> {
+				for (Interval window : windows) {
+					String windowFrom = DateUtil.formatUTC.print(window.getStart());
+					String cursorKey = MigrationJob.signalCursorKey(sourceDeviceId, signalType, windowFrom);
+					tasks.add(SignalMigrationTask.builder()
+							.sourceDeviceId(sourceDeviceId)
+							.targetDeviceId(targetDeviceId)
+							.signalType(signalType)
+							.dateFrom(windowFrom)
+							.dateTo(DateUtil.formatUTC.print(window.getEnd()))
+							.resumeFrom(getResumeFrom(job.getSignalCursor(cursorKey), window))
+							.cursorHandler(cursor -> handleSignalCursor(cursorKey, cursor, job))
+							.sourcePlatform(job.getSourcePlatform())
+							.targetPlatform(job.getTargetPlatform())
+							.sourceLimiter(job.getSourceRequestLimiter())
+							.targetLimiter(job.getTargetRequestLimiter())
+							.batchSize(() -> getMeasurementBatchSize(job))
+							.dedupMode(job.getConfig().getDedupMode())
+							// a detached job (lease lost) stops at the batch boundary like a paused one, its rest is
+							// migrated by the new owner from the saved cursor
+							.pauseRequested(() -> shuttingDown || job.isPausedNow() || job.isDetached())
+							.pauseHandler(rest -> {
+								if (!job.isDetached()) {
+									scheduler.submitFirst(job.getC8yId(), () -> migrateSignals(rest));
+								}
+							})
+							.reportHandler(tracker::handlePartReport)
+							.build());
+				}
+			});
+			
+			// the other parts (signal types, windows) go to separate workers (ahead of the job's other devices), 
+			// so the signal types of a device run concurrently; the first part is migrated by this worker
+			for (int i = tasks.size() - 1; i > 0; i--) {
+				SignalMigrationTask task = tasks.get(i);
+				scheduler.submitFirst(job.getC8yId(), ()-> {
+					migrateSignals(task);
+				});
+			}
+			migrateSignals(tasks.get(0));
+			
+		} catch (Exception e) {
+			log.error("error", e);
+			handleDeviceReport(DeviceSignalMigrationReport.builder()
+					.sourceDeviceId(sourceDeviceId)
+					.error(e.getMessage())
+					.build(), job);
+		}		
+	}
+	
+	/**
+	 * @return the cursor, limited to the window (a cursor from a run with other window ends may lie beyond it), 
+	 * or null if there is none
+	 */
+	private String getResumeFrom(String cursor, Interval window) {
+		if (cursor == null) {
+			return null;
+		}
+		DateTime cursorTime = DateUtil.parser.withZoneUTC().parseDateTime(cursor);
+		if (cursorTime.isAfter(window.getEnd())) {
+			return DateUtil.formatUTC.print(window.getEnd());
+		}
+		return cursor;
+	}
+	
+	private List<Interval> planWindows(String sourceDeviceId, SignalType signalType, MigrationJob job) {
+		try {
+			return signalWindowPlanner.planWindows(job.getConfig(), signalType, sourceDeviceId, job.getSourcePlatform(),
+					job.getSourceRequestLimiter());
+		} catch (Exception e) {
+			log.warn("Unable to split range into windows, migrating whole range; source device " + sourceDeviceId, e);
+			MigrationJobConfig config = job.getConfig();
+			return List.of(new Interval(DateUtil.parser.withZoneUTC().parseDateTime(config.getDateFrom()),
+					DateUtil.parser.withZoneUTC().parseDateTime(config.getDateTo())));
+		}
+	}
+	
+	private void migrateSignals(SignalMigrationTask task) {
+		try {
+			if (task.getSignalType().equals(SignalType.MEASUREMENT)) {
 				
-				// see if there's explicit mapping advice
+				measurementMigrationService.migrateMeasurements(task);
 				
-				ExternalIdMappingAdvice mappingAdvice = null;
-				if (externalIdMappingAdvice != null) {
-					mappingAdvice = externalIdMappingAdvice.stream().filter( adv -> adv.getSourceExternalId().equals(sourceExtId)).findFirst().orElse(null);
-				}
-				if (mappingAdvice != null) {
-					targetExtId = mappingAdvice.getTargetExternalId(); // use mapping advice
-					log.info("mapping advice present source ext id: {} target ext id: {}", sourceExtId, targetExtId);
-				} else {
-					targetExtId = sourceExtId; // use source id
-				}
+			} else if (task.getSignalType().equals(SignalType.EVENT)) {				
+				
+				eventMigrationService.migrateEvents(task);
+			
+			} else if (task.getSignalType().equals(SignalType.ALARM)) {
+			
+				alarmMigrationService.migrateAlarms(task);
 				
-				// find target device
-				targetDevice = getDeviceForExternalId(extId.getType(), targetExtId, targetPlatform);
-				log.info("sourceDeviceId {}; Found matching target device; ext id: {}:{}, target device id: {}, ext id: {}:{}", sourceDeviceId, extId.getType(), sourceExtId, 
-						targetDevice.getId().getValue(), extId.getType(), targetExtId);
-				break;
-			} catch (IOException e) {
-				log.info("Unable to find by extId " + extId.getType() + " : " + targetExtId);
+			} else {
+				throw new UnsupportedOperationException();
 			}
+		} catch (Exception e) {
+			log.error("error", e);
+			task.getReportHandler().accept(task.reportBuilder()
+					.error(e.getMessage())
+					.build());
 		}
-		
-		if (targetDevice == null) {
-			throw new IOException("unable to find target device for source device id: "  + sourceDeviceId);
-		}
-		
-		return targetDevice;
 	}
 
-	private ManagedObjectRepresentation getDeviceForExternalId(String type, String value, Platform platform) throws IOException {
+	/**
+	 * Hands the report to the job's aggregator and returns; the job is updated and saved in the background
+	 */
+	private void handleDeviceReport(DeviceSignalMigrationReport report, MigrationJob job) {
 		try {
-			ID extId = new ID(type, value);
-			ExternalIDRepresentation targetExternalIdRep = platform.getIdentityApi().getExternalId(extId);
-			return targetExternalIdRep.getManagedObject();
+			jobStateAggregator.publishReport(job, report);
 		} catch (Exception e) {
-			throw new IOException("unable to find external id", e);
+			//must swallow ex, otherwise messes up caller logic - will submit an additional error report
+			log.error("Error hanndling report", e);
 		}
 	}
-
+	
+	/**
+	 * Cursors are recorded after every committed batch and saved with the job in the background
+	 */
+	private void handleSignalCursor(String key, String cursor, MigrationJob job) {
+		jobStateAggregator.publishCursor(job, key, cursor);
+	}
+	
 //	private void getPublicIp() throws IOException {
 //		// TODO Auto-generated method stub
 //		
@@ -0,0 +1,193 @@
+package com.softwareag.signalmigration.service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.LongSupplier;
+
+import com.softwareag.signalmigration.model.PartitionLease;
+
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Claims, renews and releases the partition leases of distributed jobs for one instance.
+ *
+ * A lease held by another instance is taken over once it has not been renewed (its version has not changed)
+ * for leaseDurationMillis, measured on this instance's clock: instances do not need synchronized clocks.
+ * An instance that starts late therefore waits one lease duration before taking over any lease.
+ *
+ * Not thread-safe, call from one thread.
+ */
+@Slf4j
+public class PartitionLeaseCoordinator {
+
+	private final PartitionLeaseStore store;
+	private final String owner;
+	private final long leaseDurationMillis;
+	private final LongSupplier clock;
+
+	/**
+	 * partitionJobId -> version of the lease last seen and when it was first seen
+	 */
+	private final Map<String, ObservedLease> observedLeases = new HashMap<>();
+
+	/**
+	 * jobId -> partitionJobIds of the leases this instance holds
+	 */
+	private final Map<String, Set<String>> heldLeases = new HashMap<>();
+
+	private static class ObservedLease {
+		final long version;
+		final long since;
+
+		ObservedLease(long version, long since) {
+			this.version = version;
+			this.since = since;
+		}
+	}
+
+	@Data
+	public static class LeaseRound {
+		private List<PartitionLease> leases = new ArrayList<>();
+		/**
+		 * leases held after the round (renewed and claimed)
+		 */
+		private List<PartitionLease> held = new ArrayList<>();
+		private List<PartitionLease> claimed = new ArrayList<>();
+		/**
+		 * claimed leases that had expired with another owner, which may still be migrating until it finds out
+		 */
+		private List<PartitionLease> takenOver = new ArrayList<>();
+		/**
+		 * leases this instance held, now taken by another instance
+		 */
+		private List<PartitionLease> lost = new ArrayList<>();
+
+		public boolean isAllDone() {
+			return !leases.isEmpty() && leases.stream().allMatch(PartitionLease::isDone);
+		}
+	}
+
+	public PartitionLeaseCoordinator(PartitionLeaseStore store, String owner, long leaseDurationMillis, LongSupplier clock) {
+		this.store = store;
+		this.owner = owner;
+		this.leaseDurationMillis = leaseDurationMillis;
+		this.clock = clock;
+	}
+
+	public String getOwner() {
+		return owner;
+	}
+
+	/**
+	 * Renew the leases held on the job's partitions and claim free or expired ones, up to maxHeld
+	 */
+	public LeaseRound renewAndClaim(String jobId, int maxHeld) {
+		long now = clock.getAsLong();
+		LeaseRound round = new LeaseRound();
+		List<PartitionLease> leases = store.getLeases(jobId);
+		Set<String> held = heldLeases.computeIfAbsent(jobId, id -> new HashSet<>());
+
+		List<PartitionLease> claimable = new ArrayList<>();
+		for (PartitionLease lease : leases) {
+			observe(lease, now);
+			if (owner.equals(lease.getOwner()) && !lease.isDone()) {
+				PartitionLease renewed = update(lease, now).build();
+				if (store.compareAndSet(lease, renewed)) {
+					observe(renewed, now);
+					round.held.add(renewed);
+					if (!held.contains(lease.getPartitionJobId())) {
+						round.claimed.add(renewed); // e.g. held before a restart with the same instance id
+					}
+					round.leases.add(renewed);
+					continue;
+				}
+				// changed since we read it
+				held.remove(lease.getPartitionJobId());
+				round.lost.add(lease);
+			} else if (held.remove(lease.getPartitionJobId())) {
+				round.lost.add(lease);
+			} else if (isClaimable(lease, now)) {
+				claimable.add(lease);
+			}
+			round.leases.add(lease);
+		}
+
+		// instances start at different partitions, so that they do not all compete for the same lease
+		int offset = claimable.isEmpty() ? 0 : Math.floorMod(owner.hashCode(), claimable.size());
+		for (int i = 0; i < claimable.size() && round.held.size() < maxHeld; i++) {
+			PartitionLease lease = claimable.get((offset + i) % claimable.size());
+			PartitionLease claimed = update(lease, now).owner(owner).build();
+			if (store.compareAndSet(lease, claimed)) {
+				log.info("{} claimed partition {} of job {} (previous owner {})", owner, lease.getPartition(), jobId, lease.getOwner());
+				observe(claimed, now);
+				round.held.add(claimed);
+				round.claimed.add(claimed);
+				if (lease.getOwner() != null) {
+					round.takenOver.add(claimed);
+				}
+				round.leases.set(round.leases.indexOf(lease), claimed);
+			}
+		}
+
+		round.held.forEach(lease -> held.add(lease.getPartitionJobId()));
+		round.lost.forEach(lease -> log.warn("{} lost partition {} of job {} to {}", owner, lease.getPartition(), jobId, lease.getOwner()));
+		return round;
+	}
+
+	/**
+	 * Give up a held lease
+	 *
+	 * @param done the partition job has completed
+	 * @param failed the partition job has completed with errors
+	 */
+	public boolean release(PartitionLease lease, boolean done, boolean failed) {
+		heldLeases.getOrDefault(lease.getJobId(), new HashSet<>()).remove(lease.getPartitionJobId());
+		PartitionLease released = update(lease, clock.getAsLong()).owner(null).expiresAt(0).done(done).failed(failed).build();
+		return store.compareAndSet(lease, released);
+	}
+
+	/**
+	 * Make a completed partition claimable again, e.g. to retry it
+	 */
+	public boolean reopen(PartitionLease lease) {
+		PartitionLease reopened = update(lease, clock.getAsLong()).owner(null).expiresAt(0).done(false).failed(false).build();
+		return store.compareAndSet(lease, reopened);
+	}
+
+	/**
+	 * Forget the job, e.g. when it has completed
+	 */
+	public void removeJob(String jobId, List<PartitionLease> leases) {
+		heldLeases.remove(jobId);
+		leases.forEach(lease -> observedLeases.remove(lease.getPartitionJobId()));
+	}
+
+	private PartitionLease.PartitionLeaseBuilder update(PartitionLease lease, long now) {
+		return lease.toBuilder()
+				.version(lease.getVersion() + 1)
+				.expiresAt(now + leaseDurationMillis);
+	}
+
+	private boolean isClaimable(PartitionLease lease, long now) {
+		if (lease.isDone()) {
+			return false;
+		}
+		if (lease.getOwner() == null) {
+			return true;
+		}
+		ObservedLease observed = observedLeases.get(lease.getPartitionJobId());
+		return now - observed.since >= leaseDurationMillis;
+	}
+
+	private void observe(PartitionLease lease, long now) {
+		ObservedLease observed = observedLeases.get(lease.getPartitionJobId());
+		if (observed == null || observed.version != lease.getVersion()) {
+			observedLeases.put(lease.getPartitionJobId(), new ObservedLease(lease.getVersion(), now));
+		}
+	}
+}
@@ -0,0 +1,25 @@
+package com.softwareag.signalmigration.service;
+
+import java.util.List;
+
+import com.softwareag.signalmigration.model.PartitionLease;
+
+/**
+ * Storage of the partition leases of distributed jobs
+ */
+public interface PartitionLeaseStore {
+
+	/**
+	 * @return the leases of all partitions of the job, ordered by partition
+	 */
+	List<PartitionLease> getLeases(String jobId);
+
+	/**
+	 * Replace the lease if it is still at the expected version
+	 *
+	 * @param expected as read, identifies the partition by its partitionJobId
+	 * @param update the new lease, with a higher version
+	 * @return true if the update was written and not overwritten by another instance
+	 */
+	boolean compareAndSet(PartitionLease expected, PartitionLease update);
+}
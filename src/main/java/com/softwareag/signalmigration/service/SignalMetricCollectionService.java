@@ -1,16 +1,28 @@
 package com.softwareag.signalmigration.service;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.LongSummaryStatistics;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.stream.Collectors;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
 import org.joda.time.DateTime;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import com.cumulocity.rest.representation.inventory.ManagedObjectRepresentation;
@@ -24,6 +36,8 @@ import com.softwareag.signalmigration.util.AlarmUtil;
 import com.softwareag.signalmigration.util.CustomInventoryFilter;
 import com.softwareag.signalmigration.util.EventUtil;
 import com.softwareag.signalmigration.util.MeasurementUtil;
+import com.softwareag.signalmigration.util.RequestLimiter;
+import com.softwareag.signalmigration.util.RequestLimiter.RequestClass;
 
 import lombok.extern.slf4j.Slf4j;
 
@@ -31,6 +45,29 @@ import lombok.extern.slf4j.Slf4j;
 @Component
 public class SignalMetricCollectionService {
 	
+	/**
+	 * max count queries of collectDeviceSignalCounts running at the same time, shared by all jobs
+	 */
+	@Value("${SignalMetricCollectionService.countParallelism:20}")
+	private int countParallelism;
+	
+	@Value("${SignalMetricCollectionService.countTimeoutMinutes:30}")
+	private int countTimeoutMinutes;
+	
+	private ExecutorService countExecutor;
+	
+	@PostConstruct
+	private void init() {
+		countExecutor = Executors.newFixedThreadPool(countParallelism);
+	}
+	
+	/**
+	 * Counts not started yet are cancelled, running ones interrupted
+	 */
+	@PreDestroy
+	public void stop() {
+		countExecutor.shutdownNow().forEach(task -> ((Future<?>) task).cancel(false));
+	}
 
 	public GroupSignalMetrics collectSignalMetrics(String sourceDevicesQuery,
 			Platform sourceC8yPlatform, DateTime dateFrom, DateTime dateTo) throws InterruptedException {
@@ -108,6 +145,69 @@ public class SignalMetricCollectionService {
 		return metricsList;
 	}
 	
+	/**
+	 * Count the signals of one type for each device, using the count query (withTotalPages, pageSize 1), on the
+	 * shared count workers and through the job's source limiter. Counts still pending after countTimeoutMinutes
+	 * (or when the calling thread is interrupted) are cancelled.
+	 * 
+	 * @param sourceLimiter the job's source RequestLimiter
+	 * @return source device id -> signal count; devices whose count query failed or was cancelled are missing
+	 * @throws InterruptedException
+	 */
+	public Map<String, Long> collectDeviceSignalCounts(Collection<String> deviceIds, SignalType signalType,
+			Platform sourceC8yPlatform, RequestLimiter sourceLimiter, DateTime dateFrom, DateTime dateTo) throws InterruptedException {
+		
+		Map<String, Long> counts = new ConcurrentHashMap<>();
+		
+		List<Future<?>> countTasks = new ArrayList<>(deviceIds.size());
+		boolean timedOut = false;
+		try {
+			for (String deviceId : deviceIds) {
+				countTasks.add(countExecutor.submit( ()-> {
+					try {
+						DeviceSignalMetrics metrics = sourceLimiter.call(RequestClass.COUNT, 
+								() -> getDeviceSignalMetrics(signalType, deviceId, sourceC8yPlatform, dateFrom, dateTo));
+						counts.put(deviceId, metrics.getCount());
+					} catch (Exception e) {
+						log.error("Error counting signals of device " + deviceId, e);
+					}
+				}));
+			}
+			
+			long deadline = System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(countTimeoutMinutes);
+			for (Future<?> countTask : countTasks) {
+				try {
+					countTask.get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+				} catch (TimeoutException e) {
+					timedOut = true;
+					break;
+				} catch (ExecutionException | CancellationException e) {
+					// the device is left out
+				}
+			}
+		} finally {
+			countTasks.forEach(countTask -> countTask.cancel(true));
+		}
+		log.info("Collected {} signal counts of {} devices, timed out: {}", signalType, counts.size(), timedOut);
+		
+		// a cancelled count may still complete
+		return new HashMap<>(counts);
+	}
+	
+	public DeviceSignalMetrics getDeviceSignalMetrics(SignalType signalType, String deviceId, Platform sourceC8yPlatform, 
+			DateTime dateFrom, DateTime dateTo) {
+		switch (signalType) {
+		case MEASUREMENT:
+			return MeasurementUtil.getMetrics(deviceId, sourceC8yPlatform.getMeasurementApi(), dateFrom, dateTo);
+		case EVENT:
+			return EventUtil.getMetrics(deviceId, sourceC8yPlatform.getEventApi(), dateFrom, dateTo);
+		case ALARM:
+			return AlarmUtil.getMetrics(deviceId, sourceC8yPlatform.getAlarmApi(), dateFrom, dateTo);
+		default:
+			throw new IllegalArgumentException("Unexpected value: " + signalType);
+		}
+	}
+	
 	private int compareMetrics(DeviceSignalMetrics o1, DeviceSignalMetrics o2) {
 					DateTime dt1 = o1.getDateFrom();
 			DateTime dt2 = o2.getDateFrom();
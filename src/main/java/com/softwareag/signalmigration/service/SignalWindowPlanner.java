@@ -0,0 +1,179 @@
+package com.softwareag.signalmigration.service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.joda.time.DateTime;
+import org.joda.time.Duration;
+import org.joda.time.Interval;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.cumulocity.sdk.client.Platform;
+import com.softwareag.signalmigration.model.DeviceSignalMetrics;
+import com.softwareag.signalmigration.model.MigrationJobConfig;
+import com.softwareag.signalmigration.model.SignalType;
+import com.softwareag.signalmigration.model.WindowSplitMode;
+import com.softwareag.signalmigration.util.DateUtil;
+import com.softwareag.signalmigration.util.RequestLimiter;
+import com.softwareag.signalmigration.util.RequestLimiter.RequestClass;
+
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Splits a device's dateFrom..dateTo range into sub-windows (see WindowSplitMode).
+ *
+ * Windows are half-open [from, to) and adjacent, matching the API semantics of dateFrom (inclusive)
+ * and dateTo (exclusive), so every signal belongs to exactly one window.
+ */
+@Component
+@Slf4j
+public class SignalWindowPlanner {
+
+	private static final long MIN_WINDOW_MILLIS = Duration.standardMinutes(1).getMillis();
+
+	@Autowired
+	private SignalMetricCollectionService signalMetricCollectionService;
+
+	/**
+	 * upper bound on sub-windows per device (and signal type); each window costs a few extra requests
+	 */
+	@Value("${SignalWindowPlanner.maxWindowsPerDevice:200}")
+	private int maxWindowsPerDevice;
+
+	@AllArgsConstructor
+	private static class CountedWindow {
+		DateTime from;
+		DateTime to;
+		long count;
+	}
+
+	/**
+	 * @param sourceLimiter the job's source RequestLimiter, for the count queries of WindowSplitMode.SIGNAL_COUNT
+	 */
+	public List<Interval> planWindows(MigrationJobConfig config, SignalType signalType, String sourceDeviceId, Platform sourcePlatform,
+			RequestLimiter sourceLimiter) {
+		DateTime from = DateUtil.parser.withZoneUTC().parseDateTime(config.getDateFrom());
+		DateTime to = DateUtil.parser.withZoneUTC().parseDateTime(config.getDateTo());
+
+		WindowSplitMode mode = config.getWindowSplitMode() == null ? WindowSplitMode.NONE : config.getWindowSplitMode();
+		if (signalType == SignalType.ALARM && mode != WindowSplitMode.NONE) {
+			// alarms of concurrent windows could merge into each other's ACTIVE alarms, see AlarmMigrationService
+			log.info("Source device {}, alarms are not split into windows, windowSplitMode {} is ignored for them", sourceDeviceId, mode);
+			mode = WindowSplitMode.NONE;
+		}
+
+		List<Interval> windows;
+		switch (mode) {
+		case FIXED_DURATION:
+			windows = planFixedDurationWindows(from, to, config.getWindowDurationHours());
+			break;
+		case SIGNAL_COUNT:
+			windows = planSignalCountWindows(from, to, config.getSignalsPerWindow(), signalType, sourceDeviceId, sourcePlatform,
+					sourceLimiter);
+			break;
+		default:
+			windows = List.of(new Interval(from, to));
+		}
+
+		if (windows.size() > 1) {
+			log.info("Source device {}, {} range split into {} windows", sourceDeviceId, signalType, windows.size());
+		}
+		return windows;
+	}
+
+	private List<Interval> planFixedDurationWindows(DateTime from, DateTime to, Integer windowDurationHours) {
+		if (windowDurationHours == null || windowDurationHours <= 0) {
+			throw new IllegalArgumentException("windowDurationHours must be > 0 for WindowSplitMode.FIXED_DURATION");
+		}
+		long rangeMillis = to.getMillis() - from.getMillis();
+		long stepMillis = Duration.standardHours(windowDurationHours).getMillis();
+		if (rangeMillis / stepMillis >= maxWindowsPerDevice) {
+			stepMillis = (rangeMillis + maxWindowsPerDevice - 1) / maxWindowsPerDevice;
+			log.warn("windowDurationHours {} gives more than {} windows, using windows of {} ms",
+					windowDurationHours, maxWindowsPerDevice, stepMillis);
+		}
+
+		List<Interval> windows = new ArrayList<>();
+		DateTime windowFrom = from;
+		while (windowFrom.isBefore(to)) {
+			DateTime windowTo = windowFrom.plus(stepMillis);
+			if (windowTo.isAfter(to)) {
+				windowTo = to;
+			}
+			windows.add(new Interval(windowFrom, windowTo));
+			windowFrom = windowTo;
+		}
+		if (windows.isEmpty()) {
+			windows.add(new Interval(from, to));
+		}
+		return windows;
+	}
+
+	/**
+	 * Bisect the range until each window holds at most signalsPerWindow signals (or gets too short),
+	 * then merge adjacent small windows. Each bisection costs one count query (withTotalPages, pageSize 1).
+	 */
+	private List<Interval> planSignalCountWindows(DateTime from, DateTime to, Long signalsPerWindow,
+			SignalType signalType, String sourceDeviceId, Platform sourcePlatform, RequestLimiter sourceLimiter) {
+		if (signalsPerWindow == null || signalsPerWindow <= 0) {
+			throw new IllegalArgumentException("signalsPerWindow must be > 0 for WindowSplitMode.SIGNAL_COUNT");
+		}
+
+		DeviceSignalMetrics total = getMetrics(signalType, sourceDeviceId, sourcePlatform, sourceLimiter, from, to);
+		if (total.getCount() <= signalsPerWindow) {
+			return List.of(new Interval(from, to));
+		}
+
+		// no need to bisect the empty head of the range
+		DateTime start = from;
+		if (total.getDateFrom() != null && total.getDateFrom().isAfter(from) && total.getDateFrom().isBefore(to)) {
+			start = total.getDateFrom();
+		}
+
+		ArrayList<CountedWindow> counted = new ArrayList<>();
+		bisect(start, to, total.getCount(), signalsPerWindow, signalType, sourceDeviceId, sourcePlatform, sourceLimiter, counted);
+
+		// merge adjacent windows while they fit
+		ArrayList<CountedWindow> merged = new ArrayList<>();
+		for (CountedWindow window : counted) {
+			CountedWindow last = merged.isEmpty() ? null : merged.get(merged.size() - 1);
+			if (last != null && last.count + window.count <= signalsPerWindow) {
+				last.to = window.to;
+				last.count += window.count;
+			} else {
+				merged.add(window);
+			}
+		}
+
+		List<Interval> windows = new ArrayList<>();
+		for (CountedWindow window : merged) {
+			windows.add(new Interval(window.from, window.to));
+		}
+		// the first window covers the (empty) head of the range as well
+		windows.set(0, new Interval(from, windows.get(0).getEnd()));
+		return windows;
+	}
+
+	private void bisect(DateTime from, DateTime to, long count, long signalsPerWindow,
+			SignalType signalType, String sourceDeviceId, Platform sourcePlatform, RequestLimiter sourceLimiter, List<CountedWindow> windows) {
+		long rangeMillis = to.getMillis() - from.getMillis();
+		if (count <= signalsPerWindow || rangeMillis <= MIN_WINDOW_MILLIS || windows.size() >= maxWindowsPerDevice) {
+			windows.add(new CountedWindow(from, to, count));
+			return;
+		}
+		DateTime mid = from.plus(rangeMillis / 2);
+		long leftCount = getMetrics(signalType, sourceDeviceId, sourcePlatform, sourceLimiter, from, mid).getCount();
+		bisect(from, mid, leftCount, signalsPerWindow, signalType, sourceDeviceId, sourcePlatform, sourceLimiter, windows);
+		bisect(mid, to, Math.max(0, count - leftCount), signalsPerWindow, signalType, sourceDeviceId, sourcePlatform, sourceLimiter,
+				windows);
+	}
+
+	private DeviceSignalMetrics getMetrics(SignalType signalType, String deviceId, Platform platform, RequestLimiter limiter,
+			DateTime from, DateTime to) {
+		return limiter.call(RequestClass.COUNT, () -> signalMetricCollectionService.getDeviceSignalMetrics(signalType, deviceId, platform,
+				from, to));
+	}
+}
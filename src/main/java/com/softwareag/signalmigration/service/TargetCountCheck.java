@@ -0,0 +1,97 @@
+package com.softwareag.signalmigration.service;
+
+import org.joda.time.DateTime;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.softwareag.signalmigration.model.SignalMigrationTask;
+import com.softwareag.signalmigration.util.DateUtil;
+import com.softwareag.signalmigration.util.RequestLimiter.RequestClass;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Counts the signals of a task on the source and the target (one count query each, withTotalPages and
+ * pageSize 1, see MeasurementUtil.getMetrics) before the target is read for dedup: an empty target
+ * needs no dedup, and a target with as many signals as the source needs no migration. On a first run,
+ * this saves reading the target range of every device.
+ */
+@Component
+@Slf4j
+public class TargetCountCheck {
+
+	public static class Counts {
+		public final long source;
+		public final long target;
+
+		Counts(long source, long target) {
+			this.source = source;
+			this.target = target;
+		}
+
+		public boolean isTargetEmpty() {
+			return target == 0;
+		}
+
+		/**
+		 * @return true if the target has as many signals in the range as the source (and the source has any)
+		 */
+		public boolean isTargetComplete() {
+			return source > 0 && target == source;
+		}
+	}
+
+	/**
+	 * the counts when the check is off or fails: the target is read for dedup
+	 */
+	private static final Counts UNKNOWN = new Counts(-1, -1);
+
+	/**
+	 * the counts of a dry run, which does not read the target, as if it were empty
+	 */
+	private static final Counts DRY_RUN = new Counts(-1, 0);
+
+	@Value("${TargetCountCheck.enabled:true}")
+	private boolean enabled;
+
+	@Autowired
+	private SignalMetricCollectionService signalMetricCollectionService;
+
+	@Autowired
+	private MeterRegistry registry;
+
+	/**
+	 * @return the counts of the task's range (from its cursor, if resumed); neither empty nor complete if
+	 * the check is off or a count query failed
+	 */
+	public Counts count(SignalMigrationTask task) {
+		if (task.isDryRun()) {
+			return DRY_RUN;
+		}
+		if (!enabled) {
+			return UNKNOWN;
+		}
+		DateTime from = DateUtil.parser.parseDateTime(task.getResumeFrom() != null ? task.getResumeFrom() : task.getDateFrom());
+		DateTime to = DateUtil.parser.parseDateTime(task.getDateTo());
+		try {
+			long target = task.getTargetLimiter().call(RequestClass.COUNT, () -> signalMetricCollectionService.getDeviceSignalMetrics(
+					task.getSignalType(), task.getTargetDeviceId(), task.getTargetPlatform(), from, to)).getCount();
+			long source = task.getSourceLimiter().call(RequestClass.COUNT, () -> signalMetricCollectionService.getDeviceSignalMetrics(
+					task.getSignalType(), task.getSourceDeviceId(), task.getSourcePlatform(), from, to)).getCount();
+			Counts counts = new Counts(source, target);
+			if (counts.isTargetEmpty()) {
+				registry.counter("TargetCountCheck.emptyTargets").increment();
+			} else if (counts.isTargetComplete()) {
+				registry.counter("TargetCountCheck.completeTargets").increment();
+			}
+			return counts;
+		} catch (Exception e) {
+			log.warn("SourceDeviceId {}, {} count check failed, reading the target for dedup: {}", task.getSourceDeviceId(),
+					task.getSignalType(), e.getMessage());
+			registry.counter("TargetCountCheck.errors").increment();
+			return UNKNOWN;
+		}
+	}
+}
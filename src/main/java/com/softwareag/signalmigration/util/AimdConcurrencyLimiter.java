@@ -0,0 +1,153 @@
+package com.softwareag.signalmigration.util;
+
+import java.util.List;
+import java.util.Arrays;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+import com.cumulocity.sdk.client.SDKException;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Limits the number of requests in flight to one platform, adapting the limit to the platform's
+ * response (AIMD, as in TCP congestion control):
+ * - every healthy response of a request made while the limit was in use adds 1/limit,
+ *   i.e. the limit grows by about 1 per round of requests
+ * - HTTP 429/503 or a latency spike (latency > latencyToleranceFactor * baseline latency) multiplies
+ *   the limit by backoffRatio; requests that started before the last decrease do not decrease it again,
+ *   so one overload episode seen by many concurrent requests counts once
+ *
+ * The baseline latency is a moving average of the healthy latencies, kept per RequestClass: one limiter serves
+ * count queries, pages of signals and bulk writes of all jobs on a platform, and a write is not a spike just
+ * because counts are fast. Spikes move the baseline too, at a smaller rate, so a sustained higher latency
+ * becomes the new baseline after some decreases instead of holding the limit at minLimit for good.
+ */
+@Slf4j
+public class AimdConcurrencyLimiter implements RequestLimiter {
+
+	private static final double BASELINE_ALPHA = 0.1;
+	private static final double SPIKE_BASELINE_ALPHA = 0.05;
+
+	private final String name;
+	private final int minLimit;
+	private final int maxLimit;
+	private final double backoffRatio;
+	private final double latencyToleranceFactor;
+	private final LongSupplier clock;
+
+	private final List<Runnable> limitListeners = new CopyOnWriteArrayList<>();
+
+	// guarded by this
+	private double limit;
+	private int inFlight = 0;
+	private final double[] baselineLatencyMillis = new double[RequestClass.values().length];
+	private long lastDecreaseTime = 0;
+
+	public AimdConcurrencyLimiter(String name, int initialLimit, int minLimit, int maxLimit, double backoffRatio,
+			double latencyToleranceFactor, LongSupplier clock) {
+		this.name = name;
+		this.minLimit = Math.max(1, minLimit);
+		this.maxLimit = Math.max(this.minLimit, maxLimit);
+		this.limit = Math.min(this.maxLimit, Math.max(this.minLimit, initialLimit));
+		this.backoffRatio = backoffRatio;
+		this.latencyToleranceFactor = latencyToleranceFactor;
+		this.clock = clock;
+		Arrays.fill(baselineLatencyMillis, -1);
+	}
+
+	/**
+	 * A limiter that never blocks and never adapts, for when adaptive concurrency is disabled
+	 */
+	public static AimdConcurrencyLimiter unlimited(String name) {
+		return new AimdConcurrencyLimiter(name, Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE, 1, Double.MAX_VALUE,
+				System::currentTimeMillis);
+	}
+
+	/**
+	 * Runs the request once fewer than limit requests are in flight
+	 */
+	@Override
+	public <T> T call(RequestClass requestClass, Supplier<T> request) {
+		long startTime = acquire();
+		boolean throttled = false;
+		try {
+			return request.get();
+		} catch (SDKException e) {
+			throttled = e.getHttpStatus() == 429 || e.getHttpStatus() == 503;
+			throw e;
+		} finally {
+			release(requestClass, startTime, clock.getAsLong() - startTime, throttled);
+		}
+	}
+
+	/**
+	 * @param listener called (outside of the limiter's lock) whenever the integer limit changes
+	 */
+	public void addLimitListener(Runnable listener) {
+		limitListeners.add(listener);
+	}
+
+	public synchronized int getLimit() {
+		return (int) limit;
+	}
+
+	public synchronized int getInFlight() {
+		return inFlight;
+	}
+
+	public synchronized double getBaselineLatencyMillis(RequestClass requestClass) {
+		return baselineLatencyMillis[requestClass.ordinal()];
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	private synchronized long acquire() {
+		while (inFlight >= (int) limit) {
+			try {
+				wait();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("Interrupted while waiting for " + name, e);
+			}
+		}
+		inFlight++;
+		return clock.getAsLong();
+	}
+
+	private void release(RequestClass requestClass, long startTime, long latencyMillis, boolean throttled) {
+		int oldLimit;
+		int newLimit;
+		synchronized (this) {
+			oldLimit = (int) limit;
+			boolean limitInUse = inFlight >= oldLimit - 1;
+			inFlight--;
+
+			int c = requestClass.ordinal();
+			double baseline = baselineLatencyMillis[c];
+			boolean latencySpike = baseline > 0 && latencyMillis > latencyToleranceFactor * baseline;
+			if (!throttled) {
+				double alpha = latencySpike ? SPIKE_BASELINE_ALPHA : BASELINE_ALPHA;
+				baselineLatencyMillis[c] = baseline < 0 ? latencyMillis : (1 - alpha) * baseline + alpha * latencyMillis;
+			}
+			if (throttled || latencySpike) {
+				if (startTime >= lastDecreaseTime) {
+					limit = Math.max(minLimit, limit * backoffRatio);
+					lastDecreaseTime = clock.getAsLong();
+					log.info("{}: {}, limit {} -> {}", name, throttled ? "throttled" : requestClass + " latency spike " + latencyMillis
+							+ " ms", oldLimit, (int) limit);
+				}
+			} else if (limitInUse) {
+				limit = Math.min(maxLimit, limit + 1 / limit);
+			}
+			newLimit = (int) limit;
+			notifyAll();
+		}
+		if (newLimit != oldLimit) {
+			limitListeners.forEach(Runnable::run);
+		}
+	}
+}
@@ -11,6 +11,7 @@ import com.cumulocity.rest.representation.PageStatisticsRepresentation;
 import com.cumulocity.rest.representation.alarm.AlarmRepresentation;
 import com.cumulocity.sdk.client.QueryParam;
 import com.cumulocity.sdk.client.alarm.AlarmApi;
+import com.cumulocity.sdk.client.alarm.AlarmCollection;
 import com.cumulocity.sdk.client.alarm.PagedAlarmCollectionRepresentation;
 import com.cumulocity.sdk.client.measurement.MeasurementApi;
 import com.softwareag.signalmigration.model.DeviceSignalMetrics;
@@ -24,7 +25,7 @@ public class AlarmUtil {
 		
 		
 		ArrayList<QueryParam> params = new ArrayList<QueryParam>(signalQueryParams);
-		params.add(CustomQueryParam.SOURCE.setValue(sourceDeviceId).toQueryParam());
+		params.add(CustomQueryParam.SOURCE.toQueryParam(sourceDeviceId));
 		
 		
 		Iterable<AlarmRepresentation> alarms = 
@@ -33,6 +34,22 @@ public class AlarmUtil {
 		return alarms;
 	}
 	
+	/**
+	 * same as getAlarms(...), with every page request going through the limiter
+	 */
+	public static Iterable<AlarmRepresentation> getAlarms(String sourceDeviceId,
+			List<QueryParam> signalQueryParams, AlarmApi alarmApi, RequestLimiter limiter) {
+		ArrayList<QueryParam> params = new ArrayList<QueryParam>(signalQueryParams);
+		params.add(CustomQueryParam.SOURCE.toQueryParam(sourceDeviceId));
+		QueryParam[] paramsArray = params.toArray(new QueryParam[0]);
+		
+		AlarmCollection alarms = alarmApi.getAlarms();
+		return LimitedPages.allPages(limiter, 
+				() -> alarms.get(500, paramsArray),
+				page -> alarms.getNextPage(page),
+				page -> page.getAlarms());
+	}
+	
 	/**
 	 * 
 	 * @param sm
@@ -67,11 +84,10 @@ public class AlarmUtil {
 	 *  NOTE: will modify the msmt!
 	 *   
 	 * @param msmtRep
-	 * @return 
+	 * @return the SignalFingerprint, 64 bits
 	 */
-	public static int generateUniqueHash(AlarmRepresentation alarmRep) {
-		String json = alarmRep.toJSON();
-		return json.hashCode();
+	public static long generateUniqueHash(AlarmRepresentation alarmRep) {
+		return SignalFingerprint.of(alarmRep);
 	}
 
 
@@ -94,10 +110,10 @@ public class AlarmUtil {
 	public static DeviceSignalMetrics getMetrics(String deviceId, AlarmApi alarmApi, DateTime dateFrom, DateTime dateTo) {
 		
 		List<QueryParam> params = Arrays.asList(
-				CustomQueryParam.DATE_FROM.setValue(DateUtil.toISODateTimeString(dateFrom)).toQueryParam(),
-				CustomQueryParam.DATE_TO.setValue(DateUtil.toISODateTimeString(dateTo)).toQueryParam(),
-				CustomQueryParam.SOURCE.setValue(deviceId).toQueryParam(),
-				CustomQueryParam.WITH_TOTAL_PAGES.setValue("true").toQueryParam()
+				CustomQueryParam.DATE_FROM.toQueryParam(DateUtil.toISODateTimeString(dateFrom)),
+				CustomQueryParam.DATE_TO.toQueryParam(DateUtil.toISODateTimeString(dateTo)),
+				CustomQueryParam.SOURCE.toQueryParam(deviceId),
+				CustomQueryParam.WITH_TOTAL_PAGES.toQueryParam("true")
 				);
 		
 		
@@ -114,7 +130,7 @@ public class AlarmUtil {
 		if (totalPages > 1) {
 			//need to get the last page - the alarms are newest first, revert has no effect
 			params = new ArrayList<>(params);
-			params.add(CustomQueryParam.CURRENT_PAGE.setValue(totalPages.toString()).toQueryParam());
+			params.add(CustomQueryParam.CURRENT_PAGE.toQueryParam(totalPages.toString()));
 			collRep = alarmApi.getAlarms().get(1, params.toArray(new QueryParam[0]));
 		}
 		
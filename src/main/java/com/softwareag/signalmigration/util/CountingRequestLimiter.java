@@ -0,0 +1,51 @@
+package com.softwareag.signalmigration.util;
+
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Counts the requests and signals going through another limiter, and the time spent in the requests 
+ * themselves (not waiting for the limiter)
+ */
+public class CountingRequestLimiter implements RequestLimiter {
+
+	private final RequestLimiter limiter;
+	private final LongAdder numRequests = new LongAdder();
+	private final LongAdder numSignals = new LongAdder();
+	private final LongAdder requestNanos = new LongAdder();
+
+	public CountingRequestLimiter(RequestLimiter limiter) {
+		this.limiter = limiter;
+	}
+
+	@Override
+	public <T> T call(RequestClass requestClass, Supplier<T> request) {
+		return limiter.call(requestClass, () -> {
+			long start = System.nanoTime();
+			try {
+				return request.get();
+			} finally {
+				requestNanos.add(System.nanoTime() - start);
+				numRequests.increment();
+			}
+		});
+	}
+
+	@Override
+	public void acquireSignals(int numSignals) {
+		this.numSignals.add(numSignals);
+		limiter.acquireSignals(numSignals);
+	}
+
+	public long getNumRequests() {
+		return numRequests.sum();
+	}
+
+	public long getNumSignals() {
+		return numSignals.sum();
+	}
+
+	public long getRequestMillis() {
+		return requestNanos.sum() / 1_000_000;
+	}
+}
@@ -27,6 +27,7 @@ public enum CustomQueryParam implements Param {
 	DEVICE_ID("deviceId"),
 	REVERT("revert"),
 	SOURCE("source"), 
+	TYPE("type"),
 	RESOLVED("resolved"), // alarms query
 	VALUE_FRAGMENT_TYPE("valueFragmentType")
 	;
@@ -54,4 +55,12 @@ public enum CustomQueryParam implements Param {
 		return new QueryParam(this, Filter.encode(value));
 	}
 
+	/**
+	 * Thread-safe alternative to setValue(value).toQueryParam(): the enum constants are shared
+	 * by all workers, so concurrent setValue calls may leak values between queries
+	 */
+	public QueryParam toQueryParam(final String value) {
+		return new QueryParam(this, Filter.encode(value));
+	}
+
 }
@@ -0,0 +1,202 @@
+package com.softwareag.signalmigration.util;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonValue;
+
+/**
+ * Compact map of device ids to device ids, e.g. source device -> target device. As in DeviceIdSet, numeric
+ * ids are kept as longs in an open addressing table (linear probing, backward shift deletion), about 20 bytes
+ * per entry instead of ~200 for a HashMap of Strings; entries with other ids go to a HashMap.
+ * Serialized as a JSON object of id -> id.
+ *
+ * Not thread-safe.
+ */
+public class DeviceIdMap {
+
+	private static final int MIN_CAPACITY = 16;
+	private static final long FREE = 0; // numeric ids are > 0
+
+	private long[] keys = new long[MIN_CAPACITY];
+	private long[] values = new long[MIN_CAPACITY];
+	private int numKeys = 0;
+	private final Map<String, String> otherEntries = new HashMap<>();
+
+	/**
+	 * @return the previous value, or null
+	 */
+	public String put(String id, String value) {
+		long key = toKey(id);
+		long longValue = toKey(value);
+		if (key == FREE || longValue == FREE) {
+			String previous = remove(id);
+			otherEntries.put(id, value);
+			return previous;
+		}
+		String previous = otherEntries.remove(id);
+		int slot = findSlot(key);
+		if (keys[slot] == key) {
+			previous = Long.toString(values[slot]);
+			values[slot] = longValue;
+			return previous;
+		}
+		keys[slot] = key;
+		values[slot] = longValue;
+		numKeys++;
+		if (numKeys * 10L > keys.length * 7L) { // load factor 0.7
+			resize(keys.length * 2);
+		}
+		return previous;
+	}
+
+	public String get(String id) {
+		long key = toKey(id);
+		if (key != FREE) {
+			int slot = findSlot(key);
+			if (keys[slot] == key) {
+				return Long.toString(values[slot]);
+			}
+		}
+		return otherEntries.get(id);
+	}
+
+	public boolean containsKey(String id) {
+		return get(id) != null;
+	}
+
+	/**
+	 * @return the removed value, or null
+	 */
+	public String remove(String id) {
+		long key = toKey(id);
+		if (key != FREE) {
+			int slot = findSlot(key);
+			if (keys[slot] == key) {
+				String value = Long.toString(values[slot]);
+				deleteSlot(slot);
+				numKeys--;
+				return value;
+			}
+		}
+		return otherEntries.remove(id);
+	}
+
+	public int size() {
+		return numKeys + otherEntries.size();
+	}
+
+	public boolean isEmpty() {
+		return size() == 0;
+	}
+
+	public void clear() {
+		keys = new long[MIN_CAPACITY];
+		values = new long[MIN_CAPACITY];
+		numKeys = 0;
+		otherEntries.clear();
+	}
+
+	public void forEach(BiConsumer<String, String> action) {
+		// copy, the action may modify this map
+		long[] keySnapshot = keys.clone();
+		long[] valueSnapshot = values.clone();
+		for (int slot = 0; slot < keySnapshot.length; slot++) {
+			if (keySnapshot[slot] != FREE) {
+				action.accept(Long.toString(keySnapshot[slot]), Long.toString(valueSnapshot[slot]));
+			}
+		}
+		new HashMap<>(otherEntries).forEach(action);
+	}
+
+	@JsonValue
+	public Map<String, String> toMap() {
+		Map<String, String> map = new HashMap<>();
+		forEach(map::put);
+		return map;
+	}
+
+	@JsonCreator
+	public static DeviceIdMap fromMap(Map<String, String> map) {
+		DeviceIdMap deviceIdMap = new DeviceIdMap();
+		map.forEach(deviceIdMap::put);
+		return deviceIdMap;
+	}
+
+	/**
+	 * @return the id as key, or FREE if it does not round-trip as a positive long
+	 */
+	private static long toKey(String id) {
+		int length = id.length();
+		if (length == 0 || length > 18 || id.charAt(0) == '0') {
+			return FREE;
+		}
+		long key = 0;
+		for (int i = 0; i < length; i++) {
+			char c = id.charAt(i);
+			if (c < '0' || c > '9') {
+				return FREE;
+			}
+			key = key * 10 + (c - '0');
+		}
+		return key;
+	}
+
+	private int idealSlot(long key) {
+		long h = key * 0x9E3779B97F4A7C15L; // Fibonacci hashing, consecutive ids spread over the table
+		return (int) (h >>> 32) & (keys.length - 1);
+	}
+
+	/**
+	 * @return the slot holding the key, or the free slot where it would go
+	 */
+	private int findSlot(long key) {
+		int mask = keys.length - 1;
+		int slot = idealSlot(key);
+		while (keys[slot] != FREE && keys[slot] != key) {
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+
+	/**
+	 * Backward shift deletion, see DeviceIdSet
+	 */
+	private void deleteSlot(int gap) {
+		int mask = keys.length - 1;
+		keys[gap] = FREE;
+		int slot = gap;
+		while (true) {
+			slot = (slot + 1) & mask;
+			long key = keys[slot];
+			if (key == FREE) {
+				return;
+			}
+			int ideal = idealSlot(key);
+			// the key may move to the gap unless its ideal slot lies cyclically in (gap, slot]
+			boolean stays = gap <= slot ? (gap < ideal && ideal <= slot) : (gap < ideal || ideal <= slot);
+			if (!stays) {
+				keys[gap] = key;
+				values[gap] = values[slot];
+				keys[slot] = FREE;
+				gap = slot;
+			}
+		}
+	}
+
+	private void resize(int capacity) {
+		long[] oldKeys = keys;
+		long[] oldValues = values;
+		keys = new long[capacity];
+		values = new long[capacity];
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldKeys[i] != FREE) {
+				int slot = findSlot(oldKeys[i]);
+				keys[slot] = oldKeys[i];
+				values[slot] = oldValues[i];
+			}
+		}
+	}
+}
@@ -0,0 +1,160 @@
+package com.softwareag.signalmigration.util;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Compact set of device ids. c8y ids are numeric, they are kept as longs in an open addressing table
+ * (linear probing, backward shift deletion), about 10 bytes per id instead of ~100 for a HashSet of Strings;
+ * other ids (non-numeric, leading zeros) go to a HashSet.
+ *
+ * Not thread-safe.
+ */
+public class DeviceIdSet {
+
+	private static final int MIN_CAPACITY = 16;
+	private static final long FREE = 0; // numeric ids are > 0
+
+	private long[] keys = new long[MIN_CAPACITY];
+	private int numKeys = 0;
+	private final Set<String> otherIds = new HashSet<>();
+
+	public boolean add(String id) {
+		long key = toKey(id);
+		if (key == FREE) {
+			return otherIds.add(id);
+		}
+		int slot = findSlot(key);
+		if (keys[slot] == key) {
+			return false;
+		}
+		keys[slot] = key;
+		numKeys++;
+		if (numKeys * 10L > keys.length * 7L) { // load factor 0.7
+			resize(keys.length * 2);
+		}
+		return true;
+	}
+
+	public boolean contains(String id) {
+		long key = toKey(id);
+		if (key == FREE) {
+			return otherIds.contains(id);
+		}
+		return keys[findSlot(key)] == key;
+	}
+
+	public boolean remove(String id) {
+		long key = toKey(id);
+		if (key == FREE) {
+			return otherIds.remove(id);
+		}
+		int slot = findSlot(key);
+		if (keys[slot] != key) {
+			return false;
+		}
+		deleteSlot(slot);
+		numKeys--;
+		return true;
+	}
+
+	public void removeAll(DeviceIdSet other) {
+		other.forEach(this::remove);
+	}
+
+	public int size() {
+		return numKeys + otherIds.size();
+	}
+
+	public boolean isEmpty() {
+		return size() == 0;
+	}
+
+	public void clear() {
+		keys = new long[MIN_CAPACITY];
+		numKeys = 0;
+		otherIds.clear();
+	}
+
+	public void forEach(Consumer<String> action) {
+		// copy, the action may modify this set
+		long[] snapshot = keys.clone();
+		for (long key : snapshot) {
+			if (key != FREE) {
+				action.accept(Long.toString(key));
+			}
+		}
+		new HashSet<>(otherIds).forEach(action);
+	}
+
+	/**
+	 * @return the id as key, or FREE if it does not round-trip as a positive long
+	 */
+	private static long toKey(String id) {
+		int length = id.length();
+		if (length == 0 || length > 18 || id.charAt(0) == '0') {
+			return FREE;
+		}
+		long key = 0;
+		for (int i = 0; i < length; i++) {
+			char c = id.charAt(i);
+			if (c < '0' || c > '9') {
+				return FREE;
+			}
+			key = key * 10 + (c - '0');
+		}
+		return key;
+	}
+
+	private int idealSlot(long key) {
+		long h = key * 0x9E3779B97F4A7C15L; // Fibonacci hashing, consecutive ids spread over the table
+		return (int) (h >>> 32) & (keys.length - 1);
+	}
+
+	/**
+	 * @return the slot holding the key, or the free slot where it would go
+	 */
+	private int findSlot(long key) {
+		int mask = keys.length - 1;
+		int slot = idealSlot(key);
+		while (keys[slot] != FREE && keys[slot] != key) {
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+
+	/**
+	 * Backward shift deletion: move later keys of the probe sequence into the gap, so lookups need no tombstones
+	 */
+	private void deleteSlot(int gap) {
+		int mask = keys.length - 1;
+		keys[gap] = FREE;
+		int slot = gap;
+		while (true) {
+			slot = (slot + 1) & mask;
+			long key = keys[slot];
+			if (key == FREE) {
+				return;
+			}
+			int ideal = idealSlot(key);
+			// the key may move to the gap unless its ideal slot lies cyclically in (gap, slot]
+			boolean stays = gap <= slot ? (gap < ideal && ideal <= slot) : (gap < ideal || ideal <= slot);
+			if (!stays) {
+				keys[gap] = key;
+				keys[slot] = FREE;
+				gap = slot;
+			}
+		}
+	}
+
+	private void resize(int capacity) {
+		long[] oldKeys = keys;
+		keys = new long[capacity];
+		for (long key : oldKeys) {
+			if (key != FREE) {
+				keys[findSlot(key)] = key;
+			}
+		}
+	}
+}
@@ -14,6 +14,7 @@ import com.cumulocity.sdk.client.QueryParam;
 import com.cumulocity.sdk.client.alarm.AlarmApi;
 import com.cumulocity.sdk.client.alarm.PagedAlarmCollectionRepresentation;
 import com.cumulocity.sdk.client.event.EventApi;
+import com.cumulocity.sdk.client.event.EventCollection;
 import com.cumulocity.sdk.client.event.PagedEventCollectionRepresentation;
 import com.softwareag.signalmigration.model.DeviceSignalMetrics;
 import com.softwareag.signalmigration.model.SignalType;
@@ -24,7 +25,7 @@ public class EventUtil {
 	public static Iterable<EventRepresentation> getEvents(String sourceDeviceId,
 			List<QueryParam> signalQueryParams, EventApi eventApi) {
 		ArrayList<QueryParam> params = new ArrayList<QueryParam>(signalQueryParams);
-		params.add(CustomQueryParam.SOURCE.setValue(sourceDeviceId).toQueryParam());
+		params.add(CustomQueryParam.SOURCE.toQueryParam(sourceDeviceId));
 		
 		
 		Iterable<EventRepresentation> evts = eventApi
@@ -32,6 +33,23 @@ public class EventUtil {
 		return evts;
 	}
 	
+	/**
+	 * same as getEvents(...), but oldest first (see getMetrics), with every page request going through the limiter
+	 */
+	public static Iterable<EventRepresentation> getEvents(String sourceDeviceId,
+			List<QueryParam> signalQueryParams, EventApi eventApi, RequestLimiter limiter) {
+		ArrayList<QueryParam> params = new ArrayList<QueryParam>(signalQueryParams);
+		params.add(CustomQueryParam.SOURCE.toQueryParam(sourceDeviceId));
+		params.add(CustomQueryParam.REVERT.toQueryParam("true"));
+		QueryParam[] paramsArray = params.toArray(new QueryParam[0]);
+		
+		EventCollection events = eventApi.getEvents();
+		return LimitedPages.allPages(limiter, 
+				() -> events.get(500, paramsArray),
+				page -> events.getNextPage(page),
+				page -> page.getEvents());
+	}
+	
 	/**
 	 * 
 	 * @param e1
@@ -67,13 +85,11 @@ public class EventUtil {
 	 *  NOTE: will modify the evt!
 	 *   
 	 * @param evt
-	 * @return 
+	 * @return the SignalFingerprint, 64 bits
 	 */
-	public static int generateUniqueHash(EventRepresentation evt) {
+	public static long generateUniqueHash(EventRepresentation evt) {
 		trimTenantSpecificFields(evt);
-		//return Objects.hash(msmtRep.getAttrs(), msmtRep.getType(), msmtRep.getTime());
-		String json = evt.toJSON();
-		return json.hashCode();
+		return SignalFingerprint.of(evt);
 	}
 
 	public static void trimTenantSpecificFields(EventRepresentation evt) {
@@ -94,11 +110,11 @@ public class EventUtil {
 	public static DeviceSignalMetrics getMetrics(String deviceId, EventApi eventApi, DateTime dateFrom, DateTime dateTo) {
 		
 		List<QueryParam> params = Arrays.asList(
-				CustomQueryParam.DATE_FROM.setValue(DateUtil.toISODateTimeString(dateFrom)).toQueryParam(),
-				CustomQueryParam.DATE_TO.setValue(DateUtil.toISODateTimeString(dateTo)).toQueryParam(),
-				CustomQueryParam.SOURCE.setValue(deviceId).toQueryParam(),
-				CustomQueryParam.WITH_TOTAL_PAGES.setValue("true").toQueryParam(),
-				CustomQueryParam.REVERT.setValue("true").toQueryParam()
+				CustomQueryParam.DATE_FROM.toQueryParam(DateUtil.toISODateTimeString(dateFrom)),
+				CustomQueryParam.DATE_TO.toQueryParam(DateUtil.toISODateTimeString(dateTo)),
+				CustomQueryParam.SOURCE.toQueryParam(deviceId),
+				CustomQueryParam.WITH_TOTAL_PAGES.toQueryParam("true"),
+				CustomQueryParam.REVERT.toQueryParam("true")
 				);
 		
 		 /*
@@ -0,0 +1,37 @@
+package com.softwareag.signalmigration.util;
+
+import java.util.function.ToLongFunction;
+
+/**
+ * DedupMode.HASH_SET: reads the unique hashes of all target signals when created
+ */
+public class HashSetDeduplicator<T> implements SignalDeduplicator<T> {
+
+	private final ToLongFunction<T> uniqueHash;
+
+	// a counter per hash: allows for multiple identical signals on the source to be copied to the target
+	private final LongMultiset uniqueHashesSet = new LongMultiset();
+
+	private long numTargetSignalsRead = 0;
+
+	/**
+	 * @param uniqueHash e.g. MeasurementUtil::generateUniqueHash
+	 */
+	public HashSetDeduplicator(Iterable<T> targetSignals, ToLongFunction<T> uniqueHash) {
+		this.uniqueHash = uniqueHash;
+		for (T targetSignal : targetSignals) {
+			uniqueHashesSet.add(uniqueHash.applyAsLong(targetSignal));
+			numTargetSignalsRead++;
+		}
+	}
+
+	@Override
+	public boolean isDuplicate(T signal) {
+		return uniqueHashesSet.remove(uniqueHash.applyAsLong(signal));
+	}
+
+	@Override
+	public long getNumTargetSignalsRead() {
+		return numTargetSignalsRead;
+	}
+}
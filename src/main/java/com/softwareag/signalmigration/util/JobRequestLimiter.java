@@ -0,0 +1,93 @@
+package com.softwareag.signalmigration.util;
+
+import java.time.Duration;
+import java.util.function.Supplier;
+
+import io.github.resilience4j.ratelimiter.RateLimiter;
+import io.github.resilience4j.ratelimiter.RateLimiterConfig;
+import io.github.resilience4j.ratelimiter.RequestNotPermitted;
+
+/**
+ * The requests of one job to one platform (source or target): token buckets for requests per second and 
+ * signals per second of the job, in front of the platform's shared AimdConcurrencyLimiter. A request waits 
+ * for its token before it takes a concurrency slot, so a throttled job does not hold slots of other jobs.
+ * 
+ * A rate <= 0 means no limit; the rates may be changed while the job runs.
+ */
+public class JobRequestLimiter implements RequestLimiter {
+
+	/**
+	 * a large page or batch may have to wait for several periods
+	 */
+	private static final Duration MAX_WAIT = Duration.ofHours(1);
+
+	private final AimdConcurrencyLimiter concurrencyLimiter;
+	private final RateLimiter requestRateLimiter;
+	private final RateLimiter signalRateLimiter;
+	private volatile int requestsPerSecond;
+	private volatile int signalsPerSecond;
+
+	public JobRequestLimiter(String name, AimdConcurrencyLimiter concurrencyLimiter, int requestsPerSecond, int signalsPerSecond) {
+		this.concurrencyLimiter = concurrencyLimiter;
+		this.requestRateLimiter = RateLimiter.of(name + " requests", config(requestsPerSecond));
+		this.signalRateLimiter = RateLimiter.of(name + " signals", config(signalsPerSecond));
+		this.requestsPerSecond = requestsPerSecond;
+		this.signalsPerSecond = signalsPerSecond;
+	}
+
+	@Override
+	public <T> T call(RequestClass requestClass, Supplier<T> request) {
+		acquire(requestRateLimiter, requestsPerSecond, 1);
+		return concurrencyLimiter.call(requestClass, request);
+	}
+
+	@Override
+	public void acquireSignals(int numSignals) {
+		if (numSignals > 0) {
+			acquire(signalRateLimiter, signalsPerSecond, numSignals);
+		}
+	}
+
+	public AimdConcurrencyLimiter getConcurrencyLimiter() {
+		return concurrencyLimiter;
+	}
+
+	public int getRequestsPerSecond() {
+		return requestsPerSecond;
+	}
+
+	public int getSignalsPerSecond() {
+		return signalsPerSecond;
+	}
+
+	public void setRequestsPerSecond(int requestsPerSecond) {
+		if (requestsPerSecond > 0) {
+			requestRateLimiter.changeLimitForPeriod(requestsPerSecond);
+		}
+		this.requestsPerSecond = requestsPerSecond;
+	}
+
+	public void setSignalsPerSecond(int signalsPerSecond) {
+		if (signalsPerSecond > 0) {
+			signalRateLimiter.changeLimitForPeriod(signalsPerSecond);
+		}
+		this.signalsPerSecond = signalsPerSecond;
+	}
+
+	private static void acquire(RateLimiter rateLimiter, int rate, int permits) {
+		if (rate <= 0) {
+			return;
+		}
+		if (!rateLimiter.acquirePermission(permits)) {
+			throw RequestNotPermitted.createRequestNotPermitted(rateLimiter);
+		}
+	}
+
+	private static RateLimiterConfig config(int perSecond) {
+		return RateLimiterConfig.custom()
+				.limitForPeriod(Math.max(1, perSecond))
+				.limitRefreshPeriod(Duration.ofSeconds(1))
+				.timeoutDuration(MAX_WAIT)
+				.build();
+	}
+}
@@ -0,0 +1,61 @@
+package com.softwareag.signalmigration.util;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
+import com.cumulocity.rest.representation.BaseCollectionRepresentation;
+import com.cumulocity.rest.representation.PageStatisticsRepresentation;
+
+/**
+ * Like the SDK's allPages(), but every page request goes through a RequestLimiter, and the elements
+ * of every page are accounted as signals
+ */
+public class LimitedPages {
+
+	/**
+	 * @param limiter limits the page requests
+	 * @param firstPage requests the first page
+	 * @param nextPage requests the page after the given one
+	 * @param elements the elements of a page
+	 * @return lazily requested elements of all pages
+	 */
+	public static <E, P extends BaseCollectionRepresentation> Iterable<E> allPages(RequestLimiter limiter,
+			Supplier<P> firstPage, UnaryOperator<P> nextPage, Function<P, List<E>> elements) {
+		return () -> new Iterator<E>() {
+			private P page;
+			private Iterator<E> pageItor = Collections.emptyIterator();
+			private boolean lastPage = false;
+
+			@Override
+			public boolean hasNext() {
+				while (!pageItor.hasNext() && !lastPage) {
+					P current = page;
+					page = current == null ? limiter.call(firstPage) : limiter.call(() -> nextPage.apply(current));
+					List<E> pageElements = elements.apply(page);
+					limiter.acquireSignals(pageElements == null ? 0 : pageElements.size());
+					lastPage = pageElements == null || pageElements.isEmpty() || isShortPage(page, pageElements.size());
+					pageItor = pageElements == null ? Collections.emptyIterator() : pageElements.iterator();
+				}
+				return pageItor.hasNext();
+			}
+
+			@Override
+			public E next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				return pageItor.next();
+			}
+		};
+	}
+
+	private static boolean isShortPage(BaseCollectionRepresentation page, int numElements) {
+		PageStatisticsRepresentation pageStatistics = page.getPageStatistics();
+		return pageStatistics != null && pageStatistics.getPageSize() > 0 && numElements < pageStatistics.getPageSize();
+	}
+}
@@ -0,0 +1,211 @@
+package com.softwareag.signalmigration.util;
+
+import java.util.Arrays;
+
+/**
+ * Multiset of longs, e.g. the fingerprints of the target signals of a device (SignalFingerprint). Unlike a
+ * HashMultiset<Long> (a boxed Long, map entry and count per value, 60-80 bytes), each distinct value takes one
+ * long of an open addressing table (linear probing, backward shift deletion as in DeviceIdMap). The table grows
+ * by half at a load factor of 0.8, so it is never less than 8/15 full: at most MAX_BYTES_PER_VALUE bytes per
+ * distinct value. Occurrences beyond the first are counted in a parallel int array, allocated when the first
+ * value occurs twice (rare for fingerprints): then at most MAX_BYTES_PER_VALUE_WITH_COUNTS bytes per value.
+ *
+ * Not thread-safe.
+ */
+public class LongMultiset {
+
+	/**
+	 * heap per distinct value, beyond the minimum capacity, as long as no value occurs more than once
+	 */
+	public static final int MAX_BYTES_PER_VALUE = 15;
+
+	/**
+	 * heap per distinct value, beyond the minimum capacity, once a value has occurred more than once
+	 */
+	public static final int MAX_BYTES_PER_VALUE_WITH_COUNTS = 23;
+
+	private static final int MIN_CAPACITY = 16;
+	private static final long FREE = 0; // 0 itself is counted in zeroCount
+
+	private long[] slots = new long[MIN_CAPACITY];
+	/**
+	 * occurrences beyond the first of the value in the same slot; null until a value occurs twice
+	 */
+	private int[] extraCounts = null;
+	private int numSlotsUsed = 0;
+	private long zeroCount = 0;
+
+	private long size = 0;
+
+	/**
+	 * Add one occurrence of the value
+	 */
+	public void add(long value) {
+		size++;
+		if (value == FREE) {
+			zeroCount++;
+			return;
+		}
+		int slot = findSlot(value);
+		if (slots[slot] == value) {
+			if (extraCounts == null) {
+				extraCounts = new int[slots.length];
+			}
+			extraCounts[slot]++;
+			return;
+		}
+		slots[slot] = value;
+		numSlotsUsed++;
+		if (numSlotsUsed * 5L > slots.length * 4L) { // load factor 0.8
+			resize(slots.length + slots.length / 2);
+		}
+	}
+
+	/**
+	 * Remove one occurrence of the value
+	 *
+	 * @return false if the value is not in the set
+	 */
+	public boolean remove(long value) {
+		if (value == FREE) {
+			if (zeroCount == 0) {
+				return false;
+			}
+			zeroCount--;
+			size--;
+			return true;
+		}
+		int slot = findSlot(value);
+		if (slots[slot] != value) {
+			return false;
+		}
+		if (extraCounts != null && extraCounts[slot] > 0) {
+			extraCounts[slot]--;
+		} else {
+			deleteSlot(slot);
+			numSlotsUsed--;
+		}
+		size--;
+		return true;
+	}
+
+	public boolean contains(long value) {
+		return value == FREE ? zeroCount > 0 : slots[findSlot(value)] == value;
+	}
+
+	/**
+	 * @return the number of occurrences of the value
+	 */
+	public long count(long value) {
+		if (value == FREE) {
+			return zeroCount;
+		}
+		int slot = findSlot(value);
+		if (slots[slot] != value) {
+			return 0;
+		}
+		return 1 + (extraCounts != null ? extraCounts[slot] : 0);
+	}
+
+	/**
+	 * @return the number of occurrences of all values
+	 */
+	public long size() {
+		return size;
+	}
+
+	public int numDistinct() {
+		return numSlotsUsed + (zeroCount > 0 ? 1 : 0);
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public void clear() {
+		if (size == 0) {
+			return;
+		}
+		if (slots.length > MIN_CAPACITY * 4) {
+			slots = new long[MIN_CAPACITY];
+		} else {
+			Arrays.fill(slots, FREE);
+		}
+		extraCounts = null;
+		numSlotsUsed = 0;
+		zeroCount = 0;
+		size = 0;
+	}
+
+	/**
+	 * @return the heap taken by the table
+	 */
+	public long getMemoryBytes() {
+		return slots.length * (extraCounts != null ? 12L : 8L);
+	}
+
+	private int idealSlot(long value) {
+		long h = value * 0x9E3779B97F4A7C15L;
+		return (int) (((h >>> 32) * slots.length) >>> 32); // the high bits select the slot, any capacity
+	}
+
+	/**
+	 * @return the slot holding the value, or the free slot where it would go
+	 */
+	private int findSlot(long value) {
+		int slot = idealSlot(value);
+		while (slots[slot] != FREE && slots[slot] != value) {
+			if (++slot == slots.length) {
+				slot = 0;
+			}
+		}
+		return slot;
+	}
+
+	/**
+	 * Backward shift deletion, see DeviceIdSet
+	 */
+	private void deleteSlot(int gap) {
+		slots[gap] = FREE;
+		// the extra count of a deleted slot is 0
+		int slot = gap;
+		while (true) {
+			if (++slot == slots.length) {
+				slot = 0;
+			}
+			long value = slots[slot];
+			if (value == FREE) {
+				return;
+			}
+			int ideal = idealSlot(value);
+			// the value may move to the gap unless its ideal slot lies cyclically in (gap, slot]
+			boolean stays = gap <= slot ? (gap < ideal && ideal <= slot) : (gap < ideal || ideal <= slot);
+			if (!stays) {
+				slots[gap] = value;
+				slots[slot] = FREE;
+				if (extraCounts != null) {
+					extraCounts[gap] = extraCounts[slot];
+					extraCounts[slot] = 0;
+				}
+				gap = slot;
+			}
+		}
+	}
+
+	private void resize(int capacity) {
+		long[] oldSlots = slots;
+		int[] oldExtraCounts = extraCounts;
+		slots = new long[capacity];
+		extraCounts = oldExtraCounts != null ? new int[capacity] : null;
+		for (int i = 0; i < oldSlots.length; i++) {
+			long value = oldSlots[i];
+			if (value != FREE) {
+				int slot = findSlot(value);
+				slots[slot] = value;
+				if (oldExtraCounts != null) {
+					extraCounts[slot] = oldExtraCounts[i];
+				}
+			}
+		}
+	}
+}
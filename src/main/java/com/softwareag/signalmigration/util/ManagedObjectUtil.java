@@ -9,6 +9,7 @@ import org.svenson.JSONParser;
 import com.cumulocity.model.JSONBase;
 import com.cumulocity.rest.representation.AbstractExtensibleRepresentation;
 import com.cumulocity.rest.representation.inventory.ManagedObjectRepresentation;
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -71,14 +72,28 @@ public class ManagedObjectUtil {
         
 	}
 	
-	public static void writeObjectAsFragment(ManagedObjectRepresentation managedObjectRepresentation, Object object, String fragmentName) {
+	public static void writeObjectAsFragment(AbstractExtensibleRepresentation managedObjectRepresentation, Object object, String fragmentName) {
 		
 		Map<String, Object> map = getObjectMapper().convertValue(object, new TypeReference<Map<String, Object>>() {});
 	
 		managedObjectRepresentation.set(map, fragmentName);
 	}
 	
-	public static <V> V readObjectFromFragment(ManagedObjectRepresentation managedObjectRepresentation,	
+	/**
+	 * @return json as written by writeObjectAsFragment
+	 */
+	public static String toJson(Object object) throws JsonProcessingException {
+		return getObjectMapper().writeValueAsString(object);
+	}
+	
+	/**
+	 * @return the object read from json as written by toJson
+	 */
+	public static <V> V fromJson(String json, Class<V> objectClass) throws JsonProcessingException {
+		return getObjectMapper().readValue(json, objectClass);
+	}
+	
+	public static <V> V readObjectFromFragment(AbstractExtensibleRepresentation managedObjectRepresentation,	
 			Class <V> objectClass, String fragmentName)  {
 		@SuppressWarnings("unchecked")
 		Map<String, Object> map = (Map<String, Object>) ManagedObjectUtil.getNestedProperty(managedObjectRepresentation, fragmentName);
@@ -13,6 +13,7 @@ import com.cumulocity.rest.representation.measurement.MeasurementRepresentation;
 import com.cumulocity.sdk.client.Platform;
 import com.cumulocity.sdk.client.QueryParam;
 import com.cumulocity.sdk.client.measurement.MeasurementApi;
+import com.cumulocity.sdk.client.measurement.MeasurementCollection;
 import com.cumulocity.sdk.client.measurement.PagedMeasurementCollectionRepresentation;
 import com.softwareag.signalmigration.model.DeviceSignalMetrics;
 import com.softwareag.signalmigration.model.DeviceSignalMetrics.DeviceSignalMetricsBuilder;
@@ -23,7 +24,7 @@ public class MeasurementUtil {
 	public static Iterable<MeasurementRepresentation> getMeasurements(String sourceDeviceId,
 			List<QueryParam> signalQueryParams, MeasurementApi measurementApi) {
 		ArrayList<QueryParam> params = new ArrayList<QueryParam>(signalQueryParams);
-		params.add(CustomQueryParam.SOURCE.setValue(sourceDeviceId).toQueryParam());
+		params.add(CustomQueryParam.SOURCE.toQueryParam(sourceDeviceId));
 		
 		
 		Iterable<MeasurementRepresentation> sourceMsmts = measurementApi
@@ -31,6 +32,22 @@ public class MeasurementUtil {
 		return sourceMsmts;
 	}
 	
+	/**
+	 * same as getMeasurements(...), with every page request going through the limiter
+	 */
+	public static Iterable<MeasurementRepresentation> getMeasurements(String sourceDeviceId,
+			List<QueryParam> signalQueryParams, MeasurementApi measurementApi, RequestLimiter limiter) {
+		ArrayList<QueryParam> params = new ArrayList<QueryParam>(signalQueryParams);
+		params.add(CustomQueryParam.SOURCE.toQueryParam(sourceDeviceId));
+		QueryParam[] paramsArray = params.toArray(new QueryParam[0]);
+		
+		MeasurementCollection measurements = measurementApi.getMeasurements();
+		return LimitedPages.allPages(limiter, 
+				() -> measurements.get(500, paramsArray),
+				page -> measurements.getNextPage(page),
+				page -> page.getMeasurements());
+	}
+	
 	/**
 	 * 
 	 * @param sm
@@ -66,13 +83,11 @@ public class MeasurementUtil {
 	 *  NOTE: will modify the msmt!
 	 *   
 	 * @param msmtRep
-	 * @return 
+	 * @return the SignalFingerprint, 64 bits
 	 */
-	public static int generateUniqueHash(MeasurementRepresentation msmtRep) {
+	public static long generateUniqueHash(MeasurementRepresentation msmtRep) {
 		trimTenantSpecificFields(msmtRep);
-		//return Objects.hash(msmtRep.getAttrs(), msmtRep.getType(), msmtRep.getTime());
-		String json = msmtRep.toJSON();
-		return json.hashCode();
+		return SignalFingerprint.of(msmtRep);
 	}
 
 	public static void trimTenantSpecificFields(MeasurementRepresentation msmt) {
@@ -90,10 +105,10 @@ public class MeasurementUtil {
 
 	public static DeviceSignalMetrics getMetrics(String deviceId, MeasurementApi measurementApi, DateTime dateFrom, DateTime dateTo) {
 		List<QueryParam> params = Arrays.asList(
-				CustomQueryParam.DATE_FROM.setValue(DateUtil.toISODateTimeString(dateFrom)).toQueryParam(),
-				CustomQueryParam.DATE_TO.setValue(DateUtil.toISODateTimeString(dateTo)).toQueryParam(),
-				CustomQueryParam.SOURCE.setValue(deviceId).toQueryParam(),
-				CustomQueryParam.WITH_TOTAL_PAGES.setValue("true").toQueryParam()
+				CustomQueryParam.DATE_FROM.toQueryParam(DateUtil.toISODateTimeString(dateFrom)),
+				CustomQueryParam.DATE_TO.toQueryParam(DateUtil.toISODateTimeString(dateTo)),
+				CustomQueryParam.SOURCE.toQueryParam(deviceId),
+				CustomQueryParam.WITH_TOTAL_PAGES.toQueryParam("true")
 				);
 		
 		
@@ -0,0 +1,94 @@
+package com.softwareag.signalmigration.util;
+
+import java.util.Iterator;
+import java.util.function.ToLongFunction;
+
+/**
+ * DedupMode.MERGE_JOIN: the target signals are read along with the source signals. Both must come oldest
+ * first (as MeasurementUtil.getMeasurements and EventUtil.getEvents with a limiter read them), and the source
+ * signals must be checked in that order.
+ * 
+ * Only the unique hashes of the target signals with the time of the current source signal (the window) are
+ * kept; older target signals are skipped, and the target is read no further than the first signal after
+ * the window. Signals at the same time may come in any order on both sides.
+ */
+public class MergeJoinDeduplicator<T> implements SignalDeduplicator<T> {
+
+	private final Iterator<T> targetSignals;
+
+	private final ToLongFunction<T> timeMillis;
+
+	private final ToLongFunction<T> uniqueHash;
+
+	private final LongMultiset window = new LongMultiset();
+
+	private long windowTime = Long.MIN_VALUE;
+
+	/**
+	 * the first target signal after the window, its hash is not computed yet; null = read the next one
+	 */
+	private T nextTargetSignal;
+
+	private long numTargetSignalsRead = 0;
+
+	private long numOutOfOrder = 0;
+
+	/**
+	 * @param targetSignals lazily read, oldest first
+	 * @param timeMillis the time of a signal, e.g. msmt -> msmt.getDateTime().getMillis()
+	 * @param uniqueHash e.g. MeasurementUtil::generateUniqueHash
+	 */
+	public MergeJoinDeduplicator(Iterator<T> targetSignals, ToLongFunction<T> timeMillis, ToLongFunction<T> uniqueHash) {
+		this.targetSignals = targetSignals;
+		this.timeMillis = timeMillis;
+		this.uniqueHash = uniqueHash;
+	}
+
+	@Override
+	public boolean isDuplicate(T signal) {
+		long time = timeMillis.applyAsLong(signal);
+		if (time < windowTime) {
+			// the target signals of that time are gone, the signal is written
+			numOutOfOrder++;
+			return false;
+		}
+		if (time > windowTime) {
+			advanceTo(time);
+		}
+		return !window.isEmpty() && window.remove(uniqueHash.applyAsLong(signal));
+	}
+
+	@Override
+	public long getNumTargetSignalsRead() {
+		return numTargetSignalsRead;
+	}
+
+	/**
+	 * @return the number of source signals older than an earlier one; not checked against the target
+	 */
+	public long getNumOutOfOrder() {
+		return numOutOfOrder;
+	}
+
+	private void advanceTo(long time) {
+		windowTime = time;
+		window.clear();
+		while (nextTargetSignal != null || targetSignals.hasNext()) {
+			T targetSignal = nextTargetSignal != null ? nextTargetSignal : readTargetSignal();
+			long targetTime = timeMillis.applyAsLong(targetSignal);
+			if (targetTime > time) {
+				nextTargetSignal = targetSignal;
+				return;
+			}
+			nextTargetSignal = null;
+			if (targetTime == time) {
+				window.add(uniqueHash.applyAsLong(targetSignal));
+			}
+		}
+	}
+
+	private T readTargetSignal() {
+		numTargetSignalsRead++;
+		return targetSignals.next();
+	}
+}
@@ -0,0 +1,47 @@
+package com.softwareag.signalmigration.util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.cumulocity.model.JSONBase;
+
+/**
+ * Target of a dry run: signals are serialized as they would be sent, counted and dropped
+ */
+public class NullSignalSink {
+
+	private final LongAdder numRequests = new LongAdder();
+	private final LongAdder numSignals = new LongAdder();
+	private final LongAdder numBytes = new LongAdder();
+
+	/**
+	 * One request with the signals, e.g. a bulk create
+	 */
+	public void write(List<?> signals) {
+		write(signals, 1);
+	}
+
+	/**
+	 * @param numRequests the requests the signals would take, e.g. count requests for a multi-count alarm
+	 */
+	public void write(List<?> signals, int numRequests) {
+		for (Object signal : signals) {
+			numBytes.add(JSONBase.getJSONGenerator().forValue(signal).getBytes(StandardCharsets.UTF_8).length);
+		}
+		this.numSignals.add(signals.size());
+		this.numRequests.add(numRequests);
+	}
+
+	public long getNumRequests() {
+		return numRequests.sum();
+	}
+
+	public long getNumSignals() {
+		return numSignals.sum();
+	}
+
+	public long getNumBytes() {
+		return numBytes.sum();
+	}
+}
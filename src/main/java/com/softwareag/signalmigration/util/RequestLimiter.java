@@ -0,0 +1,43 @@
+package com.softwareag.signalmigration.util;
+
+import java.util.function.Supplier;
+
+/**
+ * Gate for the requests to one platform
+ */
+public interface RequestLimiter {
+
+	/**
+	 * Kinds of requests whose latencies are not comparable: a count query (pageSize 1) returns in a fraction
+	 * of the time of a page of signals, a bulk write takes longer than either
+	 */
+	enum RequestClass {
+		COUNT, READ, WRITE
+	}
+
+	/**
+	 * Runs the request once the limiter permits it
+	 */
+	<T> T call(RequestClass requestClass, Supplier<T> request);
+
+	default <T> T call(Supplier<T> request) {
+		return call(RequestClass.READ, request);
+	}
+
+	default void run(Runnable request) {
+		run(RequestClass.READ, request);
+	}
+
+	default void run(RequestClass requestClass, Runnable request) {
+		call(requestClass, () -> {
+			request.run();
+			return null;
+		});
+	}
+
+	/**
+	 * Account for signals read or written; blocks while a signal rate limit is exceeded
+	 */
+	default void acquireSignals(int numSignals) {
+	}
+}
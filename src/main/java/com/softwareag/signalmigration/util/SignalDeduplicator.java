@@ -0,0 +1,37 @@
+package com.softwareag.signalmigration.util;
+
+/**
+ * Finds the source signals of a task that are already in the target
+ */
+public interface SignalDeduplicator<T> {
+
+	/**
+	 * Each target signal matches one source signal only: identical signals on the source are written until the
+	 * target has as many as the source.
+	 * 
+	 * @return true if the signal is in the target
+	 */
+	boolean isDuplicate(T signal);
+
+	/**
+	 * @return the number of target signals read so far
+	 */
+	long getNumTargetSignalsRead();
+
+	/**
+	 * @return a deduplicator for an empty target, e.g. for a dry run
+	 */
+	static <T> SignalDeduplicator<T> none() {
+		return new SignalDeduplicator<T>() {
+			@Override
+			public boolean isDuplicate(T signal) {
+				return false;
+			}
+
+			@Override
+			public long getNumTargetSignalsRead() {
+				return 0;
+			}
+		};
+	}
+}
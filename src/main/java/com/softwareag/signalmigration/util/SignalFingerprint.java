@@ -0,0 +1,202 @@
+package com.softwareag.signalmigration.util;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.Map;
+import java.util.SortedMap;
+
+import org.joda.time.DateTime;
+
+import com.cumulocity.model.JSONBase;
+import com.cumulocity.rest.representation.alarm.AlarmRepresentation;
+import com.cumulocity.rest.representation.event.EventRepresentation;
+import com.cumulocity.rest.representation.measurement.MeasurementRepresentation;
+
+/**
+ * 64-bit fingerprints of signals for dedup, computed from the fields and fragments (attrs) that are the same
+ * on both platforms, without building the signal's JSON: the values are fed to the hash as they are walked,
+ * map keys in sorted order, so that the order of the fragments and of their properties does not matter.
+ *
+ * Numbers are hashed by value (1 and 1.0 are the same), times as epoch millis (whatever the time zone).
+ * Values of other types than the JSON ones (maps, collections, strings, numbers, booleans) are hashed as
+ * their JSON.
+ *
+ * The hash is an xxHash64-like mix of 64-bit words. Checking 20M new signals against 20M target fingerprints
+ * gives about 2e-5 false duplicates with 64 bits, but about 90,000 with the 32-bit String.hashCode of the JSON.
+ */
+public class SignalFingerprint {
+
+	private static final long PRIME1 = 0x9E3779B185EBCA87L;
+	private static final long PRIME2 = 0xC2B2AE3D27D4EB4FL;
+	private static final long PRIME3 = 0x165667B19E3779F9L;
+
+	// a tag before each value, so that e.g. ["a", "b"] and ["ab"] or "1" and 1 differ
+	private static final long NULL = 1;
+	private static final long STRING = 2;
+	private static final long INTEGRAL = 3;
+	private static final long DECIMAL = 4;
+	private static final long TRUE = 5;
+	private static final long FALSE = 6;
+	private static final long MAP = 7;
+	private static final long COLLECTION = 8;
+	private static final long TIME = 9;
+	private static final long OTHER = 10;
+
+	private long hash = PRIME3;
+	private long numWords = 0;
+
+	public static long of(MeasurementRepresentation msmt) {
+		return new SignalFingerprint()
+				.add(msmt.getType())
+				.add(msmt.getDateTime())
+				.add(msmt.getAttrs())
+				.get();
+	}
+
+	public static long of(EventRepresentation evt) {
+		return new SignalFingerprint()
+				.add(evt.getType())
+				.add(evt.getText())
+				.add(evt.getDateTime())
+				.add(evt.getAttrs())
+				.get();
+	}
+
+	public static long of(AlarmRepresentation alarm) {
+		return new SignalFingerprint()
+				.add(alarm.getType())
+				.add(alarm.getText())
+				.add(alarm.getStatus())
+				.add(alarm.getSeverity())
+				.add(alarm.getCount())
+				.add(alarm.getDateTime())
+				.add(alarm.getFirstOccurrenceDateTime())
+				.add(alarm.getAttrs())
+				.get();
+	}
+
+	public SignalFingerprint add(Object value) {
+		if (value == null) {
+			word(NULL);
+		} else if (value instanceof String) {
+			addString((String) value);
+		} else if (value instanceof Map) {
+			addMap((Map<?, ?>) value);
+		} else if (value instanceof Collection) {
+			Collection<?> collection = (Collection<?>) value;
+			word(COLLECTION);
+			word(collection.size());
+			for (Object element : collection) {
+				add(element);
+			}
+		} else if (value instanceof Number) {
+			addNumber((Number) value);
+		} else if (value instanceof Boolean) {
+			word((Boolean) value ? TRUE : FALSE);
+		} else if (value instanceof DateTime) {
+			word(TIME);
+			word(((DateTime) value).getMillis());
+		} else if (value instanceof Date) {
+			word(TIME);
+			word(((Date) value).getTime());
+		} else if (value instanceof Object[]) {
+			add(Arrays.asList((Object[]) value));
+		} else {
+			word(OTHER);
+			addString(JSONBase.getJSONGenerator().forValue(value));
+		}
+		return this;
+	}
+
+	public long get() {
+		// xxHash64 avalanche
+		long h = hash ^ numWords;
+		h ^= h >>> 33;
+		h *= PRIME2;
+		h ^= h >>> 29;
+		h *= PRIME3;
+		h ^= h >>> 32;
+		return h;
+	}
+
+	private void addString(String s) {
+		word(STRING);
+		int length = s.length();
+		word(length);
+		int i = 0;
+		for (; i + 4 <= length; i += 4) {
+			word((long) s.charAt(i) | (long) s.charAt(i + 1) << 16 | (long) s.charAt(i + 2) << 32 | (long) s.charAt(i + 3) << 48);
+		}
+		if (i < length) {
+			long last = 0;
+			for (int shift = 0; i < length; i++, shift += 16) {
+				last |= (long) s.charAt(i) << shift;
+			}
+			word(last);
+		}
+	}
+
+	private void addMap(Map<?, ?> map) {
+		word(MAP);
+		word(map.size());
+		if (map instanceof SortedMap && ((SortedMap<?, ?>) map).comparator() == null) {
+			map.forEach((key, value) -> {
+				add(key);
+				add(value);
+			});
+			return;
+		}
+		// fragment names and property names are strings
+		Object[] keys = map.keySet().toArray();
+		if (keys.length > 1) {
+			Arrays.sort(keys, (k1, k2) -> String.valueOf(k1).compareTo(String.valueOf(k2)));
+		}
+		for (Object key : keys) {
+			add(key);
+			add(map.get(key));
+		}
+	}
+
+	private void addNumber(Number number) {
+		if (number instanceof Long || number instanceof Integer || number instanceof Short || number instanceof Byte) {
+			word(INTEGRAL);
+			word(number.longValue());
+			return;
+		}
+		if (number instanceof BigInteger && ((BigInteger) number).bitLength() < 64) {
+			word(INTEGRAL);
+			word(number.longValue());
+			return;
+		}
+		if (number instanceof BigDecimal) {
+			BigDecimal decimal = (BigDecimal) number;
+			if (decimal.signum() == 0 || (decimal.scale() <= 0 || decimal.stripTrailingZeros().scale() <= 0)
+					&& decimal.compareTo(BigDecimal.valueOf(Long.MIN_VALUE)) >= 0 && decimal.compareTo(BigDecimal.valueOf(Long.MAX_VALUE)) <= 0) {
+				word(INTEGRAL);
+				word(decimal.longValue());
+				return;
+			}
+		}
+		double d = number.doubleValue();
+		if (d == Math.rint(d) && Math.abs(d) < 0x1p63) {
+			// also -0.0
+			word(INTEGRAL);
+			word((long) d);
+			return;
+		}
+		word(DECIMAL);
+		word(Double.doubleToLongBits(d));
+	}
+
+	private void word(long w) {
+		w *= PRIME2;
+		w = Long.rotateLeft(w, 31);
+		w *= PRIME1;
+		hash ^= w;
+		hash = Long.rotateLeft(hash, 27) * PRIME1 + PRIME3;
+		numWords++;
+	}
+}
@@ -45,6 +45,7 @@ import com.softwareag.signalmigration.model.MigrationJobConfig;
 import com.softwareag.signalmigration.model.SignalType;
 import com.softwareag.signalmigration.service.CumulocityService;
 import com.softwareag.signalmigration.service.DeviceMigrationService;
+import com.softwareag.signalmigration.service.DeviceReportStore;
 import com.softwareag.signalmigration.service.MeasurementRenameService;
 import com.softwareag.signalmigration.service.MigrationJobService;
 import com.softwareag.signalmigration.service.PlatformUtil;
@@ -83,6 +84,9 @@ class MigrationIT {
 	@Autowired
 	private	CumulocityService cumulocityService;
 	
+	@Autowired
+	private DeviceReportStore deviceReportStore;
+	
 	@Autowired
 	private PlatformUtil platformUtil;
 	
@@ -334,9 +338,9 @@ class MigrationIT {
         createdJob = ManagedObjectUtil.readObjectFromFragment(moRep, MigrationJob.class, MigrationJobService.JOB_FRAGMENT_NAME);
         
         
-        assertTrue(createdJob.getDeviceReports().size() == 1);
+        assertTrue(deviceReportStore.getReports(moRep.getId().getValue()).size() == 1);
         
-        DeviceSignalMigrationReport deviceReport = createdJob.getDeviceReports().get(0);
+        DeviceSignalMigrationReport deviceReport = deviceReportStore.getReports(moRep.getId().getValue()).get(0);
         assertTrue(deviceReport.getError() == null);
 		assertTrue(deviceReport.getMigrated() == numMigratedExpected);
 		
@@ -457,9 +461,9 @@ class MigrationIT {
         createdJob = ManagedObjectUtil.readObjectFromFragment(moRep, MigrationJob.class, MigrationJobService.JOB_FRAGMENT_NAME);
         
         
-        assertTrue(createdJob.getDeviceReports().size() == 1);
+        assertTrue(deviceReportStore.getReports(moRep.getId().getValue()).size() == 1);
         
-        DeviceSignalMigrationReport deviceReport = createdJob.getDeviceReports().get(0);
+        DeviceSignalMigrationReport deviceReport = deviceReportStore.getReports(moRep.getId().getValue()).get(0);
         assertTrue(deviceReport.getError() == null);
 		assertTrue(deviceReport.getMigrated() == numMigratedExpected);
 		
@@ -523,9 +527,9 @@ class MigrationIT {
         moRep = cumulocityService.getManagedObjectsByFilter(filter).iterator().next();
         createdJob = ManagedObjectUtil.readObjectFromFragment(moRep, MigrationJob.class, MigrationJobService.JOB_FRAGMENT_NAME);
         
-        assertTrue(createdJob.getDeviceReports().size() == 1);
+        assertTrue(deviceReportStore.getReports(moRep.getId().getValue()).size() == 1);
         
-        deviceReport = createdJob.getDeviceReports().get(0);
+        deviceReport = deviceReportStore.getReports(moRep.getId().getValue()).get(0);
         assertTrue(deviceReport.getError() == null);
 		assertEquals(0, deviceReport.getMigrated());
 		assertEquals(numMigratedExpected, deviceReport.getDuplicatesSkipped());
@@ -629,9 +633,9 @@ class MigrationIT {
         createdJob = ManagedObjectUtil.readObjectFromFragment(moRep, MigrationJob.class, MigrationJobService.JOB_FRAGMENT_NAME);
         
         
-        assertTrue(createdJob.getDeviceReports().size() == 1);
+        assertTrue(deviceReportStore.getReports(moRep.getId().getValue()).size() == 1);
         
-        DeviceSignalMigrationReport deviceReport = createdJob.getDeviceReports().get(0);
+        DeviceSignalMigrationReport deviceReport = deviceReportStore.getReports(moRep.getId().getValue()).get(0);
         assertTrue(deviceReport.getError() == null);
 		assertEquals(numMigratedExpected, deviceReport.getMigrated());
 		
@@ -695,9 +699,9 @@ class MigrationIT {
         moRep = cumulocityService.getManagedObjectsByFilter(filter).iterator().next();
         createdJob = ManagedObjectUtil.readObjectFromFragment(moRep, MigrationJob.class, MigrationJobService.JOB_FRAGMENT_NAME);
         
-        assertTrue(createdJob.getDeviceReports().size() == 1);
+        assertTrue(deviceReportStore.getReports(moRep.getId().getValue()).size() == 1);
         
-        deviceReport = createdJob.getDeviceReports().get(0);
+        deviceReport = deviceReportStore.getReports(moRep.getId().getValue()).get(0);
         assertTrue(deviceReport.getError() == null);
 		assertEquals(0, deviceReport.getMigrated());
 		assertEquals(numMigratedExpected, deviceReport.getDuplicatesSkipped());
@@ -791,9 +795,9 @@ class MigrationIT {
         createdJob = ManagedObjectUtil.readObjectFromFragment(moRep, MigrationJob.class, MigrationJobService.JOB_FRAGMENT_NAME);
         
         
-        assertTrue(createdJob.getDeviceReports().size() == 1);
+        assertTrue(deviceReportStore.getReports(moRep.getId().getValue()).size() == 1);
         
-        DeviceSignalMigrationReport deviceReport = createdJob.getDeviceReports().get(0);
+        DeviceSignalMigrationReport deviceReport = deviceReportStore.getReports(moRep.getId().getValue()).get(0);
         assertTrue(deviceReport.getError() != null);
 		
         
@@ -0,0 +1,73 @@
+package com.softwareag.signalmigration.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.softwareag.signalmigration.service.DeviceMappingService.MappingResult;
+import com.softwareag.signalmigration.service.DeviceMappingService.TargetIndex;
+
+class DeviceMappingServiceTest {
+
+	private static final String PATH = "c8y_Hardware.serialNumber";
+
+	private TargetIndex targetIndex;
+	private MappingResult result;
+
+	@BeforeEach
+	void setUp() {
+		targetIndex = new TargetIndex(PATH);
+		targetIndex.add("sn-1", "101");
+		targetIndex.add("sn-2", "102");
+		targetIndex.add("sn-2", "103");
+		targetIndex.add("sn-2", "104");
+		result = new MappingResult();
+	}
+
+	@Test
+	void mapsAValueFoundOnOneTargetDevice() {
+		DeviceMappingService.mapByTargetInventory(List.of("1", "2"), Map.of("1", "sn-1", "2", "sn-1"), targetIndex, PATH, result);
+
+		assertEquals("101", result.getTargetDeviceIds().get("1"));
+		assertEquals("101", result.getTargetDeviceIds().get("2"));
+		assertTrue(result.getErrors().isEmpty());
+	}
+
+	@Test
+	void reportsAValueNotFound() {
+		DeviceMappingService.mapByTargetInventory(List.of("1"), Map.of("1", "sn-3"), targetIndex, PATH, result);
+
+		assertNull(result.getTargetDeviceIds().get("1"));
+		assertEquals("unable to find target device with c8y_Hardware.serialNumber = sn-3 for source device id: 1",
+				result.getErrors().get("1"));
+	}
+
+	@Test
+	void reportsAValueFoundOnSeveralTargetDevices() {
+		DeviceMappingService.mapByTargetInventory(List.of("1", "2"), Map.of("1", "sn-2", "2", "sn-1"), targetIndex, PATH, result);
+
+		assertNull(result.getTargetDeviceIds().get("1"));
+		assertEquals("3 target devices with c8y_Hardware.serialNumber = sn-2 for source device id: 1", result.getErrors().get("1"));
+		assertEquals("101", result.getTargetDeviceIds().get("2"));
+	}
+
+	@Test
+	void queriesTargetDevicesByValue() {
+		assertEquals("c8y_Hardware.serialNumber eq 'sn-1' or c8y_Hardware.serialNumber eq '42' or c8y_Hardware.serialNumber eq 42",
+				DeviceMappingService.buildValueQuery(PATH, List.of("sn-1", "42")));
+	}
+
+	@Test
+	void reportsASourceDeviceWithoutValue() {
+		DeviceMappingService.mapByTargetInventory(List.of("1"), Map.of(), targetIndex, PATH, result);
+
+		assertEquals("source device 1 has no c8y_Hardware.serialNumber", result.getErrors().get("1"));
+		assertTrue(result.getTargetDeviceIds().isEmpty());
+	}
+}
@@ -0,0 +1,148 @@
+package com.softwareag.signalmigration.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * With a single worker, held by a gate task while the tasks under test are queued, tasks start one at a time
+ * in the order the scheduler picks them.
+ */
+class DeviceMigrationSchedulerTest {
+
+	private static final String GATE = "gate";
+
+	private DeviceMigrationScheduler scheduler;
+	private final CountDownLatch gate = new CountDownLatch(1);
+	private final List<String> started = Collections.synchronizedList(new ArrayList<>());
+
+	@BeforeEach
+	void setUp() {
+		AdaptiveConcurrencyService adaptiveConcurrencyService = new AdaptiveConcurrencyService();
+		ReflectionTestUtils.setField(adaptiveConcurrencyService, "enabled", false);
+		scheduler = new DeviceMigrationScheduler();
+		ReflectionTestUtils.setField(scheduler, "numParallelDeviceMigrations", 1);
+		ReflectionTestUtils.setField(scheduler, "registry", new SimpleMeterRegistry());
+		ReflectionTestUtils.setField(scheduler, "adaptiveConcurrencyService", adaptiveConcurrencyService);
+		ReflectionTestUtils.invokeMethod(scheduler, "init");
+
+		scheduler.registerJob(GATE, () -> 0, 1);
+		scheduler.submit(GATE, () -> {
+			try {
+				gate.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		});
+	}
+
+	@AfterEach
+	void tearDown() throws InterruptedException {
+		gate.countDown();
+		scheduler.shutdown(5_000);
+	}
+
+	@Test
+	void sharesWorkersByWeightAcrossJobs() throws InterruptedException {
+		scheduler.registerJob("a", () -> 0, 2);
+		scheduler.registerJob("b", () -> 0, 1);
+		CountDownLatch done = new CountDownLatch(9);
+		for (int i = 0; i < 6; i++) {
+			scheduler.submit("a", recording("a", done));
+		}
+		for (int i = 0; i < 3; i++) {
+			scheduler.submit("b", recording("b", done));
+		}
+
+		gate.countDown();
+		assertTrue(done.await(5, TimeUnit.SECONDS));
+		// smooth weighted round-robin: b gets every third worker instead of waiting for all of a
+		assertEquals(List.of("a", "b", "a", "a", "b", "a", "a", "b", "a"), started);
+	}
+
+	@Test
+	void startsTasksSubmittedFirstAheadOfTheQueue() throws InterruptedException {
+		scheduler.registerJob("a", () -> 0, 1);
+		CountDownLatch done = new CountDownLatch(3);
+		scheduler.submit("a", recording("device 1", done));
+		scheduler.submit("a", recording("device 2", done));
+		scheduler.submitFirst("a", recording("device 1 window 2", done));
+
+		gate.countDown();
+		assertTrue(done.await(5, TimeUnit.SECONDS));
+		assertEquals(List.of("device 1 window 2", "device 1", "device 2"), started);
+	}
+
+	@Test
+	void startsTasksByPriorityAfterTasksSubmittedFirst() throws InterruptedException {
+		scheduler.registerJob("a", () -> 0, 1);
+		CountDownLatch done = new CountDownLatch(5);
+		// page 1
+		scheduler.submit("a", recording("light 1", done), 10);
+		scheduler.submit("a", recording("medium", done), 500);
+		scheduler.submit("a", recording("light 2", done), 10);
+		// page 2
+		scheduler.submit("a", recording("heavy", done), 10_000);
+		scheduler.submitFirst("a", recording("medium window 2", done));
+
+		gate.countDown();
+		assertTrue(done.await(5, TimeUnit.SECONDS));
+		assertEquals(List.of("medium window 2", "heavy", "medium", "light 1", "light 2"), started);
+	}
+
+	@Test
+	void cancelDropsQueuedTasks() throws InterruptedException {
+		scheduler.registerJob("a", () -> 0, 1);
+		scheduler.registerJob("b", () -> 0, 1);
+		CountDownLatch done = new CountDownLatch(1);
+		scheduler.submit("a", recording("a", done));
+		scheduler.submit("a", recording("a", done));
+		scheduler.cancelJob("a");
+		scheduler.submit("b", recording("b", done));
+
+		gate.countDown();
+		assertTrue(done.await(5, TimeUnit.SECONDS));
+		assertEquals(List.of("b"), started);
+		assertEquals(0, scheduler.getNumPendingTasks("a"));
+	}
+
+	@Test
+	void pausedJobKeepsItsQueueUntilResumed() throws InterruptedException {
+		scheduler.registerJob("a", () -> 0, 1);
+		scheduler.registerJob("b", () -> 0, 1);
+		CountDownLatch bDone = new CountDownLatch(1);
+		CountDownLatch aDone = new CountDownLatch(2);
+		scheduler.submit("a", recording("a", aDone));
+		scheduler.submit("a", recording("a", aDone));
+		scheduler.setJobPaused("a", true);
+		scheduler.submit("b", recording("b", bDone));
+
+		gate.countDown();
+		assertTrue(bDone.await(5, TimeUnit.SECONDS));
+		assertEquals(List.of("b"), started);
+		assertEquals(2, scheduler.getNumPendingTasks("a"));
+
+		scheduler.setJobPaused("a", false);
+		assertTrue(aDone.await(5, TimeUnit.SECONDS));
+		assertEquals(List.of("b", "a", "a"), started);
+	}
+
+	private Runnable recording(String name, CountDownLatch done) {
+		return () -> {
+			started.add(name);
+			done.countDown();
+		};
+	}
+}
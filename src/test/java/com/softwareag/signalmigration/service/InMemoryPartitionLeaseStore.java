@@ -0,0 +1,52 @@
+package com.softwareag.signalmigration.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.softwareag.signalmigration.model.PartitionLease;
+
+/**
+ * Stand-in for the inventory lease store, with a real compare-and-set
+ */
+class InMemoryPartitionLeaseStore implements PartitionLeaseStore {
+
+	/**
+	 * partitionJobId -> lease
+	 */
+	private final Map<String, PartitionLease> leases = new TreeMap<>();
+
+	synchronized void createPartitions(String jobId, int numPartitions) {
+		for (int partition = 0; partition < numPartitions; partition++) {
+			String partitionJobId = jobId + "-" + partition;
+			leases.put(partitionJobId, PartitionLease.builder()
+					.jobId(jobId)
+					.partition(partition)
+					.partitionJobId(partitionJobId)
+					.build());
+		}
+	}
+
+	@Override
+	public synchronized List<PartitionLease> getLeases(String jobId) {
+		List<PartitionLease> jobLeases = new ArrayList<>();
+		for (PartitionLease lease : leases.values()) {
+			if (lease.getJobId().equals(jobId)) {
+				jobLeases.add(lease.toBuilder().build());
+			}
+		}
+		jobLeases.sort((a, b) -> Integer.compare(a.getPartition(), b.getPartition()));
+		return jobLeases;
+	}
+
+	@Override
+	public synchronized boolean compareAndSet(PartitionLease expected, PartitionLease update) {
+		PartitionLease current = leases.get(expected.getPartitionJobId());
+		if (current.getVersion() != expected.getVersion()) {
+			return false;
+		}
+		leases.put(expected.getPartitionJobId(), update.toBuilder().build());
+		return true;
+	}
+}
@@ -0,0 +1,112 @@
+package com.softwareag.signalmigration.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.softwareag.signalmigration.model.PartitionLease;
+import com.softwareag.signalmigration.service.PartitionLeaseCoordinator.LeaseRound;
+
+class PartitionLeaseCoordinatorTest {
+
+	private static final String JOB_ID = "job";
+	private static final long LEASE_DURATION = 60_000;
+
+	private final AtomicLong clock = new AtomicLong(1_000_000);
+	private InMemoryPartitionLeaseStore store;
+	private PartitionLeaseCoordinator instanceA;
+	private PartitionLeaseCoordinator instanceB;
+
+	@BeforeEach
+	void setUp() {
+		store = new InMemoryPartitionLeaseStore();
+		store.createPartitions(JOB_ID, 4);
+		instanceA = new PartitionLeaseCoordinator(store, "a", LEASE_DURATION, clock::get);
+		instanceB = new PartitionLeaseCoordinator(store, "b", LEASE_DURATION, clock::get);
+	}
+
+	@Test
+	void instancesClaimDisjointPartitions() {
+		LeaseRound roundA = instanceA.renewAndClaim(JOB_ID, 2);
+		LeaseRound roundB = instanceB.renewAndClaim(JOB_ID, 2);
+
+		assertEquals(2, roundA.getClaimed().size());
+		assertEquals(2, roundB.getClaimed().size());
+		Set<Integer> partitions = new HashSet<>();
+		roundA.getHeld().forEach(lease -> partitions.add(lease.getPartition()));
+		roundB.getHeld().forEach(lease -> partitions.add(lease.getPartition()));
+		assertEquals(4, partitions.size());
+	}
+
+	@Test
+	void renewedLeasesAreNotTakenOver() {
+		instanceA.renewAndClaim(JOB_ID, 4);
+		instanceB.renewAndClaim(JOB_ID, 4);
+
+		for (int i = 0; i < 5; i++) {
+			clock.addAndGet(LEASE_DURATION / 2);
+			LeaseRound roundA = instanceA.renewAndClaim(JOB_ID, 4);
+			LeaseRound roundB = instanceB.renewAndClaim(JOB_ID, 4);
+			assertEquals(4, roundA.getHeld().size());
+			assertTrue(roundA.getLost().isEmpty());
+			assertTrue(roundB.getClaimed().isEmpty());
+		}
+	}
+
+	@Test
+	void expiredLeasesAreTakenOver() {
+		instanceA.renewAndClaim(JOB_ID, 4);
+		instanceB.renewAndClaim(JOB_ID, 4);
+
+		// a stops renewing
+		clock.addAndGet(LEASE_DURATION - 1);
+		assertTrue(instanceB.renewAndClaim(JOB_ID, 4).getClaimed().isEmpty());
+		clock.addAndGet(1);
+		LeaseRound roundB = instanceB.renewAndClaim(JOB_ID, 4);
+		assertEquals(4, roundB.getClaimed().size());
+		assertEquals(4, roundB.getTakenOver().size());
+
+		// a comes back and finds its leases gone
+		LeaseRound roundA = instanceA.renewAndClaim(JOB_ID, 4);
+		assertEquals(4, roundA.getLost().size());
+		assertTrue(roundA.getHeld().isEmpty());
+	}
+
+	@Test
+	void donePartitionsAreNotClaimedAgain() {
+		LeaseRound roundA = instanceA.renewAndClaim(JOB_ID, 4);
+		for (PartitionLease lease : roundA.getHeld()) {
+			assertTrue(instanceA.release(lease, true, lease.getPartition() == 3));
+		}
+
+		clock.addAndGet(2 * LEASE_DURATION);
+		LeaseRound roundB = instanceB.renewAndClaim(JOB_ID, 4);
+		assertTrue(roundB.getClaimed().isEmpty());
+		assertTrue(roundB.isAllDone());
+
+		PartitionLease failed = roundB.getLeases().get(3);
+		assertTrue(failed.isFailed());
+		assertTrue(instanceB.reopen(failed));
+		roundB = instanceB.renewAndClaim(JOB_ID, 4);
+		assertEquals(1, roundB.getClaimed().size());
+		assertFalse(roundB.isAllDone());
+	}
+
+	@Test
+	void releasedLeasesAreClaimedWithoutWaiting() {
+		LeaseRound roundA = instanceA.renewAndClaim(JOB_ID, 4);
+		for (PartitionLease lease : roundA.getHeld()) {
+			assertTrue(instanceA.release(lease, false, false));
+		}
+		LeaseRound roundB = instanceB.renewAndClaim(JOB_ID, 4);
+		assertEquals(4, roundB.getClaimed().size());
+		assertTrue(roundB.getTakenOver().isEmpty());
+	}
+}
@@ -0,0 +1,165 @@
+package com.softwareag.signalmigration.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+
+import com.cumulocity.sdk.client.SDKException;
+import com.softwareag.signalmigration.util.RequestLimiter.RequestClass;
+
+/**
+ * Requests take no time unless they advance the clock
+ */
+class AimdConcurrencyLimiterTest {
+
+	private final AtomicLong now = new AtomicLong();
+
+	@Test
+	void increasesByAboutOnePerRoundOfRequests() {
+		AimdConcurrencyLimiter limiter = new AimdConcurrencyLimiter("test", 1, 1, 10, 0.5, 3.0, now::get);
+		AtomicInteger limitChanges = new AtomicInteger();
+		limiter.addLimitListener(limitChanges::incrementAndGet);
+
+		// one request at a time keeps a limit below 3 in use: 1 -> 2 -> 2.5 -> 2.9 -> 3.24
+		limiter.run(() -> {});
+		assertEquals(2, limiter.getLimit());
+		limiter.run(() -> {});
+		limiter.run(() -> {});
+		assertEquals(2, limiter.getLimit());
+		limiter.run(() -> {});
+		assertEquals(3, limiter.getLimit());
+		assertEquals(2, limitChanges.get());
+	}
+
+	@Test
+	void doesNotIncreaseWhenTheLimitIsNotInUse() {
+		AimdConcurrencyLimiter limiter = new AimdConcurrencyLimiter("test", 4, 1, 10, 0.5, 3.0, now::get);
+		for (int i = 0; i < 10; i++) {
+			limiter.run(() -> {});
+		}
+		assertEquals(4, limiter.getLimit());
+	}
+
+	@Test
+	void staysAtTheMaxLimit() {
+		AimdConcurrencyLimiter limiter = new AimdConcurrencyLimiter("test", 1, 1, 2, 0.5, 3.0, now::get);
+		for (int i = 0; i < 10; i++) {
+			limiter.run(() -> {});
+		}
+		assertEquals(2, limiter.getLimit());
+	}
+
+	@Test
+	void decreasesOnThrottlingDownToTheMinLimit() {
+		AimdConcurrencyLimiter limiter = new AimdConcurrencyLimiter("test", 8, 2, 10, 0.5, 3.0, now::get);
+
+		throttle(limiter);
+		assertEquals(4, limiter.getLimit());
+		throttle(limiter);
+		assertEquals(2, limiter.getLimit());
+		throttle(limiter);
+		assertEquals(2, limiter.getLimit());
+		assertEquals(0, limiter.getInFlight());
+	}
+
+	@Test
+	void decreasesOnALatencySpike() {
+		AimdConcurrencyLimiter limiter = new AimdConcurrencyLimiter("test", 8, 1, 10, 0.5, 3.0, now::get);
+		for (int i = 0; i < 3; i++) {
+			request(limiter, RequestClass.READ, 10);
+		}
+		assertEquals(10, limiter.getBaselineLatencyMillis(RequestClass.READ), 0.001);
+
+		request(limiter, RequestClass.READ, 30);
+		assertEquals(8, limiter.getLimit());
+		request(limiter, RequestClass.READ, 50);
+		assertEquals(4, limiter.getLimit());
+	}
+
+	@Test
+	void keepsALatencyBaselinePerRequestClass() {
+		AimdConcurrencyLimiter limiter = new AimdConcurrencyLimiter("test", 8, 1, 10, 0.5, 3.0, now::get);
+		// fast count queries and slow bulk writes through the same limiter
+		for (int i = 0; i < 20; i++) {
+			request(limiter, RequestClass.COUNT, 10);
+			request(limiter, RequestClass.WRITE, 500);
+		}
+		assertEquals(8, limiter.getLimit());
+		assertEquals(10, limiter.getBaselineLatencyMillis(RequestClass.COUNT), 0.001);
+		assertEquals(500, limiter.getBaselineLatencyMillis(RequestClass.WRITE), 0.001);
+	}
+
+	@Test
+	void recoversFromASustainedHigherLatency() {
+		AimdConcurrencyLimiter limiter = new AimdConcurrencyLimiter("test", 8, 1, 10, 0.5, 3.0, now::get);
+		for (int i = 0; i < 10; i++) {
+			request(limiter, RequestClass.READ, 10);
+		}
+		for (int i = 0; i < 3; i++) {
+			request(limiter, RequestClass.READ, 100);
+		}
+		assertEquals(1, limiter.getLimit());
+
+		// the baseline follows the spikes slowly, until 100 ms is no spike any more and the limit grows again
+		for (int i = 0; i < 17; i++) {
+			request(limiter, RequestClass.READ, 100);
+		}
+		assertEquals(3, limiter.getLimit());
+		assertTrue(limiter.getBaselineLatencyMillis(RequestClass.READ) > 80);
+	}
+
+	@Test
+	void concurrentThrottledRequestsDecreaseOnce() throws InterruptedException {
+		AimdConcurrencyLimiter limiter = new AimdConcurrencyLimiter("test", 8, 1, 10, 0.5, 3.0, now::get);
+		CountDownLatch started = new CountDownLatch(2);
+		CountDownLatch release = new CountDownLatch(1);
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		for (int i = 0; i < 2; i++) {
+			executor.execute(() -> {
+				try {
+					limiter.run(() -> {
+						started.countDown();
+						await(release);
+						throw new SDKException(429, "Too Many Requests");
+					});
+				} catch (SDKException e) {
+					// expected
+				}
+			});
+		}
+		assertTrue(started.await(5, TimeUnit.SECONDS));
+		now.addAndGet(10); // the decrease comes after both requests started
+		release.countDown();
+		executor.shutdown();
+		assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+
+		assertEquals(4, limiter.getLimit());
+	}
+
+	private static void throttle(AimdConcurrencyLimiter limiter) {
+		assertThrows(SDKException.class, () -> limiter.run(() -> {
+			throw new SDKException(429, "Too Many Requests");
+		}));
+	}
+
+	private void request(AimdConcurrencyLimiter limiter, RequestClass requestClass, long latencyMillis) {
+		limiter.run(requestClass, () -> now.addAndGet(latencyMillis));
+	}
+
+	private static void await(CountDownLatch latch) {
+		try {
+			latch.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
@@ -0,0 +1,104 @@
+package com.softwareag.signalmigration.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class LongMultisetTest {
+
+	@Test
+	void countsOccurrences() {
+		LongMultiset multiset = new LongMultiset();
+		multiset.add(42);
+		multiset.add(42);
+		multiset.add(0);
+		multiset.add(-7);
+
+		assertEquals(2, multiset.count(42));
+		assertEquals(4, multiset.size());
+		assertEquals(3, multiset.numDistinct());
+
+		assertTrue(multiset.remove(42));
+		assertTrue(multiset.contains(42));
+		assertTrue(multiset.remove(42));
+		assertFalse(multiset.contains(42));
+		assertFalse(multiset.remove(42));
+
+		assertTrue(multiset.remove(0));
+		assertTrue(multiset.remove(-7));
+		assertTrue(multiset.isEmpty());
+	}
+
+	@Test
+	void matchesAMapUnderRandomAddsAndRemoves() {
+		LongMultiset multiset = new LongMultiset();
+		Map<Integer, Integer> expected = new HashMap<>();
+		Random random = new Random(1);
+		for (int i = 0; i < 200_000; i++) {
+			// a small range of values, so that removes hit and probe sequences collide
+			int value = random.nextInt(5_000) - 2_500;
+			if (random.nextInt(3) == 0) {
+				boolean present = expected.containsKey(value);
+				assertEquals(present, multiset.remove(value));
+				if (present) {
+					expected.compute(value, (v, count) -> count == 1 ? null : count - 1);
+				}
+			} else {
+				multiset.add(value);
+				expected.merge(value, 1, Integer::sum);
+			}
+		}
+		assertEquals(expected.size(), multiset.numDistinct());
+		assertEquals(expected.values().stream().mapToLong(Integer::longValue).sum(), multiset.size());
+		for (int value = -2_500; value < 2_500; value++) {
+			assertEquals(expected.getOrDefault(value, 0).longValue(), multiset.count(value));
+		}
+	}
+
+	@Test
+	void staysUnderTheBytesPerValue() {
+		LongMultiset multiset = new LongMultiset();
+		Random random = new Random(2);
+		for (int i = 0; i < 1_000_000; i++) {
+			multiset.add(random.nextLong());
+			if (multiset.numDistinct() > 1_000) {
+				assertTrue(multiset.getMemoryBytes() <= (long) multiset.numDistinct() * LongMultiset.MAX_BYTES_PER_VALUE);
+			}
+		}
+	}
+
+	@Test
+	void staysUnderTheBytesPerValueWithDuplicates() {
+		LongMultiset multiset = new LongMultiset();
+		Random random = new Random(3);
+		multiset.add(1);
+		multiset.add(1);
+		for (int i = 0; i < 1_000_000; i++) {
+			multiset.add(random.nextLong());
+			if (multiset.numDistinct() > 1_000) {
+				assertTrue(multiset.getMemoryBytes() <= (long) multiset.numDistinct() * LongMultiset.MAX_BYTES_PER_VALUE_WITH_COUNTS);
+			}
+		}
+		assertEquals(2, multiset.count(1));
+	}
+
+	@Test
+	void clearEmptiesTheSet() {
+		LongMultiset multiset = new LongMultiset();
+		for (int i = 0; i < 10_000; i++) {
+			multiset.add(i);
+		}
+		multiset.clear();
+
+		assertTrue(multiset.isEmpty());
+		assertFalse(multiset.contains(5));
+		multiset.add(5);
+		assertEquals(1, multiset.count(5));
+	}
+}
@@ -0,0 +1,69 @@
+package com.softwareag.signalmigration.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Signals are {time, hash} pairs
+ */
+class MergeJoinDeduplicatorTest {
+
+	@Test
+	void matchesEqualTimestampRunsInAnyOrder() {
+		MergeJoinDeduplicator<long[]> dedup = deduplicator(signal(10, 1), signal(10, 2), signal(10, 2), signal(20, 3));
+
+		assertTrue(dedup.isDuplicate(signal(10, 2)));
+		assertTrue(dedup.isDuplicate(signal(10, 1)));
+		assertTrue(dedup.isDuplicate(signal(10, 2)));
+		// the target has only two of them
+		assertFalse(dedup.isDuplicate(signal(10, 2)));
+		assertFalse(dedup.isDuplicate(signal(10, 3)));
+		assertTrue(dedup.isDuplicate(signal(20, 3)));
+	}
+
+	@Test
+	void skipsOlderTargetSignalsAndReadsNoFurtherThanNeeded() {
+		MergeJoinDeduplicator<long[]> dedup = deduplicator(signal(5, 9), signal(10, 1), signal(20, 1), signal(30, 1));
+
+		assertTrue(dedup.isDuplicate(signal(10, 1)));
+		// up to the first target signal after the window
+		assertEquals(3, dedup.getNumTargetSignalsRead());
+
+		assertFalse(dedup.isDuplicate(signal(25, 1)));
+		assertEquals(4, dedup.getNumTargetSignalsRead());
+		assertTrue(dedup.isDuplicate(signal(30, 1)));
+		assertFalse(dedup.isDuplicate(signal(40, 1)));
+	}
+
+	@Test
+	void writesOutOfOrderSourceSignals() {
+		MergeJoinDeduplicator<long[]> dedup = deduplicator(signal(10, 1), signal(20, 1));
+
+		assertTrue(dedup.isDuplicate(signal(20, 1)));
+		// the target signals at 10 were skipped
+		assertFalse(dedup.isDuplicate(signal(10, 1)));
+		assertEquals(1, dedup.getNumOutOfOrder());
+	}
+
+	@Test
+	void findsNoDuplicatesInAnEmptyTarget() {
+		MergeJoinDeduplicator<long[]> dedup = deduplicator();
+
+		assertFalse(dedup.isDuplicate(signal(10, 1)));
+		assertFalse(dedup.isDuplicate(signal(10, 1)));
+		assertEquals(0, dedup.getNumTargetSignalsRead());
+	}
+
+	private static long[] signal(long time, long hash) {
+		return new long[] { time, hash };
+	}
+
+	private static MergeJoinDeduplicator<long[]> deduplicator(long[]... targetSignals) {
+		return new MergeJoinDeduplicator<>(Arrays.asList(targetSignals).iterator(), signal -> signal[0], signal -> signal[1]);
+	}
+}
@@ -0,0 +1,87 @@
+package com.softwareag.signalmigration.util;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.joda.time.DateTime;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.cumulocity.rest.representation.measurement.MeasurementRepresentation;
+
+/**
+ * SignalFingerprint vs. the former dedup hash, toJSON().hashCode(), per measurement. Not run by the tests:
+ * mvn test-compile, then run main with the test classpath, e.g. from the IDE.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SignalFingerprintBenchmark {
+
+	/**
+	 * series per measurement
+	 */
+	@Param({ "1", "10" })
+	public int numSeries;
+
+	private final List<MeasurementRepresentation> msmts = new ArrayList<>();
+
+	private int next = 0;
+
+	@Setup
+	public void setUp() {
+		Random random = new Random(1);
+		DateTime time = DateTime.parse("2021-07-04T05:03:23.157Z");
+		for (int i = 0; i < 1024; i++) {
+			MeasurementRepresentation msmt = new MeasurementRepresentation();
+			msmt.setType("c8y_Sensor");
+			msmt.setDateTime(time.plusSeconds(i));
+			for (int s = 0; s < numSeries; s++) {
+				Map<String, Object> valueAndUnit = new LinkedHashMap<>();
+				valueAndUnit.put("value", random.nextDouble() * 100);
+				valueAndUnit.put("unit", "C");
+				msmt.setProperty("c8y_Series" + s, Map.of("S", valueAndUnit));
+			}
+			msmts.add(msmt);
+		}
+	}
+
+	private MeasurementRepresentation nextMsmt() {
+		next = (next + 1) & (msmts.size() - 1);
+		return msmts.get(next);
+	}
+
+	@Benchmark
+	public int jsonHashCode() {
+		return nextMsmt().toJSON().hashCode();
+	}
+
+	@Benchmark
+	public long fingerprint() {
+		return SignalFingerprint.of(nextMsmt());
+	}
+
+	public static void main(String[] args) throws Exception {
+		new Runner(new OptionsBuilder()
+				.include(SignalFingerprintBenchmark.class.getSimpleName())
+				.build()).run();
+	}
+}
@@ -0,0 +1,71 @@
+package com.softwareag.signalmigration.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+import java.math.BigDecimal;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.jupiter.api.Test;
+
+import com.cumulocity.rest.representation.measurement.MeasurementRepresentation;
+
+class SignalFingerprintTest {
+
+	private static final DateTime TIME = new DateTime(2021, 7, 4, 5, 3, 23, 157, DateTimeZone.UTC);
+
+	@Test
+	void ignoresTheOrderOfFragmentsAndProperties() {
+		MeasurementRepresentation m1 = measurement(TIME, "c8y_Temperature", series("T", 21.5, "C"), "c8y_Humidity", series("H", 40, "%"));
+		MeasurementRepresentation m2 = measurement(TIME, "c8y_Humidity", series("H", 40, "%"), "c8y_Temperature", series("T", 21.5, "C"));
+
+		assertEquals(SignalFingerprint.of(m1), SignalFingerprint.of(m2));
+	}
+
+	@Test
+	void hashesNumbersByValueAndTimesAsInstants() {
+		MeasurementRepresentation m1 = measurement(TIME, "c8y_Count", series("C", 3, null));
+		MeasurementRepresentation m2 = measurement(TIME.withZone(DateTimeZone.forOffsetHours(2)), "c8y_Count", series("C", new BigDecimal("3.0"), null));
+
+		assertEquals(SignalFingerprint.of(m1), SignalFingerprint.of(m2));
+	}
+
+	@Test
+	void differsWhenAValueDiffers() {
+		long fingerprint = SignalFingerprint.of(measurement(TIME, "c8y_Temperature", series("T", 21.5, "C")));
+
+		assertNotEquals(fingerprint, SignalFingerprint.of(measurement(TIME, "c8y_Temperature", series("T", 21.6, "C"))));
+		assertNotEquals(fingerprint, SignalFingerprint.of(measurement(TIME, "c8y_Temperature", series("T", 21.5, "F"))));
+		assertNotEquals(fingerprint, SignalFingerprint.of(measurement(TIME.plusMillis(1), "c8y_Temperature", series("T", 21.5, "C"))));
+		assertNotEquals(fingerprint, SignalFingerprint.of(measurement(TIME, "c8y_Temperature", series("T", "21.5", "C"))));
+	}
+
+	@Test
+	void keepsTheOrderOfLists() {
+		assertNotEquals(new SignalFingerprint().add(List.of("a", "b")).get(), new SignalFingerprint().add(List.of("b", "a")).get());
+		assertNotEquals(new SignalFingerprint().add(List.of("a", "b")).get(), new SignalFingerprint().add(List.of("ab")).get());
+	}
+
+	private static MeasurementRepresentation measurement(DateTime time, Object... fragments) {
+		MeasurementRepresentation msmt = new MeasurementRepresentation();
+		msmt.setType("c8y_Test");
+		msmt.setDateTime(time);
+		for (int i = 0; i < fragments.length; i += 2) {
+			msmt.setProperty((String) fragments[i], fragments[i + 1]);
+		}
+		return msmt;
+	}
+
+	private static Map<String, Object> series(String name, Object value, String unit) {
+		Map<String, Object> valueAndUnit = new LinkedHashMap<>();
+		valueAndUnit.put("value", value);
+		if (unit != null) {
+			valueAndUnit.put("unit", unit);
+		}
+		return Map.of(name, valueAndUnit);
+	}
+}